@@ -0,0 +1,16 @@
+package hashmap;
+
+/**
+ * A Map61B that many threads may use at once without external locking.
+ *
+ * Every operation is atomic. Iteration and keySet() are weakly consistent: they
+ * never throw ConcurrentModificationException and see every key present for the
+ * whole traversal, but may or may not see keys added or removed during it. size()
+ * is exact only while no other thread is modifying the map.
+ */
+public interface ConcurrentMap61B<K, V> extends Map61B<K, V> {
+
+    /** Associates VALUE with KEY unless KEY already has a non-null value, in one
+     *  atomic step. Returns that existing value, or null if VALUE was put. */
+    V putIfAbsent(K key, V value);
+}
@@ -0,0 +1,419 @@
+package hashmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *  A hash table-backed ConcurrentMap61B with lock-free reads.
+ *
+ *  Buckets are copy-on-write: a bucket is never changed once it is in the table.
+ *  A writer instead builds a new bucket with createBucket(), copies the old one
+ *  into it with its change applied, and stores it into the AtomicReferenceArray
+ *  of the table, which publishes it safely. A reader therefore only needs a
+ *  volatile read of the bucket and can iterate it without locking. Changing the
+ *  value of an existing key writes the volatile value of its Node instead.
+ *
+ *  Writers lock one of STRIPES stripes, chosen by the low bits of the hash. No
+ *  table is shorter than STRIPES, so the stripe count divides every table length,
+ *  the stripe of a bucket never changes when the table doubles, and all keys of a
+ *  bucket share one lock.
+ *
+ *  Resizing is cooperative. The thread that first exceeds the load factor attaches
+ *  a doubled table, and then every thread that puts or removes while the resize is
+ *  in progress claims chunks of TRANSFER_CHUNK buckets and moves them over. A moved
+ *  bucket is replaced by the MOVED marker, which sends readers and writers on to
+ *  the next table.
+ *
+ *  Assumes null keys will never be inserted, and does not resize down upon remove().
+ */
+public class ConcurrentMyHashMap<K, V> implements ConcurrentMap61B<K, V> {
+
+    /**
+     * Protected helper class to store key/value pairs
+     * The protected qualifier allows subclass access
+     */
+    protected class Node {
+        final int hash;
+        final K key;
+        volatile V value;
+
+        Node(int h, K k, V v) {
+            hash = h;
+            key = k;
+            value = v;
+        }
+    }
+
+    /** One generation of the bucket array, and the state of resizing it. */
+    private final class Table {
+        final AtomicReferenceArray<Collection<Node>> buckets;
+        final int threshold;
+        /** The doubled table, set once a resize of this table starts. */
+        final AtomicReference<Table> next = new AtomicReference<>();
+        /** Buckets below this index have been claimed by a resizing thread. */
+        final AtomicInteger claimed = new AtomicInteger();
+        /** Number of buckets moved to next so far. */
+        final AtomicInteger moved = new AtomicInteger();
+
+        Table(int capacity) {
+            buckets = new AtomicReferenceArray<>(capacity);
+            threshold = capacity == MAXIMUM_CAPACITY
+                    ? Integer.MAX_VALUE : (int) Math.min(capacity * loadFactor, Integer.MAX_VALUE);
+        }
+
+        int length() {
+            return buckets.length();
+        }
+    }
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    /** Lock stripes, the level of write concurrency, and the least table length. */
+    private static final int STRIPES = 64;
+    /** Buckets a resizing thread claims at a time. */
+    private static final int TRANSFER_CHUNK = 16;
+
+    /** Marks a bucket whose entries have moved to the next table. */
+    private final Collection<Node> moved = Collections.unmodifiableList(new ArrayList<>());
+
+    /* Instance Variables */
+    private final AtomicReference<Table> table;
+    private final ReentrantLock[] locks;
+    private final LongAdder size = new LongAdder();
+    private final double loadFactor;
+
+    /** Constructors */
+    public ConcurrentMyHashMap() {
+        this(16, 0.75);
+    }
+
+    public ConcurrentMyHashMap(int initialCapacity) {
+        this(initialCapacity, 0.75);
+    }
+
+    /**
+     * ConcurrentMyHashMap constructor that creates a backing array of at least
+     * initialCapacity buckets, rounded up to a power of two, and of at least
+     * STRIPES buckets.
+     * The load factor (# items / # buckets) should always be <= loadFactor once
+     * every resize has finished.
+     *
+     * @param initialCapacity initial size of backing array
+     * @param loadFactor maximum load factor
+     */
+    public ConcurrentMyHashMap(int initialCapacity, double loadFactor) {
+        if (initialCapacity < 0 || !(loadFactor > 0)) {
+            throw new IllegalArgumentException("Invalid capacity or load factor");
+        }
+        this.loadFactor = loadFactor;
+        int capacity = STRIPES;
+        while (capacity < initialCapacity && capacity < MAXIMUM_CAPACITY) {
+            capacity <<= 1;
+        }
+        table = new AtomicReference<>(new Table(capacity));
+        locks = new ReentrantLock[STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Returns a data structure to be a hash table bucket
+     *
+     * Buckets are filled right after they are created and never changed once they
+     * are published, so any Collection that can add and iterate will do, and it
+     * need not be thread-safe itself.
+     *
+     * Override this method to use different data structures as
+     * the underlying bucket type
+     */
+    protected Collection<Node> createBucket() {
+        return new ArrayList<>();
+    }
+
+    /** Helper method to validate key and spread its hash code into the low bits */
+    private static int hash(Object key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Null key not allowed!");
+        }
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private ReentrantLock lockOf(int hash) {
+        return locks[hash & (locks.length - 1)];
+    }
+
+    /** Returns the node of KEY in BUCKET, or null if there is none. */
+    private Node find(Collection<Node> bucket, K key, int hash) {
+        if (bucket != null) {
+            for (Node node : bucket) {
+                if (node.hash == hash && key.equals(node.key)) {
+                    return node;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Returns the node of KEY, following MOVED markers to newer tables, without locking. */
+    private Node findNode(K key) {
+        int hash = hash(key);
+        Table t = table.get();
+        while (true) {
+            Collection<Node> bucket = t.buckets.get(hash & (t.length() - 1));
+            if (bucket != moved) {
+                return find(bucket, key, hash);
+            }
+            t = t.next.get();
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        Node node = findNode(key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return findNode(key) != null;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        putValue(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putValue(key, value, true);
+    }
+
+    /**
+     * Helper method of put and putIfAbsent. Returns the previous value of KEY, and
+     * if ONLYIFABSENT leaves a non-null previous value in place.
+     */
+    private V putValue(K key, V value, boolean onlyIfAbsent) {
+        int hash = hash(key);
+        ReentrantLock lock = lockOf(hash);
+        Table t = table.get();
+        while (true) {
+            int i = hash & (t.length() - 1);
+            boolean isMoved = false;
+            lock.lock();
+            try {
+                Collection<Node> bucket = t.buckets.get(i);
+                if (bucket == moved) {
+                    isMoved = true;
+                } else {
+                    Node node = find(bucket, key, hash);
+                    if (node != null) {
+                        V old = node.value;
+                        if (!onlyIfAbsent || old == null) {
+                            node.value = value;
+                        }
+                        return old;
+                    }
+                    Collection<Node> copy = createBucket();
+                    if (bucket != null) {
+                        copy.addAll(bucket);
+                    }
+                    copy.add(new Node(hash, key, value));
+                    t.buckets.set(i, copy);
+                    size.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (isMoved) {
+                helpResize(t);
+                t = t.next.get();
+                continue;
+            }
+            if (size.sum() > t.threshold) {
+                startResize(t);
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        int hash = hash(key);
+        ReentrantLock lock = lockOf(hash);
+        Table t = table.get();
+        while (true) {
+            int i = hash & (t.length() - 1);
+            lock.lock();
+            try {
+                Collection<Node> bucket = t.buckets.get(i);
+                if (bucket != moved) {
+                    Node node = find(bucket, key, hash);
+                    if (node == null) {
+                        return null;
+                    }
+                    Collection<Node> copy = null;
+                    if (bucket.size() > 1) {
+                        copy = createBucket();
+                        for (Node other : bucket) {
+                            if (other != node) {
+                                copy.add(other);
+                            }
+                        }
+                    }
+                    t.buckets.set(i, copy);
+                    size.decrement();
+                    return node.value;
+                }
+            } finally {
+                lock.unlock();
+            }
+            helpResize(t);
+            t = t.next.get();
+        }
+    }
+
+    /**
+     * Attaches a doubled table to T if T is still the current table and no resize
+     * of it has started, then helps move the buckets over.
+     */
+    private void startResize(Table t) {
+        if (t.length() == MAXIMUM_CAPACITY || table.get() != t) {
+            return;
+        }
+        if (t.next.get() == null) {
+            t.next.compareAndSet(null, new Table(t.length() * 2));
+        }
+        helpResize(t);
+    }
+
+    /**
+     * Moves chunks of buckets of T to its next table until none are left to claim.
+     * The thread that moves the last chunk makes the next table current, and starts
+     * its resize in turn if puts during this one overfilled it.
+     */
+    private void helpResize(Table t) {
+        Table next = t.next.get();
+        int n = t.length();
+        while (true) {
+            int start = t.claimed.getAndAdd(TRANSFER_CHUNK);
+            if (start >= n) {
+                return;
+            }
+            int end = Math.min(start + TRANSFER_CHUNK, n);
+            for (int i = start; i < end; i++) {
+                transfer(t, next, i);
+            }
+            if (t.moved.addAndGet(end - start) == n) {
+                table.compareAndSet(t, next);
+                if (size.sum() > next.threshold) {
+                    startResize(next);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Splits bucket I of T between buckets I and I + T.length() of NEXT, keeping the
+     * order of its nodes, and marks it MOVED. Nothing else writes to those buckets
+     * of NEXT before the mark, and the stripe of I is the stripe of all its keys.
+     */
+    private void transfer(Table t, Table next, int i) {
+        ReentrantLock lock = locks[i & (locks.length - 1)];
+        lock.lock();
+        try {
+            Collection<Node> bucket = t.buckets.get(i);
+            if (bucket != null) {
+                int n = t.length();
+                Collection<Node> low = null;
+                Collection<Node> high = null;
+                for (Node node : bucket) {
+                    if ((node.hash & n) == 0) {
+                        if (low == null) {
+                            low = createBucket();
+                        }
+                        low.add(node);
+                    } else {
+                        if (high == null) {
+                            high = createBucket();
+                        }
+                        high.add(node);
+                    }
+                }
+                next.buckets.set(i, low);
+                next.buckets.set(i + n, high);
+            }
+            t.buckets.set(i, moved);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(0, size.sum());
+    }
+
+    /** Empties every bucket while holding all stripe locks, so no put or move interleaves. */
+    @Override
+    public void clear() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            for (Table t = table.get(); t != null; t = t.next.get()) {
+                for (int i = 0; i < t.length(); i++) {
+                    Collection<Node> bucket = t.buckets.get(i);
+                    if (bucket != null && bucket != moved) {
+                        size.add(-bucket.size());
+                        t.buckets.set(i, null);
+                    }
+                }
+            }
+        } finally {
+            for (ReentrantLock lock : locks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** Returns a snapshot of the keys, which is weakly consistent while writers run. */
+    @Override
+    public Set<K> keySet() {
+        Set<K> keys = new HashSet<>();
+        Table t = table.get();
+        for (int i = 0; i < t.length(); i++) {
+            addKeys(t, i, keys);
+        }
+        return keys;
+    }
+
+    /** Adds the keys of bucket I of T to KEYS, or of the buckets it moved to. */
+    private void addKeys(Table t, int i, Set<K> keys) {
+        Collection<Node> bucket = t.buckets.get(i);
+        if (bucket == moved) {
+            Table next = t.next.get();
+            addKeys(next, i, keys);
+            addKeys(next, i + t.length(), keys);
+        } else if (bucket != null) {
+            for (Node node : bucket) {
+                keys.add(node.key);
+            }
+        }
+    }
+
+    @Override
+    public Iterator<K> iterator() {
+        return keySet().iterator();
+    }
+}
@@ -4,13 +4,26 @@ import edu.princeton.cs.algs4.SET;
 import org.checkerframework.checker.units.qual.C;
 
 import java.lang.reflect.Array;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.security.Key;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  *  A hash table-backed Map implementation.
  *
  *  Assumes null keys will never be inserted, and does not resize down upon remove().
+ *  Resizes at once by default, or a few buckets per operation when created with
+ *  incrementalResize.
+ *
+ *  Hash codes are mixed with a random seed of each map before they pick a bucket,
+ *  so keys whose hash codes differ only in bits the table size ignores still
+ *  spread out, and no fixed set of such keys collides in every map. Keys with
+ *  equal hash codes still share a bucket whatever the seed, so a bucket that
+ *  reaches treeifyThreshold() nodes becomes a TreeBucket, a red-black tree in
+ *  which a lookup takes O(log n) comparisons, and becomes a bucket from
+ *  createBucket() again when removals shrink it, as in java.util.HashMap.
  *  @author Guinsoo
  */
 public class MyHashMap<K, V> implements Map61B<K, V> {
@@ -22,19 +35,153 @@ public class MyHashMap<K, V> implements Map61B<K, V> {
     protected class Node {
         K key;
         V value;
+        /** The mixed hash of key, which also orders the nodes of a TreeBucket. */
+        int hash;
 
         Node(K k, V v) {
+            this(hash(k), k, v);
+        }
+
+        Node(int h, K k, V v) {
+            hash = h;
             key = k;
             value = v;
         }
     }
 
+    /**
+     * A bucket of nodes kept in a red-black tree, ordered by hash, then for keys of
+     * one class that is Comparable to itself by compareTo. Nodes that this order
+     * cannot tell apart, such as keys with equal hashes that are not Comparable,
+     * share one list of the tree, which find scans with equals.
+     */
+    private final class TreeBucket extends AbstractCollection<Node> {
+        private final TreeMap<Node, List<Node>> tree = new TreeMap<>(MyHashMap::compareForTree);
+        private int size;
+
+        /** Returns the node of KEY, whose mixed hash is HASH, or null if there is none. */
+        Node find(int hash, K key) {
+            List<Node> nodes = tree.get(new Node(hash, key, null));
+            if (nodes != null) {
+                for (Node node : nodes) {
+                    if (key.equals(node.key)) {
+                        return node;
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean add(Node node) {
+            tree.computeIfAbsent(node, n -> new ArrayList<>(1)).add(node);
+            size += 1;
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean remove(Object o) {
+            Node node = (Node) o;
+            List<Node> nodes = tree.get(node);
+            if (nodes == null || !nodes.remove(node)) {
+                return false;
+            }
+            if (nodes.isEmpty()) {
+                tree.remove(node);
+            }
+            size -= 1;
+            return true;
+        }
+
+        @Override
+        public Iterator<Node> iterator() {
+            return tree.values().stream().flatMap(List::stream).iterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            tree.clear();
+            size = 0;
+        }
+    }
+
+    /** Classes whose instances are Comparable to each other, and so can order a TreeBucket. */
+    private static final ClassValue<Boolean> SELF_COMPARABLE = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> c) {
+            for (Type type : c.getGenericInterfaces()) {
+                if (type instanceof ParameterizedType p && p.getRawType() == Comparable.class
+                        && p.getActualTypeArguments()[0] == c) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    };
+
+    /** Returns the class of KEY if its instances are Comparable to each other, else null. */
+    private static Class<?> comparableClassOf(Object key) {
+        Class<?> c = key.getClass();
+        return c == String.class || SELF_COMPARABLE.get(c) ? c : null;
+    }
+
+    /**
+     * The order of a TreeBucket: by hash, then by the name of the comparable class
+     * of the keys, with keys that are not comparable first, then by compareTo.
+     * Returns 0 for nodes it cannot tell apart.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareForTree(MyHashMap<?, ?>.Node a, MyHashMap<?, ?>.Node b) {
+        if (a.hash != b.hash) {
+            return Integer.compare(a.hash, b.hash);
+        }
+        Class<?> ca = comparableClassOf(a.key);
+        Class<?> cb = comparableClassOf(b.key);
+        if (ca != cb) {
+            if (ca == null || cb == null) {
+                return ca == null ? -1 : 1;
+            }
+            return ca.getName().compareTo(cb.getName());
+        }
+        return ca == null ? 0 : ((Comparable) a.key).compareTo(b.key);
+    }
+
     /* Instance Variables */
     private Collection<Node>[] buckets;
     private int size;
     private double loadFactor;
     private int initialCapacity;
 
+    /**
+     * Incremental resizing, in the style of Redis' dict rehashing: when the load
+     * factor is exceeded, buckets becomes the doubled table at once, but entries
+     * stay in oldBuckets and move over a few buckets per operation. Buckets of the
+     * new table are only created when something is put into them. An operation
+     * moves the old bucket of its own key and up to MIGRATION_STEPS other non-empty
+     * ones, skipping at most MIGRATION_STEPS * EMPTY_VISITS_PER_STEP empty ones. The
+     * exception is a put that starts a resize while the previous rehash is still
+     * unfinished: it moves every bucket that rehash has left. oldBuckets is null
+     * when no rehash is in progress.
+     */
+    private final boolean incrementalResize;
+    private Collection<Node>[] oldBuckets;
+    /** Old buckets below this index have all been moved to buckets. */
+    private int rehashIndex;
+
+    /** Non-empty old buckets moved by each operation during a rehash. */
+    private static final int MIGRATION_STEPS = 2;
+    /** Empty old buckets skipped per migration step before an operation gives up. */
+    private static final int EMPTY_VISITS_PER_STEP = 10;
+
+    /** Mixed into every hash code, so that which keys collide differs between maps. */
+    private final int hashSeed = ThreadLocalRandom.current().nextInt();
+
     /** Constructors */
     public MyHashMap() {
         this(16, 0.75);
@@ -52,8 +199,22 @@ public class MyHashMap<K, V> implements Map61B<K, V> {
      * @param loadFactor maximum load factor
      */
     public MyHashMap(int initialCapacity, double loadFactor) {
+        this(initialCapacity, loadFactor, false);
+    }
+
+    /**
+     * MyHashMap constructor that, if incrementalResize is true, spreads the work of
+     * each resize over the operations that follow it instead of rehashing every
+     * entry at once.
+     *
+     * @param initialCapacity initial size of backing array
+     * @param loadFactor maximum load factor
+     * @param incrementalResize whether to resize incrementally
+     */
+    public MyHashMap(int initialCapacity, double loadFactor, boolean incrementalResize) {
         this.initialCapacity = initialCapacity;
         this.loadFactor = loadFactor;
+        this.incrementalResize = incrementalResize;
         this.size = 0;
 
         this.buckets = new Collection[initialCapacity];
@@ -87,33 +248,140 @@ public class MyHashMap<K, V> implements Map61B<K, V> {
         return new ArrayList<>();
     }
 
-    /** Helper method to validate key and get bucket index */
-    private int getBucketIndex(K key) {
+    /**
+     * Returns the number of nodes at which a bucket becomes a TreeBucket. A tree
+     * becomes a bucket from createBucket() again once it shrinks to three quarters
+     * of this number.
+     *
+     * Override this method to change when buckets become trees, or return
+     * Integer.MAX_VALUE to keep every bucket the type createBucket() returns
+     */
+    protected int treeifyThreshold() {
+        return 8;
+    }
+
+    /** Helper method to validate key and mix its hash code with the seed of this map */
+    private int hash(Object key) {
         if (key == null) {
             throw new IllegalArgumentException("Null key not allowed!");
         }
-        return Math.floorMod(key.hashCode(), buckets.length);
+        // The finalizer of MurmurHash3, so every bit of the hash code moves every bit
+        int h = key.hashCode() ^ hashSeed;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    /** Helper method to get the bucket index of HASH in a table of LENGTH buckets */
+    private static int indexFor(int hash, int length) {
+        return Math.floorMod(hash, length);
+    }
+
+    /**
+     * Helper method that does this operation's share of an incremental rehash, and
+     * moves the old bucket of HASH over first, so that its key is only ever looked
+     * for in buckets. Returns the bucket index of HASH.
+     */
+    private int prepareBucket(int hash) {
+        if (oldBuckets != null) {
+            migrateBucket(indexFor(hash, oldBuckets.length));
+            rehashStep();
+        }
+        return indexFor(hash, buckets.length);
+    }
+
+    /** Returns the node of KEY, whose mixed hash is HASH, in BUCKET, or null if there is none. */
+    private Node findNode(Collection<Node> bucket, int hash, K key) {
+        if (bucket == null) {
+            return null;
+        }
+        if (bucket instanceof MyHashMap<K, V>.TreeBucket tree) {
+            return tree.find(hash, key);
+        }
+        for (Node node : bucket) {
+            if (node.hash == hash && key.equals(node.key)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds NODE to bucket I, creating the bucket if there is none, and turns the
+     * bucket into a TreeBucket once it holds treeifyThreshold() nodes.
+     */
+    private void addNode(int i, Node node) {
+        Collection<Node> bucket = buckets[i];
+        if (bucket == null) {
+            bucket = createBucket();
+            buckets[i] = bucket;
+        }
+        bucket.add(node);
+        if (!(bucket instanceof MyHashMap<?, ?>.TreeBucket) && bucket.size() >= treeifyThreshold()) {
+            TreeBucket tree = new TreeBucket();
+            tree.addAll(bucket);
+            buckets[i] = tree;
+        }
+    }
+
+    /**
+     * Moves up to MIGRATION_STEPS non-empty old buckets to buckets, looking at no
+     * more than MIGRATION_STEPS * EMPTY_VISITS_PER_STEP empty ones on the way.
+     */
+    private void rehashStep() {
+        int emptyVisits = MIGRATION_STEPS * EMPTY_VISITS_PER_STEP;
+        int migrated = 0;
+        while (rehashIndex < oldBuckets.length && migrated < MIGRATION_STEPS && emptyVisits > 0) {
+            Collection<Node> bucket = oldBuckets[rehashIndex];
+            if (bucket == null || bucket.isEmpty()) {
+                emptyVisits -= 1;
+            } else {
+                migrated += 1;
+            }
+            migrateBucket(rehashIndex);
+            rehashIndex += 1;
+        }
+        if (rehashIndex == oldBuckets.length) {
+            oldBuckets = null;
+            rehashIndex = 0;
+        }
+    }
+
+    /** Moves the entries of old bucket I to buckets. */
+    private void migrateBucket(int i) {
+        Collection<Node> bucket = oldBuckets[i];
+        if (bucket == null) {
+            return;
+        }
+        oldBuckets[i] = null;
+        for (Node node : bucket) {
+            addNode(indexFor(node.hash, buckets.length), node);
+        }
     }
 
     @Override
     public void put(K key, V value) {
-        int bucketIndex = getBucketIndex(key);
+        int hash = hash(key);
+        int bucketIndex = prepareBucket(hash);
         // Check if key already exists in the bucket
-        for (Node node : buckets[bucketIndex]) {
-            if (key.equals(node.key)) {
-                node.value = value;
-                return;
-            }
+        Node node = findNode(buckets[bucketIndex], hash, key);
+        if (node != null) {
+            node.value = value;
+            return;
         }
 
         // If key not found, add new node
-        Node newNode = new Node(key, value);
-        buckets[bucketIndex].add(newNode);
+        addNode(bucketIndex, new Node(hash, key, value));
         size += 1;
 
         // Resize if loaded factor exceeded
         if ((double) size / buckets.length > loadFactor) {
-            resize();
+            if (incrementalResize) {
+                startIncrementalResize();
+            } else {
+                resize();
+            }
         }
     }
     /**
@@ -142,16 +410,27 @@ public class MyHashMap<K, V> implements Map61B<K, V> {
         }
     }
 
+    /**
+     * Helper method of put that makes buckets a table of twice the size and leaves
+     * the entries to be moved over by later operations.
+     */
+    private void startIncrementalResize() {
+        if (oldBuckets != null) {
+            // Inserts outran the rehash; it must end before the next one starts
+            for (int i = rehashIndex; i < oldBuckets.length; i++) {
+                migrateBucket(i);
+            }
+        }
+        oldBuckets = buckets;
+        rehashIndex = 0;
+        buckets = new Collection[oldBuckets.length * 2];
+    }
 
     @Override
     public V get(K key) {
-        int bucketIndex = getBucketIndex(key);
-        for (Node node : buckets[bucketIndex]) {
-            if (key.equals(node.key)) {
-                return node.value;
-            }
-        }
-        return null;
+        int hash = hash(key);
+        Node node = findNode(buckets[prepareBucket(hash)], hash, key);
+        return node == null ? null : node.value;
     }
 
     @Override
@@ -162,21 +441,22 @@ public class MyHashMap<K, V> implements Map61B<K, V> {
 
     @Override
     public boolean containsKey(K key) {
-        int bucketIndex = getBucketIndex(key);
-        for (Node node : buckets[bucketIndex]) {
-            if (key.equals(node.key)) {
-                return true;
-            }
-        }
-        return false;
+        int hash = hash(key);
+        return findNode(buckets[prepareBucket(hash)], hash, key) != null;
     }
 
 
     @Override
     public void clear() {
-        for (Collection<Node> bucket : buckets) {
-            bucket.clear();
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] instanceof MyHashMap<?, ?>.TreeBucket) {
+                buckets[i] = createBucket();
+            } else if (buckets[i] != null) {
+                buckets[i].clear();
+            }
         }
+        oldBuckets = null;
+        rehashIndex = 0;
         size = 0;
     }
 
@@ -184,27 +464,42 @@ public class MyHashMap<K, V> implements Map61B<K, V> {
     public Set<K> keySet() {
         Set<K> keys = new HashSet<>();
 
-        for (Collection<Node> bucket : buckets) {
+        addKeys(buckets, keys);
+        if (oldBuckets != null) {
+            addKeys(oldBuckets, keys);
+        }
+        return keys;
+    }
+
+    /** Helper method of keySet that adds the keys of every bucket of TABLE to KEYS */
+    private void addKeys(Collection<Node>[] table, Set<K> keys) {
+        for (Collection<Node> bucket : table) {
+            if (bucket == null) {
+                continue;
+            }
             for (Node node : bucket) {
                 keys.add(node.key);
             }
         }
-        return keys;
     }
 
     @Override
     public V remove(K key) {
-        int bucketIndex = getBucketIndex(key);
+        int hash = hash(key);
+        int bucketIndex = prepareBucket(hash);
         Collection<Node> bucket = buckets[bucketIndex];
-        for (Node node : bucket) {
-            if (key.equals(node.key)) {
-                V value = node.value;
-                bucket.remove(node);
-                size -= 1;
-                return value;
-            }
+        Node node = findNode(bucket, hash, key);
+        if (node == null) {
+            return null;
         }
-        return null;
+        bucket.remove(node);
+        size -= 1;
+        if (bucket instanceof MyHashMap<?, ?>.TreeBucket && bucket.size() <= treeifyThreshold() / 4 * 3) {
+            Collection<Node> list = createBucket();
+            list.addAll(bucket);
+            buckets[bucketIndex] = list;
+        }
+        return node.value;
     }
 
     @Override
@@ -0,0 +1,289 @@
+package hashmap;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ *  An open-addressing hash table-backed Map implementation using Robin Hood
+ *  linear probing.
+ *
+ *  Instead of a bucket of Nodes per slot, entries live directly in three parallel
+ *  arrays: the mixed hash, the key and the value of slot i are hashes[i], keys[i]
+ *  and values[i], and an empty slot has a null key. A lookup is a linear scan from
+ *  the key's home slot over adjacent array entries, comparing the cached hashes
+ *  before calling equals.
+ *
+ *  Robin Hood insertion keeps every probe sequence short: an entry being inserted
+ *  takes the slot of any entry that is closer to its own home slot, and that entry
+ *  moves on instead. As a result entries along a run are ordered by the distance
+ *  from their home slot, so a lookup can stop as soon as it meets an entry closer
+ *  to home than itself. remove() shifts the entries after the removed one back by
+ *  one slot until it meets an empty slot or an entry at its home, so no tombstones
+ *  are ever left behind.
+ *
+ *  Assumes null keys will never be inserted, and does not resize down upon remove().
+ */
+public class RobinHoodHashMap<K, V> implements Map61B<K, V> {
+    /** Multiplier of Fibonacci hashing: 2^32 divided by the golden ratio. */
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /* Instance Variables */
+    private int[] hashes;
+    private Object[] keys;
+    private Object[] values;
+    private int size;
+    private final double loadFactor;
+    /** Most entries the backing arrays hold before they grow. */
+    private int threshold;
+    /** Number of low bits of a mixed hash that are not part of its home slot. */
+    private int shift;
+    /** Number of structural changes, for the fail-fast iterator. */
+    private int modCount;
+
+    /** Constructors */
+    public RobinHoodHashMap() {
+        this(16, 0.75);
+    }
+
+    public RobinHoodHashMap(int initialCapacity) {
+        this(initialCapacity, 0.75);
+    }
+
+    /**
+     * RobinHoodHashMap constructor that creates backing arrays of at least
+     * initialCapacity slots, rounded up to a power of two.
+     * The load factor (# items / # slots) should always be <= loadFactor
+     *
+     * @param initialCapacity initial size of the backing arrays
+     * @param loadFactor maximum load factor, at most 1
+     */
+    public RobinHoodHashMap(int initialCapacity, double loadFactor) {
+        if (initialCapacity < 0 || !(loadFactor > 0 && loadFactor <= 1)) {
+            throw new IllegalArgumentException("Invalid capacity or load factor");
+        }
+        this.loadFactor = loadFactor;
+        int capacity = 1;
+        while (capacity < initialCapacity && capacity < MAXIMUM_CAPACITY) {
+            capacity <<= 1;
+        }
+        allocate(Math.max(capacity, 2));
+    }
+
+    private void allocate(int capacity) {
+        hashes = new int[capacity];
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        shift = Integer.numberOfLeadingZeros(capacity - 1);
+        threshold = capacity == MAXIMUM_CAPACITY
+                ? Integer.MAX_VALUE : Math.min((int) (capacity * loadFactor), capacity - 1);
+    }
+
+    /** Returns the number of slots of the backing arrays. */
+    int capacity() {
+        return keys.length;
+    }
+
+    /** Helper method to validate key and spread its hash code over all 32 bits */
+    private static int hash(Object key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Null key not allowed!");
+        }
+        return key.hashCode() * GOLDEN_RATIO;
+    }
+
+    /** Returns the home slot of HASH: its high bits, which Fibonacci hashing mixes best. */
+    private int home(int hash) {
+        return hash >>> shift;
+    }
+
+    /** Returns how far the entry in the occupied SLOT is from its home slot. */
+    private int distance(int slot) {
+        return (slot - home(hashes[slot])) & (keys.length - 1);
+    }
+
+    /** Returns the slot of KEY, whose mixed hash is HASH, or -1 if it is absent. */
+    private int find(Object key, int hash) {
+        int mask = keys.length - 1;
+        int slot = home(hash);
+        for (int dist = 0; ; dist += 1) {
+            Object k = keys[slot];
+            if (k == null || distance(slot) < dist) {
+                return -1;
+            }
+            if (hashes[slot] == hash && key.equals(k)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public void put(K key, V value) {
+        int hash = hash(key);
+        int slot = find(key, hash);
+        if (slot != -1) {
+            values[slot] = value;
+            return;
+        }
+        if (size >= threshold) {
+            resize();
+        }
+        insert(hash, key, value);
+        size += 1;
+        modCount += 1;
+    }
+
+    /** Inserts an entry whose key is known to be absent, displacing richer entries on the way. */
+    private void insert(int hash, Object key, Object value) {
+        int mask = keys.length - 1;
+        int slot = home(hash);
+        int dist = 0;
+        while (keys[slot] != null) {
+            int existing = distance(slot);
+            if (existing < dist) {
+                // Take the slot and carry on with the entry that was there
+                int h = hashes[slot];
+                Object k = keys[slot];
+                Object v = values[slot];
+                hashes[slot] = hash;
+                keys[slot] = key;
+                values[slot] = value;
+                hash = h;
+                key = k;
+                value = v;
+                dist = existing;
+            }
+            slot = (slot + 1) & mask;
+            dist += 1;
+        }
+        hashes[slot] = hash;
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    /**
+     * Helper method of put: doubles the backing arrays and reinserts every entry,
+     * reusing the cached hashes. The old table is walked from an empty slot on, so
+     * that no run is split where it wraps around and entries with the same home slot
+     * keep their order.
+     */
+    private void resize() {
+        if (keys.length == MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("Map is full");
+        }
+        int[] oldHashes = hashes;
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        int mask = oldKeys.length - 1;
+        int start = 0;
+        while (oldKeys[start] != null) {
+            start += 1;
+        }
+        for (int n = 1; n <= oldKeys.length; n += 1) {
+            int i = (start + n) & mask;
+            if (oldKeys[i] != null) {
+                insert(oldHashes[i], oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        int slot = find(key, hash(key));
+        return slot == -1 ? null : (V) values[slot];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return find(key, hash(key)) != -1;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+        modCount += 1;
+    }
+
+    @Override
+    public Set<K> keySet() {
+        Set<K> keySet = new HashSet<>();
+        for (K key : this) {
+            keySet.add(key);
+        }
+        return keySet;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(K key) {
+        int slot = find(key, hash(key));
+        if (slot == -1) {
+            return null;
+        }
+        V value = (V) values[slot];
+        // Backward-shift deletion: pull the rest of the run one slot closer to home
+        int mask = keys.length - 1;
+        int next = (slot + 1) & mask;
+        while (keys[next] != null && distance(next) > 0) {
+            hashes[slot] = hashes[next];
+            keys[slot] = keys[next];
+            values[slot] = values[next];
+            slot = next;
+            next = (next + 1) & mask;
+        }
+        keys[slot] = null;
+        values[slot] = null;
+        size -= 1;
+        modCount += 1;
+        return value;
+    }
+
+    /** Returns an iterator over the keys in slot order, which fails fast on modification. */
+    @Override
+    public Iterator<K> iterator() {
+        return new Iterator<>() {
+            private final int expectedModCount = modCount;
+            private int slot = advance(0);
+
+            private int advance(int from) {
+                while (from < keys.length && keys[from] == null) {
+                    from += 1;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot < keys.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public K next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                K key = (K) keys[slot];
+                slot = advance(slot + 1);
+                return key;
+            }
+        };
+    }
+}
@@ -0,0 +1,230 @@
+package hashmap;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Runs the MyHashMap tests against ConcurrentMyHashMap, then checks it while many
+ * threads put, remove and read at once, through several cooperative resizes.
+ */
+public class TestConcurrentMyHashMap {
+    private static final int THREADS = 8;
+
+    @DisplayName("clear")
+    @Test
+    public void testClear() {
+        TestMyHashMap.sanityClearTest(new ConcurrentMyHashMap<>());
+    }
+
+    @DisplayName("containsKey")
+    @Test
+    public void testContainsKey() {
+        TestMyHashMap.containsKeyTest(new ConcurrentMyHashMap<>());
+    }
+
+    @DisplayName("get")
+    @Test
+    public void testGet() {
+        TestMyHashMap.sanityGetTest(new ConcurrentMyHashMap<>());
+    }
+
+    @DisplayName("size")
+    @Test
+    public void testSize() {
+        TestMyHashMap.sanitySizeTest(new ConcurrentMyHashMap<>());
+    }
+
+    @DisplayName("put")
+    @Test
+    public void testPut() {
+        TestMyHashMap.sanityPutTest(new ConcurrentMyHashMap<>());
+    }
+
+    @DisplayName("functionality")
+    @Test
+    public void testFunctionality() {
+        TestMyHashMap.functionalityTest(new ConcurrentMyHashMap<>(), new ConcurrentMyHashMap<>());
+    }
+
+    @DisplayName("edge cases")
+    @Test
+    public void testEdgeCases() {
+        TestMyHashMap.edgeCasesTest(new ConcurrentMyHashMap<>());
+        // A capacity below the stripe count still gets one bucket per stripe
+        TestMyHashMap.edgeCasesTest(new ConcurrentMyHashMap<>(1));
+    }
+
+    @DisplayName("keySet")
+    @Test
+    public void testKeySet() {
+        TestMyHashMapExtra.sanityKeySetTest(new ConcurrentMyHashMap<>());
+    }
+
+    @DisplayName("createBucket")
+    @Test
+    public void testCreateBucket() {
+        TestMyHashMap.sanityPutTest(linkedBuckets());
+        TestMyHashMap.sanityClearTest(linkedBuckets());
+    }
+
+    private static ConcurrentMyHashMap<String, Integer> linkedBuckets() {
+        return new ConcurrentMyHashMap<>() {
+            @Override
+            protected Collection<Node> createBucket() {
+                return new LinkedList<>();
+            }
+        };
+    }
+
+    @DisplayName("putIfAbsent")
+    @Test
+    public void testPutIfAbsent() {
+        ConcurrentMyHashMap<String, Integer> map = new ConcurrentMyHashMap<>();
+        assertThat(map.putIfAbsent("a", 1)).isNull();
+        assertThat(map.putIfAbsent("a", 2)).isEqualTo(1);
+        assertThat(map.get("a")).isEqualTo(1);
+        // A null value counts as absent
+        map.put("b", null);
+        assertThat(map.putIfAbsent("b", 3)).isNull();
+        assertThat(map.get("b")).isEqualTo(3);
+        assertThat(map.size()).isEqualTo(2);
+    }
+
+    /** Each thread puts its own range of keys into a map that starts at its smallest. */
+    @DisplayName("concurrent puts")
+    @Test
+    public void testConcurrentPuts() {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            ConcurrentMyHashMap<Integer, Integer> map = new ConcurrentMyHashMap<>(1);
+            int perThread = 20000;
+            runConcurrently(t -> () -> {
+                for (int i = t * perThread; i < (t + 1) * perThread; i++) {
+                    map.put(i, -i);
+                }
+                return null;
+            });
+            assertThat(map.size()).isEqualTo(THREADS * perThread);
+            for (int i = 0; i < THREADS * perThread; i++) {
+                assertThat(map.get(i)).isEqualTo(-i);
+            }
+            assertThat(map.keySet()).hasSize(THREADS * perThread);
+        });
+    }
+
+    /**
+     * Keys put before the writers start are never removed, so a reader must find
+     * every one of them while the other keys are put and removed around it.
+     */
+    @DisplayName("lock-free reads during resize")
+    @Test
+    public void testReadsDuringResize() {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            ConcurrentMyHashMap<Integer, Integer> map = new ConcurrentMyHashMap<>(2);
+            int stable = 1000;
+            for (int i = 0; i < stable; i++) {
+                map.put(i, i);
+            }
+            AtomicBoolean writing = new AtomicBoolean(true);
+            AtomicInteger writers = new AtomicInteger(THREADS / 2);
+            runConcurrently(t -> () -> {
+                if (t % 2 == 0) {
+                    for (int i = stable + t; i < stable + 100000; i += THREADS) {
+                        map.put(i, i);
+                        if (i % 3 == 0) {
+                            map.remove(i);
+                        }
+                    }
+                    if (writers.decrementAndGet() == 0) {
+                        writing.set(false);
+                    }
+                } else {
+                    while (writing.get()) {
+                        for (int i = 0; i < stable; i++) {
+                            assertThat(map.get(i)).isEqualTo(i);
+                        }
+                        assertThat(map.keySet().size()).isAtLeast(stable);
+                    }
+                }
+                return null;
+            });
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < stable; i++) {
+                expected.add(i);
+            }
+            for (int t = 0; t < THREADS; t += 2) {
+                for (int i = stable + t; i < stable + 100000; i += THREADS) {
+                    if (i % 3 != 0) {
+                        expected.add(i);
+                    }
+                }
+            }
+            assertThat(map.keySet()).isEqualTo(expected);
+            assertThat(map.size()).isEqualTo(expected.size());
+        });
+    }
+
+    /** All threads race to putIfAbsent the same keys: exactly one wins each key. */
+    @DisplayName("concurrent putIfAbsent")
+    @Test
+    public void testConcurrentPutIfAbsent() {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            ConcurrentMyHashMap<String, Integer> map = new ConcurrentMyHashMap<>(4);
+            int keys = 10000;
+            AtomicInteger wins = new AtomicInteger();
+            runConcurrently(t -> () -> {
+                for (int i = 0; i < keys; i++) {
+                    if (map.putIfAbsent("key" + i, t) == null) {
+                        wins.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+            assertThat(wins.get()).isEqualTo(keys);
+            assertThat(map.size()).isEqualTo(keys);
+        });
+    }
+
+    private interface Task {
+        Callable<Void> forThread(int t);
+    }
+
+    /** Starts THREADS threads running TASK at once, and rethrows the first failure. */
+    private static void runConcurrently(Task task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                Callable<Void> body = task.forThread(t);
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return body.call();
+                }));
+            }
+            start.countDown();
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
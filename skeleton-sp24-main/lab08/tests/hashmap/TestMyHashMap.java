@@ -42,7 +42,7 @@ public class TestMyHashMap {
         sanityClearTest(new MyHashMap<>());
     }
 
-    public static void sanityClearTest(MyHashMap<String, Integer> b) {
+    public static void sanityClearTest(Map61B<String, Integer> b) {
         for (int i = 0; i < 455; i++) {
             b.put("hi" + i, i);
             //make sure put is working via containsKey and get
@@ -65,7 +65,7 @@ public class TestMyHashMap {
         containsKeyTest(new MyHashMap<>());
     }
 
-    public static void containsKeyTest(MyHashMap<String, Integer> b) {
+    public static void containsKeyTest(Map61B<String, Integer> b) {
         assertThat(b.containsKey("waterYouDoingHere")).isFalse();
         b.put("waterYouDoingHere", 0);
         assertThat(b.containsKey("waterYouDoingHere")).isTrue();
@@ -82,7 +82,7 @@ public class TestMyHashMap {
         sanityGetTest(new MyHashMap<>());
     }
 
-    public static void sanityGetTest(MyHashMap<String, Integer> b) {
+    public static void sanityGetTest(Map61B<String, Integer> b) {
         assertThat(b.get("starChild")).isNull();
         b.put("starChild", 5);
         assertThat(b.get("starChild")).isEqualTo(5);
@@ -98,7 +98,7 @@ public class TestMyHashMap {
         sanitySizeTest(new MyHashMap<>());
     }
 
-    public static void sanitySizeTest(MyHashMap<String, Integer> b) {
+    public static void sanitySizeTest(Map61B<String, Integer> b) {
         assertThat(b.size()).isEqualTo(0);
         b.put("hi", 1);
         assertThat(b.size()).isEqualTo(1);
@@ -115,7 +115,7 @@ public class TestMyHashMap {
         sanityPutTest(new MyHashMap<>());
     }
 
-    public static void sanityPutTest(MyHashMap<String, Integer> b) {
+    public static void sanityPutTest(Map61B<String, Integer> b) {
         b.put("hi", 1);
         assertThat(b.containsKey("hi")).isTrue();
         assertThat(b.get("hi")).isEqualTo(1);
@@ -128,8 +128,8 @@ public class TestMyHashMap {
         functionalityTest(new MyHashMap<>(), new MyHashMap<>());
     }
 
-    public static void functionalityTest(MyHashMap<String, String> dictionary,
-                                         MyHashMap<String, Integer> studentIDs) {
+    public static void functionalityTest(Map61B<String, String> dictionary,
+                                         Map61B<String, Integer> studentIDs) {
         assertThat(dictionary.size()).isEqualTo(0);
 
         // can put objects in dictionary and get them
@@ -239,7 +239,7 @@ public class TestMyHashMap {
      * Does your map behave the same way?
      * Note Bee's strange equals and hashCode implementations!
      */
-    static void edgeCasesTest(MyHashMap<Bee, Integer> map) {
+    static void edgeCasesTest(Map61B<Bee, Integer> map) {
 
         Map<Bee, Integer> ref = new HashMap<>();
 
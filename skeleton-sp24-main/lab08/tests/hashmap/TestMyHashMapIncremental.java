@@ -0,0 +1,95 @@
+package hashmap;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Runs the MyHashMap tests against a MyHashMap that resizes incrementally. */
+public class TestMyHashMapIncremental {
+
+    private static <K, V> MyHashMap<K, V> incremental() {
+        return new MyHashMap<>(16, 0.75, true);
+    }
+
+    @DisplayName("clear")
+    @Test
+    public void testClear() {
+        TestMyHashMap.sanityClearTest(incremental());
+    }
+
+    @DisplayName("containsKey")
+    @Test
+    public void testContainsKey() {
+        TestMyHashMap.containsKeyTest(incremental());
+    }
+
+    @DisplayName("get")
+    @Test
+    public void testGet() {
+        TestMyHashMap.sanityGetTest(incremental());
+    }
+
+    @DisplayName("size")
+    @Test
+    public void testSize() {
+        TestMyHashMap.sanitySizeTest(incremental());
+    }
+
+    @DisplayName("functionality")
+    @Test
+    public void testFunctionality() {
+        TestMyHashMap.functionalityTest(incremental(), incremental());
+    }
+
+    @DisplayName("resize")
+    @Test
+    public void testResize() {
+        TestMyHashMap.sanityResizeTest(incremental(), 16, 0.75);
+        TestMyHashMap.sanityResizeTest(new MyHashMap<>(64, 0.5, true), 64, 0.5);
+    }
+
+    @DisplayName("edge cases")
+    @Test
+    public void testEdgeCases() {
+        TestMyHashMap.edgeCasesTest(incremental());
+    }
+
+    @DisplayName("keySet")
+    @Test
+    public void testKeySet() {
+        TestMyHashMapExtra.sanityKeySetTest(incremental());
+    }
+
+    /**
+     * Mixes puts, gets and removes while rehashes are under way, and checks every
+     * operation and the key set against Java's HashMap.
+     */
+    @DisplayName("random operations")
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(22);
+        MyHashMap<Integer, Integer> map = new MyHashMap<>(2, 0.75, true);
+        Map<Integer, Integer> ref = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            Integer key = random.nextInt(20000);
+            switch (random.nextInt(4)) {
+                case 0 -> assertThat(map.remove(key)).isEqualTo(ref.remove(key));
+                case 1 -> assertThat(map.get(key)).isEqualTo(ref.get(key));
+                default -> {
+                    map.put(key, i);
+                    ref.put(key, i);
+                }
+            }
+            assertThat(map.size()).isEqualTo(ref.size());
+            if (i % 10000 == 0) {
+                assertThat(map.keySet()).isEqualTo(ref.keySet());
+            }
+        }
+        assertThat(map.keySet()).isEqualTo(ref.keySet());
+    }
+}
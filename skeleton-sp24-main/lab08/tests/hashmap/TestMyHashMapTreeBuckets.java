@@ -0,0 +1,160 @@
+package hashmap;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import speed.StringUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Tests MyHashMap with keys whose hash codes are all equal, so that every key
+ * lands in one bucket and that bucket becomes a tree and back again.
+ */
+public class TestMyHashMapTreeBuckets {
+    /** The hash code of collidingStrings(20), shared by the other keys of testMixedKeys. */
+    private static final int HASH = collidingStrings(20).get(0).hashCode();
+
+    /** Returns N distinct strings of equal length with equal hash codes. */
+    static List<String> collidingStrings(int n) {
+        int blocks = Math.max(1, 32 - Integer.numberOfLeadingZeros(n - 1));
+        List<String> strings = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            strings.add(StringUtils.collidingString(i, blocks));
+        }
+        return strings;
+    }
+
+    @DisplayName("colliding strings")
+    @Test
+    public void testCollidingStrings() {
+        List<String> keys = collidingStrings(1000);
+        assertThat(keys.get(0).hashCode()).isEqualTo(keys.get(999).hashCode());
+        MyHashMap<String, Integer> map = new MyHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            map.put(keys.get(i), i);
+        }
+        assertThat(map.size()).isEqualTo(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertThat(map.get(keys.get(i))).isEqualTo(i);
+        }
+        assertThat(map.get("AaAaAaAaAaAaAaAaAaAaAaAaAaAaAaAaAaAaAaAaAaAaAaAa")).isNull();
+        assertThat(map.keySet()).containsExactlyElementsIn(keys);
+    }
+
+    /** Puts and removes colliding keys, so the bucket crosses both thresholds many times. */
+    @DisplayName("random operations")
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(24);
+        List<String> keys = collidingStrings(32);
+        List<MyHashMap<String, Integer>> maps = List.of(new MyHashMap<>(), new MyHashMap<>(4, 0.75, true),
+                new MyHashMap<>() {
+                    @Override
+                    protected Collection<Node> createBucket() {
+                        return new LinkedList<>();
+                    }
+                });
+        for (MyHashMap<String, Integer> map : maps) {
+            Map<String, Integer> ref = new HashMap<>();
+            for (int i = 0; i < 20000; i++) {
+                String key = keys.get(random.nextInt(keys.size()));
+                switch (random.nextInt(3)) {
+                    case 0 -> assertThat(map.remove(key)).isEqualTo(ref.remove(key));
+                    case 1 -> assertThat(map.get(key)).isEqualTo(ref.get(key));
+                    default -> {
+                        map.put(key, i);
+                        ref.put(key, i);
+                    }
+                }
+                assertThat(map.size()).isEqualTo(ref.size());
+            }
+            assertThat(map.keySet()).isEqualTo(ref.keySet());
+            map.clear();
+            assertThat(map.size()).isEqualTo(0);
+            assertThat(map.get(keys.get(0))).isNull();
+        }
+    }
+
+    /**
+     * Keys with equal hashes that the tree cannot order by compareTo: of two
+     * Comparable classes, one that is not Comparable, and one whose compareTo
+     * disagrees with equals.
+     */
+    @DisplayName("mixed keys")
+    @Test
+    public void testMixedKeys() {
+        MyHashMap<Object, Integer> map = new MyHashMap<>();
+        Map<Object, Integer> ref = new HashMap<>();
+        List<Object> keys = new ArrayList<>();
+        keys.addAll(collidingStrings(20));
+        keys.add(HASH);
+        for (int i = 0; i < 20; i++) {
+            keys.add(new Plain(i));
+            keys.add(new Coarse(i));
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            map.put(keys.get(i), i);
+            ref.put(keys.get(i), i);
+        }
+        for (Object key : keys) {
+            assertThat(map.get(key)).isEqualTo(ref.get(key));
+        }
+        for (int i = 0; i < keys.size(); i += 2) {
+            assertThat(map.remove(keys.get(i))).isEqualTo(ref.remove(keys.get(i)));
+        }
+        for (Object key : keys) {
+            assertThat(map.containsKey(key)).isEqualTo(ref.containsKey(key));
+        }
+        assertThat(map.size()).isEqualTo(ref.size());
+    }
+
+    /**
+     * 2^15 keys in one bucket: a list bucket needs about 2^29 equals calls to put
+     * them all, while a tree needs about 15 comparisons per put.
+     */
+    @DisplayName("lookups stay logarithmic")
+    @Test
+    public void testCollisionAttack() {
+        List<String> keys = collidingStrings(1 << 15);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            MyHashMap<String, Integer> map = new MyHashMap<>();
+            for (int i = 0; i < keys.size(); i++) {
+                map.put(keys.get(i), i);
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                assertThat(map.get(keys.get(i))).isEqualTo(i);
+            }
+        });
+    }
+
+    /** Not Comparable, with the hash code of the colliding strings. */
+    private record Plain(int id) {
+        @Override
+        public int hashCode() {
+            return HASH;
+        }
+    }
+
+    /** Comparable by id / 5 only, so compareTo is 0 for keys that are not equal. */
+    private record Coarse(int id) implements Comparable<Coarse> {
+        @Override
+        public int hashCode() {
+            return HASH;
+        }
+
+        @Override
+        public int compareTo(Coarse o) {
+            return Integer.compare(id / 5, o.id / 5);
+        }
+    }
+}
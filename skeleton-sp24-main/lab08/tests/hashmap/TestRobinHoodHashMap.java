@@ -0,0 +1,153 @@
+package hashmap;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Runs the MyHashMap tests against RobinHoodHashMap, and checks removal and
+ * resizing of the open-addressing table against Java's HashMap.
+ */
+public class TestRobinHoodHashMap {
+
+    @DisplayName("clear")
+    @Test
+    public void testClear() {
+        TestMyHashMap.sanityClearTest(new RobinHoodHashMap<>());
+    }
+
+    @DisplayName("containsKey")
+    @Test
+    public void testContainsKey() {
+        TestMyHashMap.containsKeyTest(new RobinHoodHashMap<>());
+    }
+
+    @DisplayName("get")
+    @Test
+    public void testGet() {
+        TestMyHashMap.sanityGetTest(new RobinHoodHashMap<>());
+    }
+
+    @DisplayName("size")
+    @Test
+    public void testSize() {
+        TestMyHashMap.sanitySizeTest(new RobinHoodHashMap<>());
+    }
+
+    @DisplayName("put")
+    @Test
+    public void testPut() {
+        TestMyHashMap.sanityPutTest(new RobinHoodHashMap<>());
+    }
+
+    @DisplayName("functionality")
+    @Test
+    public void testFunctionality() {
+        TestMyHashMap.functionalityTest(new RobinHoodHashMap<>(), new RobinHoodHashMap<>());
+    }
+
+    @DisplayName("edge cases")
+    @Test
+    public void testEdgeCases() {
+        TestMyHashMap.edgeCasesTest(new RobinHoodHashMap<>());
+        // A table that is nearly full, so that runs wrap around
+        TestMyHashMap.edgeCasesTest(new RobinHoodHashMap<>(2, 1.0));
+    }
+
+    @DisplayName("keySet")
+    @Test
+    public void testKeySet() {
+        TestMyHashMapExtra.sanityKeySetTest(new RobinHoodHashMap<>());
+    }
+
+    /** Same as TestMyHashMap.sanityResizeTest, reading the capacity directly. */
+    @DisplayName("resize")
+    @Test
+    public void testResize() {
+        resizeTest(new RobinHoodHashMap<>(), 16, 0.75);
+        resizeTest(new RobinHoodHashMap<>(32), 32, 0.75);
+        resizeTest(new RobinHoodHashMap<>(64, 0.5), 64, 0.5);
+        resizeTest(new RobinHoodHashMap<>(16, 0.95), 16, 0.95);
+    }
+
+    private static void resizeTest(RobinHoodHashMap<String, Integer> m, int initialCapacity, double loadFactor) {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertThat(m.capacity()).isEqualTo(initialCapacity);
+            for (int i = 0; i < 100000; i++) {
+                m.put("hi" + i, i);
+                assertThat((double) m.size() / m.capacity()).isAtMost(loadFactor);
+            }
+        });
+    }
+
+    @DisplayName("remove")
+    @Test
+    public void testRemove() {
+        RobinHoodHashMap<String, String> q = new RobinHoodHashMap<>();
+        q.put("c", "a");
+        q.put("b", "a");
+        q.put("a", "a");
+        q.put("d", "a");
+        q.put("e", "a");
+        assertThat(q.remove("c")).isNotNull();
+        assertThat(q.remove("f")).isNull();
+        assertThat(q.containsKey("c")).isFalse();
+        assertThat(q.containsKey("a")).isTrue();
+        assertThat(q.containsKey("e")).isTrue();
+        assertThat(q.size()).isEqualTo(4);
+    }
+
+    /**
+     * Mixes puts and removes on a small key space, so that runs grow, wrap around
+     * and are shifted back, and checks every operation against Java's HashMap.
+     */
+    @DisplayName("random operations")
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(8);
+        for (int keySpace : new int[] {10, 100, 5000}) {
+            RobinHoodHashMap<Integer, Integer> map = new RobinHoodHashMap<>(2, 0.9);
+            Map<Integer, Integer> ref = new HashMap<>();
+            for (int i = 0; i < 100000; i++) {
+                // Keys whose hash codes differ only in the high or only in the low bits
+                Integer key = random.nextInt(keySpace) * (random.nextBoolean() ? 1 : 1 << 16);
+                switch (random.nextInt(3)) {
+                    case 0 -> assertThat(map.remove(key)).isEqualTo(ref.remove(key));
+                    case 1 -> assertThat(map.get(key)).isEqualTo(ref.get(key));
+                    default -> {
+                        map.put(key, i);
+                        ref.put(key, i);
+                    }
+                }
+                assertThat(map.size()).isEqualTo(ref.size());
+            }
+            assertThat(map.keySet()).isEqualTo(ref.keySet());
+            for (Integer key : ref.keySet()) {
+                assertThat(map.get(key)).isEqualTo(ref.get(key));
+            }
+        }
+    }
+
+    @DisplayName("iterator")
+    @Test
+    public void testIterator() {
+        RobinHoodHashMap<String, Integer> map = new RobinHoodHashMap<>();
+        map.put("a", 1);
+        map.put("b", 2);
+        Iterator<String> keys = map.iterator();
+        keys.next();
+        map.put("c", 3);
+        assertThrows(ConcurrentModificationException.class, keys::next);
+        assertThrows(IllegalArgumentException.class, () -> map.put(null, 1));
+    }
+}
@@ -0,0 +1,124 @@
+package speed;
+
+import java.util.HashMap;
+import java.util.Scanner;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import hashmap.MyHashMap;
+import hashmap.RobinHoodHashMap;
+
+import static speed.InsertRandomSpeedTest.waitForPositiveInt;
+
+/**
+ * Times puts and gets of keys chosen to collide, at sizes N, 2N, 4N and 8N, so that
+ * how the time per operation grows with the size shows whether a map degrades to
+ * a linear scan:
+ *
+ *     colliding strings   distinct strings that all have the same hashCode(),
+ *                         which any hash mixing leaves in one bucket
+ *     shifted integers    Integers i << 16, whose hash codes differ only in bits
+ *                         that a table of fewer than 65536 buckets ignores
+ *
+ * MyHashMap is timed with tree buckets, and with treeifyThreshold() disabled so
+ * that colliding keys stay in one ArrayList bucket.
+ */
+public class CollisionAttackSpeedTest {
+    private static final int[] SIZE_MULTIPLES = {1, 2, 4, 8};
+
+    /** The two operations timed on each map. */
+    private record Target(BiConsumer<Object, Integer> put, Function<Object, Integer> get) { }
+
+    private record Candidate(String name, Supplier<Target> factory) { }
+
+    /**
+     * Requests user input and times each map on each set of keys. ARGS is unused.
+     */
+    public static void main(String[] args) {
+        Scanner input = new Scanner(System.in);
+
+        System.out.println("""
+
+                 This program puts and gets keys with colliding hash codes in
+                 different types of maps, at 1, 2, 4 and 8 times a size N.
+                 With list buckets the time per operation grows linearly with the
+                 size; start with an N of a few thousand.
+                """);
+
+        Candidate[] candidates = {
+            new Candidate("MyHashMap, tree buckets", () -> {
+                MyHashMap<Object, Integer> map = new MyHashMap<>();
+                return new Target(map::put, map::get);
+            }),
+            new Candidate("MyHashMap, list buckets only", () -> {
+                MyHashMap<Object, Integer> map = new MyHashMap<>() {
+                    @Override
+                    protected int treeifyThreshold() {
+                        return Integer.MAX_VALUE;
+                    }
+                };
+                return new Target(map::put, map::get);
+            }),
+            new Candidate("RobinHoodHashMap", () -> {
+                RobinHoodHashMap<Object, Integer> map = new RobinHoodHashMap<>();
+                return new Target(map::put, map::get);
+            }),
+            new Candidate("Java's Built-in HashMap", () -> {
+                HashMap<Object, Integer> map = new HashMap<>();
+                return new Target(map::put, map::get);
+            }),
+        };
+
+        String repeat;
+        do {
+            System.out.print("\nEnter N: ");
+            int N = waitForPositiveInt(input);
+            int blocks = 32 - Integer.numberOfLeadingZeros(8 * N - 1);
+            timeKeys("colliding strings", i -> StringUtils.collidingString(i, blocks), N, candidates);
+            timeKeys("shifted integers", i -> i << 16, N, candidates);
+
+            System.out.print("\nWould you like to try more timed-tests? (y/n)");
+            repeat = input.nextLine();
+        } while (!repeat.equalsIgnoreCase("n") && !repeat.equalsIgnoreCase("no"));
+        input.close();
+    }
+
+    /**
+     * Prints the nanoseconds per put and per get of each candidate for the keys
+     * KEY(0), KEY(1), ... at each multiple of N.
+     */
+    private static void timeKeys(String label, IntFunction<Object> key, int N, Candidate[] candidates) {
+        Object[] keys = new Object[8 * N];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = key.apply(i);
+        }
+        System.out.printf("%n%-30s", label + " (ns/op)");
+        for (int multiple : SIZE_MULTIPLES) {
+            System.out.printf(" %19s", "put/get at " + multiple * N);
+        }
+        System.out.println();
+        for (Candidate candidate : candidates) {
+            System.out.printf("%-30s", candidate.name());
+            for (int multiple : SIZE_MULTIPLES) {
+                int size = multiple * N;
+                Target target = candidate.factory().get();
+                long start = System.nanoTime();
+                for (int i = 0; i < size; i++) {
+                    target.put().accept(keys[i], i);
+                }
+                long putTime = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < size; i++) {
+                    if (target.get().apply(keys[i]) != i) {
+                        throw new IllegalStateException(candidate.name() + " lost " + keys[i]);
+                    }
+                }
+                long getTime = System.nanoTime() - start;
+                System.out.printf(" %9.0f/%9.0f", (double) putTime / size, (double) getTime / size);
+            }
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package speed;
+
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import hashmap.ConcurrentMyHashMap;
+import hashmap.Map61B;
+import hashmap.MyHashMap;
+
+import static speed.InsertRandomSpeedTest.waitForPositiveInt;
+
+/**
+ * Measures the throughput of maps shared by 1 to 64 threads, for several mixes of
+ * reads and writes, in millions of operations per second.
+ *
+ * Each map is first filled with N Integer keys, drawn from a key space of 2N. Every
+ * thread then picks random keys from that space and gets them, or with the write
+ * probability of the mix puts or removes them, which keeps the map about N large.
+ *
+ * Throughput can only grow with the number of threads up to the number of cores;
+ * beyond that the runs show what contention and context switches cost.
+ */
+public class ConcurrentThroughputSpeedTest {
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+    /** Percent of operations that are writes, half puts and half removes. */
+    private static final int[] WRITE_PERCENTS = {0, 10, 50};
+    /** Operations between two looks at the clock. */
+    private static final int BATCH = 64;
+
+    /** The operations a thread runs against a map under test. */
+    private interface SharedMap {
+        Integer get(Integer key);
+        void put(Integer key, Integer value);
+        void remove(Integer key);
+    }
+
+    private record Candidate(String name, Supplier<SharedMap> factory) { }
+
+    /**
+     * Requests user input and measures the throughput of each map. ARGS is unused.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Scanner input = new Scanner(System.in);
+
+        System.out.println("""
+
+                 This program shares different types of maps between 1 to 64
+                 threads that get, put and remove <Integer, Integer> pairs, and
+                 measures how many operations per second they complete together.
+                """);
+        System.out.printf("This machine has %d processors.%n",
+                Runtime.getRuntime().availableProcessors());
+        System.out.print("How many milliseconds should each run last?: ");
+        int millis = waitForPositiveInt(input);
+
+        Candidate[] candidates = {
+            new Candidate("ConcurrentMyHashMap", () -> adapt(new ConcurrentMyHashMap<>())),
+            new Candidate("MyHashMap, synchronized", () -> synchronizedAdapt(new MyHashMap<>())),
+            new Candidate("Java's ConcurrentHashMap", ConcurrentThroughputSpeedTest::concurrentHashMap),
+        };
+
+        String repeat;
+        do {
+            System.out.print("\nEnter # keys to fill each map with: ");
+            int N = waitForPositiveInt(input);
+
+            System.out.printf("%n%-26s %7s", "Map (Mops/s)", "writes");
+            for (int threads : THREAD_COUNTS) {
+                System.out.printf(" %7s", threads + "T");
+            }
+            System.out.println();
+            for (int writePercent : WRITE_PERCENTS) {
+                for (Candidate candidate : candidates) {
+                    System.out.printf("%-26s %6d%%", candidate.name(), writePercent);
+                    for (int threads : THREAD_COUNTS) {
+                        SharedMap map = candidate.factory().get();
+                        for (int i = 0; i < N; i++) {
+                            map.put(i * 2, i);
+                        }
+                        double opsPerSecond = measure(map, threads, 2 * N, writePercent, millis);
+                        System.out.printf(" %7.2f", opsPerSecond / 1e6);
+                    }
+                    System.out.println();
+                }
+            }
+
+            System.out.print("\nWould you like to try more timed-tests? (y/n)");
+            repeat = input.nextLine();
+        } while (!repeat.equalsIgnoreCase("n") && !repeat.equalsIgnoreCase("no"));
+        input.close();
+    }
+
+    /**
+     * Runs THREADS threads against MAP for MILLIS milliseconds, each picking keys
+     * below KEYSPACE and writing WRITEPERCENT percent of the time, and returns the
+     * operations per second they completed together.
+     */
+    private static double measure(SharedMap map, int threads, int keySpace, int writePercent, int millis)
+            throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                ready.countDown();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long end = deadline[0];
+                while (System.nanoTime() < end) {
+                    for (int i = 0; i < BATCH; i++) {
+                        Integer key = random.nextInt(keySpace);
+                        int dice = random.nextInt(200);
+                        if (dice >= 2 * writePercent) {
+                            map.get(key);
+                        } else if (dice % 2 == 0) {
+                            map.put(key, i);
+                        } else {
+                            map.remove(key);
+                        }
+                    }
+                    count += BATCH;
+                }
+                operations.add(count);
+            });
+            workers[t].start();
+        }
+        ready.await();
+        long begin = System.nanoTime();
+        deadline[0] = begin + millis * 1_000_000L;
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        return operations.sum() / seconds;
+    }
+
+    private static SharedMap adapt(Map61B<Integer, Integer> map) {
+        return new SharedMap() {
+            @Override
+            public Integer get(Integer key) {
+                return map.get(key);
+            }
+
+            @Override
+            public void put(Integer key, Integer value) {
+                map.put(key, value);
+            }
+
+            @Override
+            public void remove(Integer key) {
+                map.remove(key);
+            }
+        };
+    }
+
+    /** Wraps every call to MAP in synchronized, the alternative to a concurrent map. */
+    private static SharedMap synchronizedAdapt(Map61B<Integer, Integer> map) {
+        return new SharedMap() {
+            @Override
+            public synchronized Integer get(Integer key) {
+                return map.get(key);
+            }
+
+            @Override
+            public synchronized void put(Integer key, Integer value) {
+                map.put(key, value);
+            }
+
+            @Override
+            public synchronized void remove(Integer key) {
+                map.remove(key);
+            }
+        };
+    }
+
+    private static SharedMap concurrentHashMap() {
+        ConcurrentHashMap<Integer, Integer> map = new ConcurrentHashMap<>();
+        return new SharedMap() {
+            @Override
+            public Integer get(Integer key) {
+                return map.get(key);
+            }
+
+            @Override
+            public void put(Integer key, Integer value) {
+                map.put(key, value);
+            }
+
+            @Override
+            public void remove(Integer key) {
+                map.remove(key);
+            }
+        };
+    }
+}
@@ -7,6 +7,7 @@ import edu.princeton.cs.algs4.Stopwatch;
 import hashmap.Map61B;
 import hashmap.ULLMap;
 import hashmap.MyHashMap;
+import hashmap.RobinHoodHashMap;
 
 import static speed.InsertRandomSpeedTest.waitForPositiveInt;
 
@@ -38,6 +39,10 @@ public class InsertInOrderSpeedTest {
             timeInOrderMap61B(new MyHashMap<>(),
                     waitForPositiveInt(input));
 
+            System.out.print("\nEnter # strings to insert into RobinHoodHashMap: ");
+            timeInOrderMap61B(new RobinHoodHashMap<>(),
+                    waitForPositiveInt(input));
+
             System.out.print("\nEnter # strings to insert into Java's HashMap: ");
             timeInOrderHashMap(new HashMap<>(),
                     waitForPositiveInt(input));
@@ -0,0 +1,89 @@
+package speed;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Scanner;
+import java.util.function.BiConsumer;
+
+import hashmap.MyHashMap;
+import hashmap.RobinHoodHashMap;
+
+import static speed.InsertRandomSpeedTest.waitForPositiveInt;
+
+/**
+ * Times every single insertion of N random strings of length L into each map and
+ * prints the latency percentiles, so that the pauses of a stop-the-world resize
+ * show up next to those of MyHashMap's incremental resize.
+ *
+ * Run it with a fixed, large heap, such as -Xms6g -Xmx6g for N = 4000000, so that
+ * garbage collection pauses do not hide the resize pauses in the maximum.
+ */
+public class InsertLatencySpeedTest {
+    private static final double[] PERCENTILES = {50, 99, 99.9, 99.99};
+
+    /**
+     * Requests user input and times the insertions into each map. ARGS is unused.
+     */
+    public static void main(String[] args) {
+        Scanner input = new Scanner(System.in);
+
+        System.out.println("""
+
+                 This program inserts random Strings of length L into different
+                 types of maps as <String, Integer> pairs, timing each insertion.
+                """);
+        System.out.print("What would you like L to be?: ");
+        int L = waitForPositiveInt(input);
+
+        String repeat;
+        do {
+            System.out.print("\nEnter # strings to insert into each map: ");
+            int N = waitForPositiveInt(input);
+            String[] keys = new String[N];
+            for (int i = 0; i < N; i++) {
+                keys[i] = StringUtils.randomString(L);
+            }
+
+            System.out.printf("%-34s %9s %9s %9s %9s %9s %9s%n", "Map (latencies in microseconds)",
+                    "p50", "p99", "p99.9", "p99.99", "max", "total s");
+            MyHashMap<String, Integer> stopTheWorld = new MyHashMap<>();
+            printLatencies("MyHashMap", timeInserts(keys, stopTheWorld::put));
+            MyHashMap<String, Integer> incremental = new MyHashMap<>(16, 0.75, true);
+            printLatencies("MyHashMap, incremental resize", timeInserts(keys, incremental::put));
+            RobinHoodHashMap<String, Integer> robinHood = new RobinHoodHashMap<>();
+            printLatencies("RobinHoodHashMap", timeInserts(keys, robinHood::put));
+            HashMap<String, Integer> hashMap = new HashMap<>();
+            printLatencies("Java's Built-in HashMap", timeInserts(keys, hashMap::put));
+
+            System.out.print("\nWould you like to try more timed-tests? (y/n)");
+            repeat = input.nextLine();
+        } while (!repeat.equalsIgnoreCase("n") && !repeat.equalsIgnoreCase("no"));
+        input.close();
+    }
+
+    /** Puts every key of KEYS with PUT and returns the nanoseconds each put took. */
+    public static long[] timeInserts(String[] keys, BiConsumer<String, Integer> put) {
+        long[] latencies = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            long start = System.nanoTime();
+            put.accept(keys[i], i);
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+
+    /** Prints the percentiles, maximum and sum of LATENCIES, which it sorts. */
+    private static void printLatencies(String name, long[] latencies) {
+        long total = 0;
+        for (long latency : latencies) {
+            total += latency;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%-34s", name);
+        for (double percentile : PERCENTILES) {
+            int rank = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            System.out.printf(" %9.2f", latencies[Math.max(rank, 0)] / 1e3);
+        }
+        System.out.printf(" %9.0f %9.2f%n", latencies[latencies.length - 1] / 1e3, total / 1e9);
+    }
+}
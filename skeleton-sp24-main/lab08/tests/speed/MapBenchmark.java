@@ -0,0 +1,244 @@
+package speed;
+
+import hashmap.ConcurrentMyHashMap;
+import hashmap.Map61B;
+import hashmap.RobinHoodHashMap;
+import hashmap.ULLMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static hashmap.MyHashMapFactory.createBucketedMap;
+
+/**
+ * Measures the Map61B implementations and Java's HashMap and TreeMap on put, get,
+ * remove and iteration, over SIZE random strings of length KEY_LENGTH, without
+ * the JIT warm-up and single runs of the interactive speed tests.
+ *
+ *     put      fills an empty map with every key; ops/s counts whole fills
+ *     get      looks up one key that is present
+ *     remove   removes one key and puts it back, so the size stays SIZE
+ *     iterate  visits every key once; ops/s counts whole iterations
+ *
+ * A map named "MyHashMap/X" is MyHashMapFactory.createBucketedMap with buckets of
+ * java.util.X. ULLMap does not support remove, so that benchmark leaves it out.
+ *
+ * main accepts the usual JMH options, such as -p size=100000, and adds the gc
+ * profiler, for the allocation rate, and a JSON result file, which defaults to
+ * map-benchmark.json, so that two runs can be diffed. -p map=... also sets the maps
+ * of remove; add -e remove when it names ULLMap. Build with the JMH annotation
+ * processor, then:
+ *
+ *     java -cp &lt;classes and jars&gt; speed.MapBenchmark [-rff before.json]
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapBenchmark {
+    private static final int KEY_LENGTH = 10;
+
+    /** The maps and keys of one run, shared by the benchmarks. */
+    @State(Scope.Benchmark)
+    public abstract static class Maps {
+        @Param({"100", "10000"})
+        public int size;
+
+        /** A map of type mapName() that holds every key. */
+        Map61B<String, Integer> filled;
+        String[] keys;
+        private int next;
+
+        /** Returns the name of the map to measure, one of those listed in MapBenchmark. */
+        abstract String mapName();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            StringUtils.setSeed(61);
+            Set<String> distinct = new HashSet<>();
+            while (distinct.size() < size) {
+                distinct.add(StringUtils.randomString(KEY_LENGTH));
+            }
+            keys = distinct.toArray(new String[0]);
+            filled = fill(createMap(mapName()), keys);
+        }
+
+        /** Returns the keys in turn, starting over after the last one. */
+        String nextKey() {
+            next = next + 1 == keys.length ? 0 : next + 1;
+            return keys[next];
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class AllMaps extends Maps {
+        @Param({"MyHashMap/ArrayList", "MyHashMap/LinkedList", "MyHashMap/HashSet", "MyHashMap/Stack",
+                "MyHashMap/ArrayDeque", "RobinHoodHashMap", "ConcurrentMyHashMap", "ULLMap", "HashMap", "TreeMap"})
+        public String map;
+
+        @Override
+        String mapName() {
+            return map;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RemovableMaps extends Maps {
+        @Param({"MyHashMap/ArrayList", "MyHashMap/LinkedList", "MyHashMap/HashSet", "MyHashMap/Stack",
+                "MyHashMap/ArrayDeque", "RobinHoodHashMap", "ConcurrentMyHashMap", "HashMap", "TreeMap"})
+        public String map;
+
+        @Override
+        String mapName() {
+            return map;
+        }
+    }
+
+    @Benchmark
+    public Map61B<String, Integer> put(AllMaps state) {
+        return fill(createMap(state.mapName()), state.keys);
+    }
+
+    @Benchmark
+    public Integer get(AllMaps state) {
+        return state.filled.get(state.nextKey());
+    }
+
+    @Benchmark
+    public Integer remove(RemovableMaps state) {
+        String key = state.nextKey();
+        Integer value = state.filled.remove(key);
+        state.filled.put(key, value);
+        return value;
+    }
+
+    @Benchmark
+    public void iterate(AllMaps state, Blackhole blackhole) {
+        for (String key : state.filled) {
+            blackhole.consume(key);
+        }
+    }
+
+    /** Returns a new empty map of the given NAME. */
+    static Map61B<String, Integer> createMap(String name) {
+        return switch (name) {
+            case "RobinHoodHashMap" -> new RobinHoodHashMap<>();
+            case "ConcurrentMyHashMap" -> new ConcurrentMyHashMap<>();
+            case "ULLMap" -> new ULLMap<>();
+            case "HashMap" -> new JavaMap<>(new HashMap<>());
+            case "TreeMap" -> new JavaMap<>(new TreeMap<>());
+            default -> {
+                if (!name.startsWith("MyHashMap/")) {
+                    throw new IllegalArgumentException("Unknown map: " + name);
+                }
+                try {
+                    Class<?> bucketType = Class.forName("java.util." + name.substring("MyHashMap/".length()));
+                    yield createBucketedMap(bucketType.asSubclass(Collection.class));
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalArgumentException("Unknown bucket type: " + name, e);
+                }
+            }
+        };
+    }
+
+    private static Map61B<String, Integer> fill(Map61B<String, Integer> map, String[] keys) {
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], i);
+        }
+        return map;
+    }
+
+    /** A java.util.Map seen as a Map61B, so that every map runs the same benchmark code. */
+    private static final class JavaMap<K, V> implements Map61B<K, V> {
+        private final Map<K, V> map;
+
+        JavaMap(Map<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public void put(K key, V value) {
+            map.put(key, value);
+        }
+
+        @Override
+        public V get(K key) {
+            return map.get(key);
+        }
+
+        @Override
+        public boolean containsKey(K key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return map.keySet();
+        }
+
+        @Override
+        public V remove(K key) {
+            return map.remove(key);
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return map.keySet().iterator();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(MapBenchmark.class.getSimpleName());
+        }
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result("map-benchmark.json");
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -77,6 +77,19 @@ public class StringUtils {
         return sb.toString();
     }
 
+    /**
+     * Returns the Ith of 2^BLOCKS distinct strings of length 2 * BLOCKS that all have
+     * the same hash code: "Aa" and "BB" hash alike, so every sequence of BLOCKS of
+     * them does too. Bit b of I picks block b.
+     */
+    public static String collidingString(int i, int blocks) {
+        StringBuilder sb = new StringBuilder(2 * blocks);
+        for (int b = 0; b < blocks; b++) {
+            sb.append((i >> b & 1) == 0 ? "Aa" : "BB");
+        }
+        return sb.toString();
+    }
+
     /** Returns true if S is all 'z'. False for empty strings */
     public static boolean isAllzs(String s) {
         return Pattern.matches("[z]+", s);
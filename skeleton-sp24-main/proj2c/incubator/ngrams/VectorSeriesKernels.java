@@ -0,0 +1,158 @@
+package ngrams;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SeriesKernels on the jdk.incubator.vector API, with the widest double vectors
+ * the CPU supports. Each kernel runs on whole vectors and finishes the last
+ * partial vector with the scalar kernels.
+ *
+ * This class is kept out of src because it only compiles with the incubator module:
+ * <pre>
+ *   javac --add-modules jdk.incubator.vector -cp &lt;classes of src&gt; -d &lt;out&gt; incubator/ngrams/*.java
+ *   java --add-modules jdk.incubator.vector -cp &lt;classes of src&gt;:&lt;out&gt; ...
+ * </pre>
+ * SeriesKernels.get() loads it by name when it is on the class path and the module
+ * is present.
+ */
+final class VectorSeriesKernels extends SeriesKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    private static final SeriesKernels SCALAR = SeriesKernels.scalar();
+
+    @Override
+    public String name() {
+        return "vector" + SPECIES.vectorBitSize();
+    }
+
+    @Override
+    public void add(double[] target, double[] source, int from, int to) {
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += LANES) {
+            DoubleVector.fromArray(SPECIES, target, i)
+                    .add(DoubleVector.fromArray(SPECIES, source, i))
+                    .intoArray(target, i);
+        }
+        SCALAR.add(target, source, i, to);
+    }
+
+    @Override
+    public void divide(double[] target, double[] divisor, long[] present, int from, int to) {
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += LANES) {
+            VectorMask<Double> mask = VectorMask.fromLong(SPECIES, bits(present, i));
+            DoubleVector.fromArray(SPECIES, target, i)
+                    .div(DoubleVector.fromArray(SPECIES, divisor, i), mask)
+                    .intoArray(target, i);
+        }
+        SCALAR.divide(target, divisor, present, i, to);
+    }
+
+    @Override
+    public void divide(double[] target, double divisor, int from, int to) {
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += LANES) {
+            DoubleVector.fromArray(SPECIES, target, i).div(divisor).intoArray(target, i);
+        }
+        SCALAR.divide(target, divisor, i, to);
+    }
+
+    @Override
+    public double sum(double[] values, int from, int to) {
+        int i = from;
+        DoubleVector sums = DoubleVector.zero(SPECIES);
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += LANES) {
+            sums = sums.add(DoubleVector.fromArray(SPECIES, values, i));
+        }
+        return sums.reduceLanes(VectorOperators.ADD) + SCALAR.sum(values, i, to);
+    }
+
+    @Override
+    public boolean addQuotients(double[] counts, int countsOffset, double[] totals,
+                                double[] target, long[] present, int from, int to) {
+        int bound = from + SPECIES.loopBound(to - from);
+        for (int i = from; i < bound; i += LANES) {
+            VectorMask<Double> holes = DoubleVector.fromArray(SPECIES, counts, countsOffset + i)
+                    .test(VectorOperators.IS_NAN);
+            VectorMask<Double> noTotal = DoubleVector.fromArray(SPECIES, totals, i)
+                    .test(VectorOperators.IS_NAN);
+            if (noTotal.andNot(holes).anyTrue()) {
+                return false;
+            }
+        }
+        for (int i = bound; i < to; i += 1) {
+            if (!Double.isNaN(counts[countsOffset + i]) && Double.isNaN(totals[i])) {
+                return false;
+            }
+        }
+
+        for (int i = from; i < bound; i += LANES) {
+            DoubleVector count = DoubleVector.fromArray(SPECIES, counts, countsOffset + i);
+            VectorMask<Double> valid = count.test(VectorOperators.IS_NAN).not();
+            DoubleVector.fromArray(SPECIES, target, i)
+                    .add(count.div(DoubleVector.fromArray(SPECIES, totals, i)), valid)
+                    .intoArray(target, i);
+            setBits(present, i, valid.toLong());
+        }
+        SCALAR.addQuotients(counts, countsOffset, totals, target, present, bound, to);
+        return true;
+    }
+
+    @Override
+    public void movingAverage(double[] source, long[] present, int window,
+                              double[] target, int from, int to) {
+        // The window sums are a running sum, which is sequential; they are computed
+        // exactly as the scalar kernel does and only the divisions are vectorized
+        double[] counts = new double[to - from];
+        double sum = 0;
+        int count = 0;
+        for (int i = from; i < to; i += 1) {
+            if (isSet(present, i)) {
+                sum += source[i];
+                count += 1;
+            }
+            int leaving = i - window;
+            if (leaving >= from && isSet(present, leaving)) {
+                sum -= source[leaving];
+                count -= 1;
+            }
+            target[i] = sum;
+            counts[i - from] = count;
+        }
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += LANES) {
+            VectorMask<Double> mask = VectorMask.fromLong(SPECIES, bits(present, i));
+            DoubleVector.fromArray(SPECIES, target, i)
+                    .div(DoubleVector.fromArray(SPECIES, counts, i - from))
+                    .blend(0.0, mask.not())
+                    .intoArray(target, i);
+        }
+        for (; i < to; i += 1) {
+            target[i] = isSet(present, i) ? target[i] / counts[i - from] : 0.0;
+        }
+    }
+
+    /** Returns the LANES bits of PRESENT starting at bit I, in the low bits. */
+    private static long bits(long[] present, int i) {
+        int word = i >>> 6;
+        int shift = i & 63;
+        long bits = present[word] >>> shift;
+        if (shift + LANES > 64 && word + 1 < present.length) {
+            bits |= present[word + 1] << (64 - shift);
+        }
+        return bits;
+    }
+
+    /** Sets the bits of PRESENT starting at bit I to the ones set in the low bits of BITS. */
+    private static void setBits(long[] present, int i, long bits) {
+        int word = i >>> 6;
+        int shift = i & 63;
+        present[word] |= bits << shift;
+        if (shift + LANES > 64) {
+            present[word + 1] |= bits >>> (64 - shift);
+        }
+    }
+}
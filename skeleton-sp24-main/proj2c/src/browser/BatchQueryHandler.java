@@ -0,0 +1,258 @@
+package browser;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import static spark.Spark.halt;
+
+/**
+ * Answers many queries in one POST, for clients that would otherwise send one
+ * request per word list.
+ *
+ * The body is a JSON array of queries. Each has the fields of NgordnetQuery, with
+ * the same defaults as the GET routes, plus the route that answers it and an id:
+ *
+ *     [{"id": "q1", "route": "hyponyms", "words": ["food", "cake"], "k": 5}, ...]
+ *
+ * Every query runs on its own virtual thread, through the server's QueryExecutor
+ * when it has one, so the admission limits of each route still apply. A batch
+ * runs at most as many queries at once as the executor queues for one route, so
+ * that a large batch waits for its turn instead of being rejected. Identical
+ * queries run once, and the queries of a batch share intermediate results through
+ * one SharedResults. The response is NDJSON: one line per query, written and
+ * flushed as soon as that query finishes, so lines come in completion order:
+ *
+ *     {"id":"q1","route":"hyponyms","status":200,"result":"[cake, food]"}
+ *     {"id":"q2","route":"nosuchroute","status":404,"error":"Unknown route"}
+ *
+ * The result is what the route's handle(NgordnetQuery) returns. Status is 400 for
+ * an invalid query, 404 for an unknown route, 503 for a query rejected by admission
+ * control because other requests filled the limits and 500 for a query that failed.
+ */
+public class BatchQueryHandler implements Route {
+    /** Most queries accepted in one batch. */
+    public static final int MAX_BATCH_SIZE = 10_000;
+    private static final String CONTENT_TYPE = "application/x-ndjson; charset=utf-8";
+    private static final Gson gson = new Gson();
+
+    private final Map<String, NgordnetQueryHandler> handlers;
+    private final QueryExecutor executor;
+
+    /**
+     * Creates a batch handler that answers queries with HANDLERS, keyed by route, on
+     * EXECUTOR or, if it is null, directly on the query threads. HANDLERS may be a
+     * live view that gains routes later.
+     */
+    public BatchQueryHandler(Map<String, NgordnetQueryHandler> handlers, QueryExecutor executor) {
+        this.handlers = handlers;
+        this.executor = executor;
+    }
+
+    /** One query of a batch body, as Gson reads it. */
+    private static class BatchQuery {
+        String id;
+        String route;
+        List<String> words;
+        Integer startYear;
+        Integer endYear;
+        Integer k;
+        NgordnetQueryType ngordnetQueryType;
+        NgordnetOutputFormat outputFormat;
+        String transform;
+
+        /** Returns this query with the defaults of the GET routes filled in. */
+        NgordnetQuery toQuery() {
+            if (words == null || words.contains(null)) {
+                throw new IllegalArgumentException("Missing words");
+            }
+            return new NgordnetQuery(List.copyOf(words),
+                    startYear == null ? 1900 : startYear,
+                    endYear == null ? 2020 : endYear,
+                    k == null ? 0 : k,
+                    ngordnetQueryType == null ? NgordnetQueryType.HYPONYMS : ngordnetQueryType,
+                    outputFormat == null ? NgordnetOutputFormat.TEXT : outputFormat,
+                    transform);
+        }
+    }
+
+    /** The answer to one distinct query, and the ids of every query that asked it. */
+    private record Answer(String route, List<String> ids, int status, String result, String error) { }
+
+    /** Identifies a distinct query of a batch. */
+    private record QueryKey(String route, NgordnetQuery query) { }
+
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        BatchQuery[] batch;
+        try {
+            batch = parse(request.body());
+        } catch (IllegalArgumentException e) {
+            halt(400, e.getMessage());
+            return null;
+        }
+        if (batch.length > MAX_BATCH_SIZE) {
+            halt(413, tooLarge());
+            return null;
+        }
+
+        response.type(CONTENT_TYPE);
+        answer(batch, new BufferedWriter(new OutputStreamWriter(response.raw().getOutputStream(),
+                StandardCharsets.UTF_8)));
+        return "";
+    }
+
+    /**
+     * Answers the batch BODY as handle(Request, Response) does, writing the NDJSON
+     * lines to OUT. Throws an IllegalArgumentException instead of answering 400 or
+     * 413 if BODY is not a batch of at most MAX_BATCH_SIZE queries.
+     */
+    public void handle(String body, Writer out) throws IOException, InterruptedException {
+        BatchQuery[] batch = parse(body);
+        if (batch.length > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException(tooLarge());
+        }
+        answer(batch, out);
+    }
+
+    /** Returns the queries of the batch BODY, or throws an IllegalArgumentException. */
+    private static BatchQuery[] parse(String body) {
+        BatchQuery[] batch;
+        try {
+            batch = gson.fromJson(body, BatchQuery[].class);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Malformed batch: " + e.getMessage(), e);
+        }
+        if (batch == null) {
+            throw new IllegalArgumentException("Malformed batch: the body must be a JSON array of queries");
+        }
+        return batch;
+    }
+
+    private static String tooLarge() {
+        return "At most " + MAX_BATCH_SIZE + " queries per batch";
+    }
+
+    /** Answers the queries of BATCH, writing one line per query to OUT. */
+    private void answer(BatchQuery[] batch, Writer out) throws IOException, InterruptedException {
+        // Identical queries are answered once; invalid ones are answered straight away
+        Map<QueryKey, List<String>> distinct = new HashMap<>();
+        for (int i = 0; i < batch.length; i += 1) {
+            BatchQuery item = batch[i];
+            String id = item == null || item.id == null ? String.valueOf(i) : item.id;
+            String route = item == null ? null : item.route;
+            NgordnetQuery query;
+            try {
+                if (item == null) {
+                    throw new IllegalArgumentException("Missing query");
+                }
+                query = item.toQuery();
+            } catch (IllegalArgumentException e) {
+                writeLine(out, new Answer(route, List.of(id), 400, null, e.getMessage()));
+                continue;
+            }
+            if (route == null || !handlers.containsKey(route)) {
+                writeLine(out, new Answer(route, List.of(id), 404, null, "Unknown route"));
+                continue;
+            }
+            distinct.computeIfAbsent(new QueryKey(route, query), key -> new ArrayList<>()).add(id);
+        }
+        out.flush();
+
+        SharedResults shared = new SharedResults();
+        BlockingQueue<Answer> answers = new LinkedBlockingQueue<>();
+        // The executor rejects queries of a route beyond those it may queue, so the
+        // queries of the batch wait here for one of that many slots instead
+        Semaphore slots = new Semaphore(executor == null ? Integer.MAX_VALUE
+                : Math.max(1, Math.min(executor.maxQueuedPerRoute(), executor.maxInFlight())));
+        ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+        List<Future<?>> queries = new ArrayList<>(distinct.size());
+        try {
+            for (Map.Entry<QueryKey, List<String>> entry : distinct.entrySet()) {
+                queries.add(threads.submit(() -> {
+                    try {
+                        slots.acquire();
+                    } catch (InterruptedException e) {
+                        // The response has been given up
+                        return;
+                    }
+                    try {
+                        answers.add(answer(entry.getKey(), entry.getValue(), shared));
+                    } finally {
+                        slots.release();
+                    }
+                }));
+            }
+            for (int i = 0; i < distinct.size(); i += 1) {
+                writeLine(out, answers.take());
+                out.flush();
+            }
+        } finally {
+            // If the client went away, cancels every query that has not answered yet,
+            // interrupting its query thread: a query waiting for a slot gives up, and one
+            // waiting in QueryExecutor cancels its task there, which frees the admission
+            // slot if the task had not started and interrupts its CPU thread if it had.
+            // A started query, like one run without an executor, only stops early if it
+            // checks for interrupts.
+            for (Future<?> query : queries) {
+                query.cancel(true);
+            }
+            threads.shutdown();
+        }
+    }
+
+    /** Runs the query of KEY, asked by IDS, and returns its answer. */
+    private Answer answer(QueryKey key, List<String> ids, SharedResults shared) {
+        NgordnetQueryHandler handler = handlers.get(key.route());
+        try {
+            String result = executor == null
+                    ? handler.handle(key.query(), shared)
+                    : executor.execute(key.route(), () -> handler.handle(key.query(), shared));
+            return new Answer(key.route(), ids, 200, result, null);
+        } catch (RejectedExecutionException e) {
+            return new Answer(key.route(), ids, 503, null, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return new Answer(key.route(), ids, 400, null, e.getMessage());
+        } catch (Exception | Error e) {
+            // Every query must answer, or the response would never end
+            return new Answer(key.route(), ids, 500, null, String.valueOf(e));
+        }
+    }
+
+    /** Writes one NDJSON line for each id of ANSWER. */
+    private static void writeLine(Writer out, Answer answer) throws IOException {
+        for (String id : answer.ids()) {
+            JsonObject line = new JsonObject();
+            line.addProperty("id", id);
+            line.addProperty("route", answer.route());
+            line.addProperty("status", answer.status());
+            if (answer.error() == null) {
+                line.addProperty("result", answer.result());
+            } else {
+                line.addProperty("error", answer.error());
+            }
+            out.write(gson.toJson(line));
+            out.write('\n');
+        }
+    }
+}
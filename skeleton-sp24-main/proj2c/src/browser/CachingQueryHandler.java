@@ -0,0 +1,187 @@
+package browser;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An NgordnetQueryHandler that remembers the results of another handler.
+ *
+ * Results are kept in a size-bounded cache keyed on the normalized query and the
+ * least recently used entry is evicted once the cache is full. When several threads
+ * miss on the same query at once, only the first one calls the wrapped handler and
+ * the others wait for its result. A handler whose handle(NgordnetQuery) throws is
+ * not cached, so the next request for the same query tries again.
+ *
+ * Only wrap handlers whose results depend on nothing but the query, or call clear()
+ * whenever the data behind them changes.
+ */
+public class CachingQueryHandler extends NgordnetQueryHandler {
+    private final String name;
+    private final NgordnetQueryHandler delegate;
+    private final int capacity;
+
+    /** The results computed since the last clear(). */
+    private volatile Epoch epoch;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache called NAME in front of DELEGATE that holds at most CAPACITY
+     * results.
+     */
+    public CachingQueryHandler(String name, NgordnetQueryHandler delegate, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.name = name;
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.epoch = new Epoch();
+    }
+
+    /**
+     * The cache and the running computations between two calls to clear(). A query
+     * works within the epoch it started in, so a result computed from data that has
+     * since been replaced ends up in an epoch that is no longer used.
+     */
+    private class Epoch {
+        /** Cached results in access order; guarded by itself. */
+        final LinkedHashMap<NgordnetQuery, String> cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<NgordnetQuery, String> eldest) {
+                if (size() > capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        /** Results being computed right now, so that concurrent misses can share them. */
+        final Map<NgordnetQuery, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public String handle(NgordnetQuery q) {
+        return handle(q, null);
+    }
+
+    /** Looks Q up in the cache; on a miss the wrapped handler may use SHARED. */
+    @Override
+    public String handle(NgordnetQuery q, SharedResults shared) {
+        NgordnetQuery key = normalize(q);
+        Epoch current = epoch;
+        LinkedHashMap<NgordnetQuery, String> cache = current.cache;
+        Map<NgordnetQuery, CompletableFuture<String>> inFlight = current.inFlight;
+        synchronized (cache) {
+            String cached = cache.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            // Another thread is already computing this query
+            hits.incrementAndGet();
+            return join(running);
+        }
+
+        try {
+            // The result may have been stored since the lookup above
+            String result;
+            synchronized (cache) {
+                result = cache.get(key);
+            }
+            if (result != null) {
+                hits.incrementAndGet();
+                future.complete(result);
+                return result;
+            }
+
+            misses.incrementAndGet();
+            result = shared == null ? delegate.handle(key) : delegate.handle(key, shared);
+            synchronized (cache) {
+                cache.put(key, result);
+            }
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Returns Q with an immutable copy of its words, so that the cache key cannot
+     * change after it has been stored.
+     */
+    private static NgordnetQuery normalize(NgordnetQuery q) {
+        List<String> words = q.words() == null ? List.of() : List.copyOf(q.words());
+        return new NgordnetQuery(words, q.startYear(), q.endYear(), q.k(), q.ngordnetQueryType(),
+                q.outputFormat(), q.transform());
+    }
+
+    /** Waits for FUTURE and returns its result, rethrowing what the computing thread threw. */
+    private static String join(CompletableFuture<String> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Removes every cached result. Queries still running keep their result to
+     * themselves, and queries started from now on do not wait for them. The counters
+     * are kept.
+     */
+    public void clear() {
+        epoch = new Epoch();
+    }
+
+    /** Returns the counters of this cache. */
+    public Stats stats() {
+        int size;
+        LinkedHashMap<NgordnetQuery, String> cache = epoch.cache;
+        synchronized (cache) {
+            size = cache.size();
+        }
+        return new Stats(name, size, capacity, hits.get(), misses.get(), evictions.get());
+    }
+
+    /**
+     * A snapshot of the counters of one cache. A request that waited for another
+     * thread's computation counts as a hit.
+     */
+    public record Stats(String name, int size, int capacity, long hits, long misses, long evictions) {
+
+        /** Returns the fraction of requests answered without calling the wrapped handler. */
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d/%d entries, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                    name, size, capacity, hits, misses, hitRate() * 100, evictions);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package browser;
+
+/** Writes fields of the CSV responses the handlers stream. */
+public final class CsvStrings {
+    private CsvStrings() {
+    }
+
+    /**
+     * Appends FIELD to SB as one CSV field. As RFC 4180 asks, a field that holds a
+     * comma, a quote or a line break is quoted, with its quotes doubled.
+     */
+    public static void appendField(StringBuilder sb, String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0
+                && field.indexOf('\r') < 0) {
+            sb.append(field);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < field.length(); i += 1) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,170 @@
+package browser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Writes the contents of JSON strings the way the handlers' Gson instance does,
+ * so that streamed responses are byte-for-byte the same as gson.toJson(result).
+ *
+ * Gson is HTML-safe by default: besides quotes, backslashes and control
+ * characters it escapes '<', '>', '&', '=' and '\'' as \\u00XX, and the line
+ * and paragraph separators U+2028 and U+2029.
+ */
+public final class JsonStrings {
+    private JsonStrings() {
+    }
+
+    /** Returns the escape sequence Gson uses for the character C, or null if none. */
+    static String escape(int c) {
+        switch (c) {
+            case '"':
+                return "\\\"";
+            case '\\':
+                return "\\\\";
+            case '\t':
+                return "\\t";
+            case '\b':
+                return "\\b";
+            case '\n':
+                return "\\n";
+            case '\r':
+                return "\\r";
+            case '\f':
+                return "\\f";
+            case '<':
+            case '>':
+            case '&':
+            case '=':
+            case '\'':
+            case '\u2028':
+            case '\u2029':
+                return unicodeEscape(c);
+            default:
+                return c < 0x20 ? unicodeEscape(c) : null;
+        }
+    }
+
+    private static String unicodeEscape(int c) {
+        return String.format("\\u%04x", c);
+    }
+
+    /** Appends S to SB as a quoted, escaped JSON string. */
+    public static void appendQuoted(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            String escaped = escape(c);
+            if (escaped == null) {
+                sb.append(c);
+            } else {
+                sb.append(escaped);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Returns a writer that escapes the characters written to it and passes them on
+     * to OUT. Closing the returned writer does not close OUT.
+     */
+    public static Writer escaping(Writer out) {
+        return new Writer() {
+            @Override
+            public void write(int c) throws IOException {
+                String escaped = escape(c);
+                if (escaped == null) {
+                    out.write(c);
+                } else {
+                    out.write(escaped);
+                }
+            }
+
+            @Override
+            public void write(char[] chars, int off, int len) throws IOException {
+                int start = off;
+                int end = off + len;
+                for (int i = off; i < end; i += 1) {
+                    String escaped = escape(chars[i]);
+                    if (escaped != null) {
+                        out.write(chars, start, i - start);
+                        out.write(escaped);
+                        start = i + 1;
+                    }
+                }
+                out.write(chars, start, end - start);
+            }
+
+            @Override
+            public void write(String str, int off, int len) throws IOException {
+                int start = off;
+                int end = off + len;
+                for (int i = off; i < end; i += 1) {
+                    String escaped = escape(str.charAt(i));
+                    if (escaped != null) {
+                        out.write(str, start, i - start);
+                        out.write(escaped);
+                        start = i + 1;
+                    }
+                }
+                out.write(str, start, end - start);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.flush();
+            }
+        };
+    }
+
+    /**
+     * Returns a stream that escapes ASCII bytes written to it and passes them on to
+     * OUT. Only use it for content that is pure ASCII, such as Base64. Closing the
+     * returned stream does not close OUT.
+     */
+    public static OutputStream escapingAscii(OutputStream out) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                String escaped = escape(b & 0xFF);
+                if (escaped == null) {
+                    out.write(b);
+                    return;
+                }
+                for (int i = 0; i < escaped.length(); i += 1) {
+                    out.write(escaped.charAt(i));
+                }
+            }
+
+            @Override
+            public void write(byte[] bytes, int off, int len) throws IOException {
+                int start = off;
+                int end = off + len;
+                for (int i = off; i < end; i += 1) {
+                    if (escape(bytes[i] & 0xFF) != null) {
+                        out.write(bytes, start, i - start);
+                        write(bytes[i]);
+                        start = i + 1;
+                    }
+                }
+                out.write(bytes, start, end - start);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.flush();
+            }
+        };
+    }
+}
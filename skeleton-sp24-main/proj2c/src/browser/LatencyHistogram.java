@@ -0,0 +1,92 @@
+package browser;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds with a fixed relative error,
+ * laid out like HdrHistogram.
+ *
+ * Values below 128 get a bucket each. Above that, every power of two is split into
+ * 64 equal buckets, so a recorded value is off by less than 1/64 (1.6%) of itself.
+ * Values above MAX_VALUE (about 18 minutes) are counted as MAX_VALUE. Recording takes
+ * three atomic additions and never allocates; percentiles are computed by a scan of
+ * the 2,240 buckets and report the highest value of the bucket they fall in, as
+ * HdrHistogram does.
+ */
+public class LatencyHistogram {
+    /** Largest value told apart from larger ones: 2^40 - 1 ns. */
+    public static final long MAX_VALUE = (1L << 40) - 1;
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+
+    /** Returns the bucket of VALUE, which must be between 0 and MAX_VALUE. */
+    private static int index(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /** Returns the largest value that falls into bucket INDEX. */
+    private static long highestValue(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /** Records one latency of NANOS; negative values are counted as 0. */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+    }
+
+    /** Returns the number of recorded values. */
+    public long count() {
+        return count.get();
+    }
+
+    /** Returns the sum of the recorded values, in nanoseconds. */
+    public long sum() {
+        return sum.get();
+    }
+
+    /**
+     * Returns the value at QUANTILE (between 0 and 1) of the recorded values, in
+     * nanoseconds, or 0 if none have been recorded.
+     */
+    public long valueAtQuantile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i += 1) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(Math.max(quantile, 0), 1) * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i += 1) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(BUCKETS - 1);
+    }
+}
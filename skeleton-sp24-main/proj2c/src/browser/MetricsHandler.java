@@ -0,0 +1,32 @@
+package browser;
+
+import spark.Request;
+import spark.Response;
+
+/**
+ * Serves the QueryMetrics of a server as plain text in the Prometheus exposition
+ * format, for example at /metrics. It takes no query parameters, and its own
+ * requests are not recorded.
+ */
+public class MetricsHandler extends NgordnetQueryHandler {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final QueryMetrics metrics;
+
+    public MetricsHandler(QueryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String handle(NgordnetQuery q) {
+        StringBuilder out = new StringBuilder();
+        metrics.writePrometheus(out);
+        return out.toString();
+    }
+
+    @Override
+    public String handle(Request request, Response response) {
+        response.type(CONTENT_TYPE);
+        return handle((NgordnetQuery) null);
+    }
+}
@@ -0,0 +1,23 @@
+package browser;
+
+/** How a handler writes its result. Default value is TEXT.
+ *  Only handlers that stream their result honor CSV and JSON. */
+public enum NgordnetOutputFormat {
+    /** The human-readable text shown by the browser, sent as a JSON string. */
+    TEXT(null),
+    /** Comma-separated rows for machine clients. */
+    CSV("text/csv; charset=utf-8"),
+    /** A compact JSON document for machine clients. */
+    JSON("application/json; charset=utf-8");
+
+    private final String contentType;
+
+    NgordnetOutputFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /** Returns the Content-Type of a response in this format, or null for the default. */
+    public String contentType() {
+        return contentType;
+    }
+}
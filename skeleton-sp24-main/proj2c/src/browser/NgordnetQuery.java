@@ -9,4 +9,27 @@ public record NgordnetQuery(List<String> words,
         int startYear,
         int endYear,
         int k,
-        NgordnetQueryType ngordnetQueryType) {}
+        NgordnetQueryType ngordnetQueryType,
+        NgordnetOutputFormat outputFormat,
+        String transform) {
+
+    /** Creates a query answered in the default TEXT format. */
+    public NgordnetQuery(List<String> words, int startYear, int endYear, int k,
+                         NgordnetQueryType ngordnetQueryType) {
+        this(words, startYear, endYear, k, ngordnetQueryType, NgordnetOutputFormat.TEXT);
+    }
+
+    /**
+     * Creates a query without a transform. The transform is a chain of temporal
+     * operators for the history routes; see ngrams.TimeSeriesTransform.
+     */
+    public NgordnetQuery(List<String> words, int startYear, int endYear, int k,
+                         NgordnetQueryType ngordnetQueryType, NgordnetOutputFormat outputFormat) {
+        this(words, startYear, endYear, k, ngordnetQueryType, outputFormat, null);
+    }
+
+    /** Returns the format to answer in: the output format, or TEXT if none was given. */
+    public NgordnetOutputFormat format() {
+        return outputFormat == null ? NgordnetOutputFormat.TEXT : outputFormat;
+    }
+}
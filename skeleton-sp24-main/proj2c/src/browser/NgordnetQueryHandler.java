@@ -1,18 +1,83 @@
 package browser;
 
+import browser.QueryMetrics.Stage;
 import com.google.gson.Gson;
 import spark.QueryParamsMap;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.RejectedExecutionException;
+
+import static spark.Spark.halt;
 
 public abstract class NgordnetQueryHandler implements Route {
     public abstract String handle(browser.NgordnetQuery q);
     private static final Gson gson = new Gson();
 
+    /**
+     * Answers Q as one query of a batch. Handlers may override this to reuse
+     * intermediate results that other queries of the batch stored in SHARED; by
+     * default it is handle(Q).
+     */
+    public String handle(NgordnetQuery q, SharedResults shared) {
+        return handle(q);
+    }
+
+    /**
+     * A query result that writes itself to the response, so that a large result
+     * need not be built as one String first. Unless it has its own content type, it
+     * must write a JSON value.
+     */
+    public interface StreamedResult {
+        void writeTo(OutputStream out) throws IOException;
+
+        /**
+         * Waits for work the handler left to other threads, such as drawing a chart,
+         * so that it is timed apart from writing. Called once, before writeTo.
+         */
+        default void render() {
+        }
+
+        /** Returns the Content-Type of the response, or null for the default. */
+        default String contentType() {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the result for Q as a StreamedResult, or null to answer with
+     * handle(Q). Runs where handle(Q) would; writeTo runs afterwards on the
+     * request thread, so it may wait for work done elsewhere.
+     */
+    public StreamedResult stream(NgordnetQuery q) {
+        return null;
+    }
+
+    /**
+     * Route this handler is registered under, the executor that runs its queries and
+     * the metrics its queries are recorded in.
+     */
+    private String route;
+    private QueryExecutor executor;
+    private QueryMetrics metrics;
+
+    /**
+     * Makes this handler run its queries for ROUTE on EXECUTOR and record them in
+     * METRICS. Called by NgordnetServer.register; without an executor queries run on
+     * the request thread, and without metrics nothing is recorded.
+     */
+    void runOn(String route, QueryExecutor executor, QueryMetrics metrics) {
+        this.route = route;
+        this.executor = executor;
+        this.metrics = metrics;
+    }
+
     private static List<String> commaSeparatedStringToList(String s) {
         String[] requestedWords = s.split(",");
         for (int i = 0; i < requestedWords.length; i += 1) {
@@ -28,6 +93,8 @@ public abstract class NgordnetQueryHandler implements Route {
         int endYear;
         int k;
         NgordnetQueryType ngordnetQueryType;
+        NgordnetOutputFormat outputFormat;
+        String transform = qm.get("transform").value();
 
         try {
             startYear = Integer.parseInt(qm.get("startYear").value());
@@ -53,14 +120,103 @@ public abstract class NgordnetQueryHandler implements Route {
             ngordnetQueryType = NgordnetQueryType.HYPONYMS;
         }
 
-        return new NgordnetQuery(words, startYear, endYear, k, ngordnetQueryType);
+        try {
+            outputFormat = NgordnetOutputFormat.valueOf(
+                    qm.get("outputFormat").value().toUpperCase(Locale.ROOT));
+        } catch (RuntimeException e) {
+            outputFormat = NgordnetOutputFormat.TEXT;
+        }
+
+        return new NgordnetQuery(words, startYear, endYear, k, ngordnetQueryType, outputFormat, transform);
     }
 
     @Override
     public String handle(Request request, Response response) throws Exception {
-        QueryParamsMap qm = request.queryMap();
-        NgordnetQuery nq = readQueryMap(qm);
-        String queryResult = handle(nq);
-        return gson.toJson(queryResult);
+        long start = System.nanoTime();
+        boolean rejected = false;
+        try {
+            long allocated = allocatedBytes();
+            QueryParamsMap qm = request.queryMap();
+            NgordnetQuery nq = readQueryMap(qm);
+            long stageStart = record(Stage.PARSE, start, allocated);
+
+            Object queryResult;
+            if (executor == null) {
+                queryResult = compute(nq, stageStart);
+            } else {
+                long submitted = stageStart;
+                try {
+                    queryResult = executor.execute(route, () -> compute(nq, submitted));
+                } catch (RejectedExecutionException e) {
+                    rejected = true;
+                    response.header("Retry-After", "1");
+                    halt(503, e.getMessage());
+                    return null;
+                }
+            }
+
+            String body;
+            if (queryResult instanceof StreamedResult streamed) {
+                allocated = allocatedBytes();
+                stageStart = System.nanoTime();
+                streamed.render();
+                stageStart = record(Stage.RENDER, stageStart, allocated);
+
+                allocated = allocatedBytes();
+                if (streamed.contentType() != null) {
+                    response.type(streamed.contentType());
+                } else if (response.raw().getContentType() == null) {
+                    response.type("text/html; charset=utf-8");
+                }
+                streamed.writeTo(response.raw().getOutputStream());
+                body = "";
+                record(Stage.SERIALIZE, stageStart, allocated);
+            } else {
+                allocated = allocatedBytes();
+                stageStart = System.nanoTime();
+                body = gson.toJson((String) queryResult);
+                record(Stage.SERIALIZE, stageStart, allocated);
+            }
+
+            if (metrics != null) {
+                metrics.record(route, Stage.TOTAL, System.nanoTime() - start, -1);
+                metrics.completed(route);
+            }
+            return body;
+        } catch (Exception e) {
+            if (metrics != null && !rejected) {
+                metrics.failed(route);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the handler for NQ, which was handed over at SUBMITTED, on the current
+     * thread and records how long it waited and ran.
+     */
+    private Object compute(NgordnetQuery nq, long submitted) {
+        long allocated = allocatedBytes();
+        long stageStart = System.nanoTime();
+        if (metrics != null) {
+            metrics.record(route, Stage.QUEUE, stageStart - submitted, -1);
+        }
+        StreamedResult streamed = stream(nq);
+        Object result = streamed != null ? streamed : handle(nq);
+        record(Stage.COMPUTE, stageStart, allocated);
+        return result;
+    }
+
+    /** Returns the bytes allocated by the current thread, or -1 if unknown or unrecorded. */
+    private long allocatedBytes() {
+        return metrics == null ? -1 : QueryMetrics.allocatedBytes();
+    }
+
+    /** Records STAGE as running from STARTNANOS until now and returns now. */
+    private long record(Stage stage, long startNanos, long allocatedBefore) {
+        if (metrics == null) {
+            return System.nanoTime();
+        }
+        return metrics.recordSince(route, stage, startNanos, allocatedBefore);
     }
 }
@@ -1,16 +1,76 @@
 package browser;
 
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static spark.Spark.*;
 
 /**
  * Created by hug.
  */
 public class NgordnetServer {
+    /** Upper bound on Jetty's request threads in virtual-thread mode; they are cheap. */
+    private static final int MAX_VIRTUAL_THREADS = 10_000;
+    private static final int MIN_THREADS = 8;
+    private static final int IDLE_TIMEOUT_MILLIS = 60_000;
+
+    private final QueryExecutor executor;
+    private final QueryMetrics metrics;
+    /** Registered handlers by route, for the batch route. */
+    private final Map<String, NgordnetQueryHandler> handlers = new ConcurrentHashMap<>();
+
+    /** Creates a server that runs queries on Spark's default Jetty thread pool. */
+    public NgordnetServer() {
+        this(null);
+    }
+
+    /**
+     * Creates a server that handles each request on a virtual thread and runs the
+     * queries themselves on EXECUTOR, which bounds CPU threads and queue lengths.
+     */
+    public NgordnetServer(QueryExecutor executor) {
+        this.executor = executor;
+        this.metrics = new QueryMetrics(executor);
+    }
+
+    /** Returns the executor of this server, or null if it runs in the default mode. */
+    public QueryExecutor executor() {
+        return executor;
+    }
+
+    /** Returns the latency, allocation and throughput metrics of the registered routes. */
+    public QueryMetrics metrics() {
+        return metrics;
+    }
+
     public void register(String URL, NgordnetQueryHandler nqh) {
+        nqh.runOn(URL, executor, metrics);
+        handlers.put(URL, nqh);
         get(URL, nqh);
     }
 
+    /**
+     * Accepts batches of queries for every registered route as POSTs to URL. See
+     * BatchQueryHandler for the request and response formats.
+     */
+    public void registerBatch(String URL) {
+        post(URL, new BatchQueryHandler(handlers, executor));
+    }
+
     public void startUp() {
+        if (executor != null) {
+            // Must happen before the first route or filter starts the embedded server
+            QueuedThreadPool pool = new QueuedThreadPool(MAX_VIRTUAL_THREADS, MIN_THREADS,
+                    IDLE_TIMEOUT_MILLIS, -1, null, null,
+                    Thread.ofVirtual().name("ngordnet-request-", 0).factory());
+            EmbeddedServers.add(EmbeddedServers.defaultIdentifier(),
+                    new EmbeddedJettyFactory().withThreadPool(pool));
+        }
+
         staticFiles.externalLocation("static");
 
         /* Allow for all origin requests (since this is not an authenticated server, we do not
@@ -0,0 +1,206 @@
+package browser;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the CPU-bound part of queries on a bounded pool of platform threads.
+ *
+ * Request threads (virtual threads in the server's virtual-thread mode) hand
+ * their query to execute() and block until it is done, which is cheap for a
+ * virtual thread. Admission is bounded twice: at most maxInFlight queries may be
+ * admitted at once across all routes, and at most maxQueuedPerRoute queries of
+ * one route may wait for a CPU thread. A query over either limit is rejected
+ * straight away with a RejectedExecutionException, which the handler turns into
+ * a 503, instead of joining an unbounded queue.
+ */
+public class QueryExecutor implements AutoCloseable {
+    private final ExecutorService cpuPool;
+    private final int cpuThreads;
+    private final int maxInFlight;
+    private final int maxQueuedPerRoute;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<String, RouteCounters> routes = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an executor with CPUTHREADS platform threads that admits at most
+     * MAXINFLIGHT queries at once and queues at most MAXQUEUEDPERROUTE queries
+     * of each route.
+     */
+    public QueryExecutor(int cpuThreads, int maxInFlight, int maxQueuedPerRoute) {
+        if (cpuThreads <= 0 || maxInFlight <= 0 || maxQueuedPerRoute < 0) {
+            throw new IllegalArgumentException("Invalid limits: " + cpuThreads + ", "
+                    + maxInFlight + ", " + maxQueuedPerRoute);
+        }
+        this.cpuThreads = cpuThreads;
+        this.maxInFlight = maxInFlight;
+        this.maxQueuedPerRoute = maxQueuedPerRoute;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.cpuPool = new ThreadPoolExecutor(cpuThreads, cpuThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "ngordnet-cpu-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /** Returns an executor with one CPU thread per available processor. */
+    public static QueryExecutor forAvailableProcessors(int maxInFlight, int maxQueuedPerRoute) {
+        return new QueryExecutor(Runtime.getRuntime().availableProcessors(),
+                maxInFlight, maxQueuedPerRoute);
+    }
+
+    /**
+     * Runs WORK for ROUTE on the CPU pool and returns its result. Throws a
+     * RejectedExecutionException if the query is over the limits, and rethrows
+     * whatever WORK throws. If the calling thread is interrupted while it waits,
+     * cancels the query and rethrows the InterruptedException with the interrupt
+     * status set; the query counts as in flight until it has stopped running.
+     */
+    public <T> T execute(String route, Callable<T> work) throws Exception {
+        RouteCounters counters = routes.computeIfAbsent(route, r -> new RouteCounters());
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            counters.rejected.incrementAndGet();
+            throw new RejectedExecutionException("Too many queries in flight");
+        }
+        if (counters.queued.incrementAndGet() > maxQueuedPerRoute + freeCpuThreads()) {
+            counters.queued.decrementAndGet();
+            inFlight.decrementAndGet();
+            counters.rejected.incrementAndGet();
+            throw new RejectedExecutionException("Too many queued " + route + " queries");
+        }
+
+        // The slot of a query is released by whoever sees it end: the task once it has
+        // run, or the caller if it cancels the task before it starts
+        AtomicBoolean started = new AtomicBoolean();
+        Future<T> future;
+        try {
+            future = cpuPool.submit(() -> {
+                if (!started.compareAndSet(false, true)) {
+                    return null;
+                }
+                counters.queued.decrementAndGet();
+                counters.running.incrementAndGet();
+                try {
+                    return work.call();
+                } finally {
+                    counters.running.decrementAndGet();
+                    release(counters);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The pool has been shut down
+            counters.queued.decrementAndGet();
+            inFlight.decrementAndGet();
+            counters.rejected.incrementAndGet();
+            throw e;
+        }
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            // A running query is interrupted and keeps its slot until it returns
+            future.cancel(true);
+            if (started.compareAndSet(false, true)) {
+                counters.queued.decrementAndGet();
+                release(counters);
+            }
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    /** Frees the slot of a query of COUNTERS that has ended. */
+    private void release(RouteCounters counters) {
+        inFlight.decrementAndGet();
+        counters.completed.incrementAndGet();
+    }
+
+    /** Returns how many CPU threads are not running a query right now. */
+    private int freeCpuThreads() {
+        int running = 0;
+        for (RouteCounters counters : routes.values()) {
+            running += counters.running.get();
+        }
+        return Math.max(0, cpuThreads - running);
+    }
+
+    /** Returns the most queries admitted at once across all routes. */
+    public int maxInFlight() {
+        return maxInFlight;
+    }
+
+    /** Returns the most queries of one route that may wait for a CPU thread. */
+    public int maxQueuedPerRoute() {
+        return maxQueuedPerRoute;
+    }
+
+    /** Returns the number of admitted queries that have not finished yet. */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /** Returns the number of admitted queries waiting for a CPU thread. */
+    public int queueDepth() {
+        int queued = 0;
+        for (RouteCounters counters : routes.values()) {
+            queued += counters.queued.get();
+        }
+        return queued;
+    }
+
+    /** Returns the counters of every route that has seen a query, keyed by route. */
+    public Map<String, RouteStats> routeStats() {
+        Map<String, RouteStats> stats = new TreeMap<>();
+        for (Map.Entry<String, RouteCounters> entry : routes.entrySet()) {
+            RouteCounters c = entry.getValue();
+            stats.put(entry.getKey(), new RouteStats(c.queued.get(), c.running.get(),
+                    c.completed.get(), c.rejected.get()));
+        }
+        return stats;
+    }
+
+    /** Stops the CPU threads once the queries already admitted are done. */
+    @Override
+    public void close() {
+        cpuPool.shutdown();
+    }
+
+    private static class RouteCounters {
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+    }
+
+    /**
+     * A snapshot of one route: queries waiting for and running on a CPU thread,
+     * and the totals of finished and rejected queries.
+     */
+    public record RouteStats(int queued, int running, long completed, long rejected) {
+        @Override
+        public String toString() {
+            return String.format("%d queued, %d running, %d completed, %d rejected",
+                    queued, running, completed, rejected);
+        }
+    }
+}
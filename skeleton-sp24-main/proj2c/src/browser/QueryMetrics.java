@@ -0,0 +1,257 @@
+package browser;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms, allocation counters and throughput of every route, broken
+ * down by the stages of a query.
+ *
+ * NgordnetQueryHandler records into the QueryMetrics of the server it is
+ * registered with; writePrometheus renders everything in the Prometheus text
+ * format for MetricsHandler.
+ *
+ * Allocations come from com.sun.management.ThreadMXBean and are only known for
+ * platform threads: the JDK reports none for virtual threads. In the server's
+ * virtual-thread mode only the COMPUTE stage, which runs on a CPU thread, counts
+ * allocations.
+ */
+public class QueryMetrics {
+    /** The stages of a query, in the order they run. */
+    public enum Stage {
+        /** Reading the NgordnetQuery from the request. */
+        PARSE,
+        /** Waiting for a CPU thread of the QueryExecutor. */
+        QUEUE,
+        /** Running the handler. */
+        COMPUTE,
+        /** Waiting for work the handler left to other threads, such as drawing a chart. */
+        RENDER,
+        /** Writing the result to the response. */
+        SERIALIZE,
+        /** The whole request. */
+        TOTAL;
+
+        private final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    /** The quantiles reported for each histogram. */
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    /** Seconds over which throughput is averaged. */
+    private static final int THROUGHPUT_WINDOW_SECONDS = 60;
+
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationBean();
+
+    private final Map<String, RouteMetrics> routes = new ConcurrentSkipListMap<>();
+    private final QueryExecutor executor;
+
+    /** Creates metrics that also report the queue and admission counters of EXECUTOR, if not null. */
+    public QueryMetrics(QueryExecutor executor) {
+        this.executor = executor;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean sunBean
+                && sunBean.isThreadAllocatedMemorySupported()) {
+            if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+                sunBean.setThreadAllocatedMemoryEnabled(true);
+            }
+            return sunBean;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the bytes the current thread has allocated so far, or -1 if the JVM
+     * cannot tell, as for virtual threads.
+     */
+    public static long allocatedBytes() {
+        return ALLOCATIONS == null ? -1 : ALLOCATIONS.getCurrentThreadAllocatedBytes();
+    }
+
+    private RouteMetrics route(String route) {
+        return routes.computeIfAbsent(route, r -> new RouteMetrics());
+    }
+
+    /**
+     * Records that STAGE of a ROUTE query took NANOS and allocated ALLOCATED bytes,
+     * where a negative ALLOCATED means unknown.
+     */
+    public void record(String route, Stage stage, long nanos, long allocated) {
+        RouteMetrics metrics = route(route);
+        metrics.latencies[stage.ordinal()].record(nanos);
+        if (allocated >= 0) {
+            metrics.allocated.addAndGet(stage.ordinal(), allocated);
+        }
+    }
+
+    /**
+     * Records that STAGE of a ROUTE query, which started at STARTNANOS with ALLOCATEDBEFORE
+     * bytes allocated by the current thread, has just ended. Returns the current time, so
+     * that stages can be chained.
+     */
+    public long recordSince(String route, Stage stage, long startNanos, long allocatedBefore) {
+        long now = System.nanoTime();
+        long allocatedAfter = allocatedBefore < 0 ? -1 : allocatedBytes();
+        record(route, stage, now - startNanos, allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore);
+        return now;
+    }
+
+    /** Counts one finished ROUTE query towards throughput. */
+    public void completed(String route) {
+        route(route).throughput.increment(System.nanoTime());
+    }
+
+    /** Counts one ROUTE query that failed with an exception. */
+    public void failed(String route) {
+        route(route).errors.incrementAndGet();
+    }
+
+    /** Returns the latency histogram of STAGE of ROUTE, or null if ROUTE has no queries yet. */
+    public LatencyHistogram latencies(String route, Stage stage) {
+        RouteMetrics metrics = routes.get(route);
+        return metrics == null ? null : metrics.latencies[stage.ordinal()];
+    }
+
+    /** Writes every metric to OUT in the Prometheus text exposition format (version 0.0.4). */
+    public void writePrometheus(StringBuilder out) {
+        out.append("# HELP ngordnet_stage_latency_seconds Latency of each stage of a query.\n");
+        out.append("# TYPE ngordnet_stage_latency_seconds summary\n");
+        for (Map.Entry<String, RouteMetrics> entry : routes.entrySet()) {
+            for (Stage stage : Stage.values()) {
+                LatencyHistogram histogram = entry.getValue().latencies[stage.ordinal()];
+                if (histogram.count() == 0) {
+                    continue;
+                }
+                String labels = "route=\"" + entry.getKey() + "\",stage=\"" + stage.label + "\"";
+                for (double quantile : QUANTILES) {
+                    sample(out, "ngordnet_stage_latency_seconds",
+                            labels + ",quantile=\"" + quantile + "\"",
+                            seconds(histogram.valueAtQuantile(quantile)));
+                }
+                sample(out, "ngordnet_stage_latency_seconds_sum", labels, seconds(histogram.sum()));
+                sample(out, "ngordnet_stage_latency_seconds_count", labels, histogram.count());
+            }
+        }
+
+        out.append("# HELP ngordnet_allocated_bytes_total Bytes allocated by each stage, where known.\n");
+        out.append("# TYPE ngordnet_allocated_bytes_total counter\n");
+        for (Map.Entry<String, RouteMetrics> entry : routes.entrySet()) {
+            for (Stage stage : Stage.values()) {
+                long allocated = entry.getValue().allocated.get(stage.ordinal());
+                if (allocated > 0) {
+                    sample(out, "ngordnet_allocated_bytes_total", "route=\"" + entry.getKey()
+                            + "\",stage=\"" + stage.label + "\"", allocated);
+                }
+            }
+        }
+
+        out.append("# HELP ngordnet_throughput_queries_per_second Finished queries per second over the last "
+                + THROUGHPUT_WINDOW_SECONDS + " seconds.\n");
+        out.append("# TYPE ngordnet_throughput_queries_per_second gauge\n");
+        long now = System.nanoTime();
+        for (Map.Entry<String, RouteMetrics> entry : routes.entrySet()) {
+            sample(out, "ngordnet_throughput_queries_per_second", "route=\"" + entry.getKey() + "\"",
+                    entry.getValue().throughput.perSecond(now));
+        }
+
+        out.append("# HELP ngordnet_errors_total Queries that failed with an exception.\n");
+        out.append("# TYPE ngordnet_errors_total counter\n");
+        for (Map.Entry<String, RouteMetrics> entry : routes.entrySet()) {
+            sample(out, "ngordnet_errors_total", "route=\"" + entry.getKey() + "\"",
+                    entry.getValue().errors.get());
+        }
+
+        if (executor != null) {
+            writeExecutor(out);
+        }
+    }
+
+    private void writeExecutor(StringBuilder out) {
+        out.append("# HELP ngordnet_queries_in_flight Admitted queries that have not finished.\n");
+        out.append("# TYPE ngordnet_queries_in_flight gauge\n");
+        sample(out, "ngordnet_queries_in_flight", null, executor.inFlight());
+        out.append("# HELP ngordnet_queue_depth Admitted queries waiting for a CPU thread.\n");
+        out.append("# TYPE ngordnet_queue_depth gauge\n");
+        sample(out, "ngordnet_queue_depth", null, executor.queueDepth());
+        out.append("# HELP ngordnet_rejected_total Queries answered with 503 by admission control.\n");
+        out.append("# TYPE ngordnet_rejected_total counter\n");
+        for (Map.Entry<String, QueryExecutor.RouteStats> entry : executor.routeStats().entrySet()) {
+            sample(out, "ngordnet_rejected_total", "route=\"" + entry.getKey() + "\"",
+                    entry.getValue().rejected());
+        }
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static class RouteMetrics {
+        final LatencyHistogram[] latencies = new LatencyHistogram[Stage.values().length];
+        final AtomicLongArray allocated = new AtomicLongArray(Stage.values().length);
+        final Throughput throughput = new Throughput();
+        final AtomicLong errors = new AtomicLong();
+
+        RouteMetrics() {
+            for (int i = 0; i < latencies.length; i += 1) {
+                latencies[i] = new LatencyHistogram();
+            }
+        }
+    }
+
+    /**
+     * Counts events in a ring of one-second slots. A slot is reset when it is first
+     * used in a new second, so the sum of the slots of the last window is the number
+     * of events in it; an event racing with the reset may be lost.
+     */
+    private static class Throughput {
+        private final AtomicLongArray counts = new AtomicLongArray(THROUGHPUT_WINDOW_SECONDS);
+        private final AtomicLongArray seconds = new AtomicLongArray(THROUGHPUT_WINDOW_SECONDS);
+
+        void increment(long nanos) {
+            long second = TimeUnit.NANOSECONDS.toSeconds(nanos);
+            int slot = (int) Math.floorMod(second, (long) THROUGHPUT_WINDOW_SECONDS);
+            long stamp = seconds.get(slot);
+            if (stamp != second && seconds.compareAndSet(slot, stamp, second)) {
+                counts.set(slot, 0);
+            }
+            counts.incrementAndGet(slot);
+        }
+
+        /** Returns the average events per second over the window that ended at NANOS. */
+        double perSecond(long nanos) {
+            long second = TimeUnit.NANOSECONDS.toSeconds(nanos);
+            long events = 0;
+            for (int slot = 0; slot < THROUGHPUT_WINDOW_SECONDS; slot += 1) {
+                long stamp = seconds.get(slot);
+                if (stamp > second - THROUGHPUT_WINDOW_SECONDS && stamp <= second) {
+                    events += counts.get(slot);
+                }
+            }
+            return events / (double) THROUGHPUT_WINDOW_SECONDS;
+        }
+    }
+}
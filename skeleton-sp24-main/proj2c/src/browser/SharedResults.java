@@ -0,0 +1,54 @@
+package browser;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Intermediate results shared by the queries of one batch, such as the hyponym set
+ * of a word list that several queries rank differently.
+ *
+ * The first query to ask for a key computes its value; queries asking for the same
+ * key meanwhile wait for it instead of computing it again. A computation that
+ * throws is not kept, so the next query tries again. Values are shared between
+ * threads and must not be modified.
+ */
+public final class SharedResults {
+    private final Map<Object, CompletableFuture<Object>> results = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the value stored under KEY, computing it with COMPUTE if there is
+     * none. KEY must have value-based equals and hashCode.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T computeIfAbsent(Object key, Supplier<T> compute) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = results.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        try {
+            T value = compute.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            results.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /** Returns the number of values stored. */
+    public int size() {
+        return results.size();
+    }
+}
@@ -0,0 +1,134 @@
+package main;
+
+import browser.CsvStrings;
+import browser.JsonStrings;
+import browser.NgordnetOutputFormat;
+import browser.NgordnetQuery;
+import browser.NgordnetQueryHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 自动补全：words 的第一个词是前缀，返回以它开头、总出现次数最多的 k 个词（k 为 0 时取 DEFAULT_K）。
+ * TEXT 格式和下位词一样写成 "[a, b]"；CSV 为 word,count 行；JSON 为 [{"word":...,"count":...}]。
+ */
+public class AutocompleteHandler extends NgordnetQueryHandler {
+    /** 没有指定 k 时返回的词数 */
+    public static final int DEFAULT_K = 10;
+    /** 一次最多返回的词数 */
+    public static final int MAX_K = 1000;
+
+    private volatile AutocompleteIndex index;
+
+    public AutocompleteHandler(AutocompleteIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * 使用 INDEX，LIVE 换上新数据时为新数据重建索引；INDEXFILE 不为 null 时把新索引写进去，
+     * 下次启动可以直接映射。重建在单独的线程上进行，不拖慢 publish，重建完成前仍用旧索引
+     */
+    public AutocompleteHandler(LiveDataset live, AutocompleteIndex index, Path indexFile) {
+        this.index = index;
+        ExecutorService rebuilder = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ngordnet-autocomplete-rebuilder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        live.onPublish(generation -> rebuilder.execute(() -> rebuild(live, generation, indexFile)));
+    }
+
+    /** 为 GENERATION 重建索引并换上；写不进 INDEXFILE 只打印日志，新索引照样使用 */
+    private void rebuild(LiveDataset live, LiveDataset.Generation generation, Path indexFile) {
+        if (live.current() != generation) {
+            // 又换上了更新的一代，留给它的重建
+            return;
+        }
+        AutocompleteIndex rebuilt;
+        try {
+            rebuilt = AutocompleteIndex.build(generation.dataset());
+        } catch (RuntimeException e) {
+            System.out.println("Keeping the autocomplete index, rebuild failed: " + e);
+            return;
+        }
+        this.index = rebuilt;
+        if (indexFile != null) {
+            try {
+                rebuilt.write(indexFile);
+            } catch (UncheckedIOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String handle(NgordnetQuery q) {
+        List<AutocompleteIndex.Completion> completions = complete(q);
+        return switch (q.format()) {
+            case CSV, JSON -> format(completions, q.format());
+            default -> {
+                List<String> words = new ArrayList<>(completions.size());
+                for (AutocompleteIndex.Completion completion : completions) {
+                    words.add(completion.word());
+                }
+                yield "[" + String.join(", ", words) + "]";
+            }
+        };
+    }
+
+    /** CSV 和 JSON 直接写给机器客户端，TEXT 交给默认的 JSON 字符串编码 */
+    @Override
+    public StreamedResult stream(NgordnetQuery q) {
+        NgordnetOutputFormat format = q.format();
+        if (format == NgordnetOutputFormat.TEXT) {
+            return null;
+        }
+        String body = format(complete(q), format);
+        return new StreamedResult() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public String contentType() {
+                return format.contentType();
+            }
+        };
+    }
+
+    private List<AutocompleteIndex.Completion> complete(NgordnetQuery q) {
+        String prefix = q.words() == null || q.words().isEmpty() ? "" : q.words().get(0);
+        int k = q.k() <= 0 ? DEFAULT_K : Math.min(q.k(), MAX_K);
+        return index.complete(prefix, k);
+    }
+
+    private static String format(List<AutocompleteIndex.Completion> completions, NgordnetOutputFormat format) {
+        StringBuilder out = new StringBuilder();
+        if (format == NgordnetOutputFormat.CSV) {
+            out.append("word,count\n");
+            for (AutocompleteIndex.Completion completion : completions) {
+                CsvStrings.appendField(out, completion.word());
+                out.append(',').append(completion.count()).append('\n');
+            }
+            return out.toString();
+        }
+        out.append('[');
+        String separator = "";
+        for (AutocompleteIndex.Completion completion : completions) {
+            out.append(separator).append("{\"word\":");
+            JsonStrings.appendQuoted(out, completion.word());
+            out.append(",\"count\":").append(completion.count()).append('}');
+            separator = ",";
+        }
+        return out.append(']').toString();
+    }
+}
@@ -0,0 +1,356 @@
+package main;
+
+import ngrams.NGramMap;
+import ngrams.TimeSeries;
+import ngrams.WordDictionary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 自动补全索引：按词频返回以某个前缀开头的前 k 个词。
+ *
+ * 全部词（n-gram 的词和 WordNet 的词）按 UTF-8 字节排序存成一张字符串表，
+ * 以同一前缀开头的词在表中是连续的一段，两次二分查找就能找到。每个词的权重是它在
+ * 所有年份的总出现次数（只在 WordNet 中的词为 0）。权重上建一棵线段树，每个节点存
+ * 区间内权重最大的词的排名；取前 k 个时用一个小堆：弹出当前最大的词，把它所在区间
+ * 拆成左右两段再放回堆中。一次查询 O(|前缀| log n + k log n)，不需要遍历整个区间。
+ *
+ * 所有数据都在一个小端序的 ByteBuffer 里，可以在内存中建立，也可以直接映射文件，
+ * 映射时不做任何解析。实例不可变，可以被多个线程同时查询。文件格式（每节 8 字节对齐）：
+ * <pre>
+ *   int     MAGIC, FORMAT_VERSION
+ *   int     wordCount, stringBytes, reserved, reserved
+ *   double  weights[wordCount]                 按排名
+ *   int     stringOffsets[wordCount + 1]
+ *   byte    strings[stringBytes]               UTF-8，按无符号字节升序
+ *   int     tree[2 * wordCount]                tree[wordCount + i] = i，tree[0] 不用
+ * </pre>
+ */
+public final class AutocompleteIndex {
+    private static final int MAGIC = 0x4E474143; // "NGAC"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+
+    /** 一个补全结果：词和它的总出现次数。 */
+    public record Completion(String word, double count) { }
+
+    private final int size;
+    private final DoubleBuffer weights;
+    private final IntBuffer stringOffsets;
+    private final ByteBuffer strings;
+    private final IntBuffer tree;
+    private final ByteBuffer data;
+
+    private AutocompleteIndex(ByteBuffer data) {
+        this.data = data;
+        if (data.limit() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not an autocomplete index");
+        }
+        if (data.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported autocomplete index version " + data.getInt(4));
+        }
+        size = data.getInt(8);
+        int stringBytes = data.getInt(12);
+        long expected = align(align(HEADER_BYTES + size * (long) Double.BYTES + (size + 1L) * Integer.BYTES)
+                + stringBytes) + 2L * size * Integer.BYTES;
+        if (size < 0 || stringBytes < 0 || data.limit() < expected) {
+            throw new IllegalArgumentException("Truncated autocomplete index");
+        }
+        int position = HEADER_BYTES;
+        weights = slice(data, position, size * Double.BYTES).asDoubleBuffer();
+        position += size * Double.BYTES;
+        stringOffsets = slice(data, position, (size + 1) * Integer.BYTES).asIntBuffer();
+        position = align(position + (size + 1) * Integer.BYTES);
+        strings = slice(data, position, stringBytes);
+        position = align(position + stringBytes);
+        tree = slice(data, position, 2 * size * Integer.BYTES).asIntBuffer();
+    }
+
+    /**
+     * 为 DATASET 的全部词建索引，权重是 n-gram 中的总出现次数
+     */
+    public static AutocompleteIndex build(NgordnetDataset dataset) {
+        WordDictionary dictionary = dataset.dictionary();
+        NGramMap ngm = dataset.ngramMap();
+        int n = dictionary.size();
+        byte[][] utf8 = new byte[n][];
+        Integer[] order = new Integer[n];
+        int stringBytes = 0;
+        for (int id = 0; id < n; id++) {
+            utf8[id] = dictionary.word(id).getBytes(StandardCharsets.UTF_8);
+            order[id] = id;
+            stringBytes += utf8[id].length;
+        }
+        Arrays.sort(order, Comparator.comparing(id -> utf8[id], Arrays::compareUnsigned));
+
+        int stringsStart = align(HEADER_BYTES + n * Double.BYTES + (n + 1) * Integer.BYTES);
+        int treeStart = align(stringsStart + stringBytes);
+        ByteBuffer data = ByteBuffer.allocate(treeStart + 2 * n * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).putInt(8, n).putInt(12, stringBytes);
+
+        int position = HEADER_BYTES;
+        for (int rank = 0; rank < n; rank++) {
+            data.putDouble(position, ngm.totalCount(order[rank], TimeSeries.MIN_YEAR, TimeSeries.MAX_YEAR));
+            position += Double.BYTES;
+        }
+        int stringOffset = 0;
+        for (int rank = 0; rank < n; rank++) {
+            data.putInt(position, stringOffset);
+            data.put(stringsStart + stringOffset, utf8[order[rank]]);
+            position += Integer.BYTES;
+            stringOffset += utf8[order[rank]].length;
+        }
+        data.putInt(position, stringOffset);
+
+        AutocompleteIndex index = new AutocompleteIndex(data);
+        index.buildTree();
+        return index;
+    }
+
+    /** 自底向上填线段树：叶子是自己的排名，内部节点是两个孩子中权重大的那个 */
+    private void buildTree() {
+        for (int i = 0; i < size; i++) {
+            tree.put(size + i, i);
+        }
+        for (int i = size - 1; i >= 1; i--) {
+            tree.put(i, better(tree.get(2 * i), tree.get(2 * i + 1)));
+        }
+    }
+
+    /**
+     * 映射 FILE 中的索引，不读取也不解析文件内容。文件格式不对时抛出 IllegalArgumentException。
+     */
+    public static AutocompleteIndex read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Autocomplete index larger than 2 GB: " + file);
+            }
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new AutocompleteIndex(mapped.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    /**
+     * 把索引写到 FILE：先写临时文件再原子地替换，已经映射旧文件的读者不受影响。
+     */
+    public void write(Path file) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer bytes = data.duplicate().clear();
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write autocomplete index " + file, e);
+        }
+    }
+
+    /** 返回索引中词的个数 */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 返回以 PREFIX 开头、总出现次数最多的至多 K 个词，次数降序，次数相同时按字节序升序
+     */
+    public List<Completion> complete(String prefix, int k) {
+        byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        int lo = firstNotBefore(key, false);
+        int hi = firstNotBefore(key, true);
+        List<Completion> result = new ArrayList<>(Math.max(0, Math.min(k, hi - lo)));
+        if (k <= 0 || lo >= hi) {
+            return result;
+        }
+
+        // 堆中每一项是一个区间 [lo, hi) 和其中最大的排名，按该排名的权重排序
+        // 每弹出一项最多放回两项，堆里的项数不超过弹出次数加一
+        RangeHeap heap = new RangeHeap(Math.min(k, hi - lo) + 1);
+        heap.push(lo, hi, maxIn(lo, hi));
+        while (result.size() < k && heap.size() > 0) {
+            int best = heap.top();
+            int rangeLo = heap.topLo();
+            int rangeHi = heap.topHi();
+            heap.pop();
+            result.add(new Completion(word(best), weights.get(best)));
+            if (rangeLo < best) {
+                heap.push(rangeLo, best, maxIn(rangeLo, best));
+            }
+            if (best + 1 < rangeHi) {
+                heap.push(best + 1, rangeHi, maxIn(best + 1, rangeHi));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 二分查找第一个截断到 KEY 长度后不小于 KEY 的排名；AFTER 为 true 时找第一个大于 KEY 的，
+     * 即以 KEY 开头的那一段之后的第一个排名
+     */
+    private int firstNotBefore(byte[] key, boolean after) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = comparePrefix(mid, key);
+            if (cmp < 0 || (after && cmp == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** 比较排名为 RANK 的词的前 KEY.length 个字节和 KEY（无符号） */
+    private int comparePrefix(int rank, byte[] key) {
+        int start = stringOffsets.get(rank);
+        int length = stringOffsets.get(rank + 1) - start;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Byte.compareUnsigned(strings.get(start + i), key[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length < key.length ? -1 : 0;
+    }
+
+    /** 线段树上 [lo, hi) 区间内权重最大的排名 */
+    private int maxIn(int lo, int hi) {
+        int best = -1;
+        for (int l = lo + size, r = hi + size; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1) {
+                best = better(best, tree.get(l++));
+            }
+            if ((r & 1) == 1) {
+                best = better(best, tree.get(--r));
+            }
+        }
+        return best;
+    }
+
+    /** 两个排名中权重大的那个，权重相同时取排名小的；-1 表示没有 */
+    private int better(int a, int b) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        double wa = weights.get(a);
+        double wb = weights.get(b);
+        if (wa != wb) {
+            return wa > wb ? a : b;
+        }
+        return Math.min(a, b);
+    }
+
+    private String word(int rank) {
+        int start = stringOffsets.get(rank);
+        byte[] bytes = new byte[stringOffsets.get(rank + 1) - start];
+        strings.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** 小端序视图：从 POSITION 开始的 LENGTH 个字节 */
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        return buffer.slice(position, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** 向上取整到 8 的倍数 */
+    private static int align(int position) {
+        return (position + 7) & ~7;
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    /** 按区间最大权重排序的二叉堆，三个并列数组，不装箱 */
+    private final class RangeHeap {
+        private final int[] los;
+        private final int[] his;
+        private final int[] bests;
+        private int count;
+
+        RangeHeap(int capacity) {
+            los = new int[capacity];
+            his = new int[capacity];
+            bests = new int[capacity];
+        }
+
+        int size() {
+            return count;
+        }
+
+        int top() {
+            return bests[0];
+        }
+
+        int topLo() {
+            return los[0];
+        }
+
+        int topHi() {
+            return his[0];
+        }
+
+        void push(int lo, int hi, int best) {
+            int i = count++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (better(bests[parent], best) != best) {
+                    break;
+                }
+                set(i, los[parent], his[parent], bests[parent]);
+                i = parent;
+            }
+            set(i, lo, hi, best);
+        }
+
+        void pop() {
+            count--;
+            int lo = los[count];
+            int hi = his[count];
+            int best = bests[count];
+            int i = 0;
+            while (2 * i + 1 < count) {
+                int child = 2 * i + 1;
+                if (child + 1 < count && better(bests[child], bests[child + 1]) != bests[child]) {
+                    child++;
+                }
+                if (better(best, bests[child]) == best) {
+                    break;
+                }
+                set(i, los[child], his[child], bests[child]);
+                i = child;
+            }
+            set(i, lo, hi, best);
+        }
+
+        private void set(int i, int lo, int hi, int best) {
+            los[i] = lo;
+            his[i] = hi;
+            bests[i] = best;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package main;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * 传递闭包索引：为每个同义词集预先算好它的全部下位同义词集（包括它自己）。
+ *
+ * 按拓扑序的逆序（先子后父）构建，每个节点的后代集合 = 自己 ∪ 所有子节点的后代集合。
+ * 集合采用类似 Roaring 的混合容器：元素少时存成有序 int[]，元素多时存成覆盖全部
+ * 节点的位图 long[]，哪种更省内存就用哪种；叶子节点不存任何东西。
+ * 这样 "x 是否是 y 的下位词" 只需一次位运算或二分查找。
+ *
+ * 图里有环或者内存超出预算时建不出索引，调用方应退回到 DFS。
+ */
+final class ClosureIndex {
+    private static final int MAGIC = 0x57434C49; // "WCLI"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte LEAF = 0;
+    private static final byte SORTED = 1;
+    private static final byte BITMAP = 2;
+
+    private final int size;
+    private final int edgeCount;
+    // 每个节点只会用其中一种容器，另一种为 null；两种都为 null 表示叶子，后代只有自己
+    private final int[][] sorted;
+    private final long[][] bitmaps;
+    private final long bytes;
+
+    private ClosureIndex(int size, int edgeCount, int[][] sorted, long[][] bitmaps, long bytes) {
+        this.size = size;
+        this.edgeCount = edgeCount;
+        this.sorted = sorted;
+        this.bitmaps = bitmaps;
+        this.bytes = bytes;
+    }
+
+    /**
+     * 为已冻结的 GRAPH 建索引。图中有环，或者容器总大小超过 BUDGETBYTES 时返回 null。
+     */
+    static ClosureIndex build(Graph graph, long budgetBytes) {
+        int n = graph.size();
+        int[] order = topologicalOrder(graph);
+        if (order == null) {
+            return null;
+        }
+
+        int words = (n + 63) >>> 6;
+        int[][] sorted = new int[n][];
+        long[][] bitmaps = new long[n][];
+        long bytes = 0;
+
+        // 合并子节点集合用的位图，只清理被写过的 long
+        long[] scratch = new long[words];
+        boolean[] dirty = new boolean[words];
+        int[] touched = new int[words];
+
+        // 逆拓扑序：处理一个节点时它的子节点都已处理完
+        for (int k = order.length - 1; k >= 0; k--) {
+            int v = order[k];
+            int start = graph.childrenStart(v);
+            int end = graph.childrenEnd(v);
+            if (start == end) {
+                continue; // 叶子
+            }
+
+            int touchedCount = 0;
+            touchedCount = setBit(scratch, dirty, touched, touchedCount, v);
+            for (int i = start; i < end; i++) {
+                int c = graph.child(i);
+                if (bitmaps[c] != null) {
+                    long[] bits = bitmaps[c];
+                    for (int w = 0; w < words; w++) {
+                        if (bits[w] != 0) {
+                            if (!dirty[w]) {
+                                dirty[w] = true;
+                                touched[touchedCount++] = w;
+                            }
+                            scratch[w] |= bits[w];
+                        }
+                    }
+                } else if (sorted[c] != null) {
+                    for (int d : sorted[c]) {
+                        touchedCount = setBit(scratch, dirty, touched, touchedCount, d);
+                    }
+                } else {
+                    touchedCount = setBit(scratch, dirty, touched, touchedCount, c);
+                }
+            }
+
+            int cardinality = 0;
+            for (int t = 0; t < touchedCount; t++) {
+                cardinality += Long.bitCount(scratch[touched[t]]);
+            }
+
+            // 哪种容器更小就用哪种
+            long sortedBytes = 16 + 4L * cardinality;
+            long bitmapBytes = 16 + 8L * words;
+            if (bitmapBytes < sortedBytes) {
+                bitmaps[v] = Arrays.copyOf(scratch, words);
+                bytes += bitmapBytes;
+            } else {
+                Arrays.sort(touched, 0, touchedCount);
+                int[] members = new int[cardinality];
+                int m = 0;
+                for (int t = 0; t < touchedCount; t++) {
+                    int w = touched[t];
+                    long bits = scratch[w];
+                    while (bits != 0) {
+                        members[m++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                    }
+                }
+                sorted[v] = members;
+                bytes += sortedBytes;
+            }
+            if (bytes > budgetBytes) {
+                return null;
+            }
+
+            for (int t = 0; t < touchedCount; t++) {
+                scratch[touched[t]] = 0;
+                dirty[touched[t]] = false;
+            }
+        }
+        return new ClosureIndex(n, graph.edgeCount(), sorted, bitmaps, bytes);
+    }
+
+    private static int setBit(long[] scratch, boolean[] dirty, int[] touched, int touchedCount, int v) {
+        int w = v >>> 6;
+        if (!dirty[w]) {
+            dirty[w] = true;
+            touched[touchedCount++] = w;
+        }
+        scratch[w] |= 1L << v;
+        return touchedCount;
+    }
+
+    /**
+     * Kahn 算法求拓扑序（父在前，子在后）。有环时返回 null。
+     */
+    private static int[] topologicalOrder(Graph graph) {
+        int n = graph.size();
+        int[] inDegree = new int[n];
+        int[] order = new int[n];
+        int count = 0;
+        int nodes = 0;
+        for (int v = 0; v < n; v++) {
+            if (graph.hasNode(v)) {
+                nodes++;
+                inDegree[v] = graph.parentsEnd(v) - graph.parentsStart(v);
+                if (inDegree[v] == 0) {
+                    order[count++] = v;
+                }
+            }
+        }
+        // order 同时当队列用
+        for (int head = 0; head < count; head++) {
+            int v = order[head];
+            for (int i = graph.childrenStart(v), end = graph.childrenEnd(v); i < end; i++) {
+                int c = graph.child(i);
+                if (--inDegree[c] == 0) {
+                    order[count++] = c;
+                }
+            }
+        }
+        return count == nodes ? Arrays.copyOf(order, count) : null;
+    }
+
+    /** 索引占用的大致字节数 */
+    long bytes() {
+        return bytes;
+    }
+
+    /** d 是否是 v 的后代（包括 v 自己） */
+    boolean contains(int v, int d) {
+        if (bitmaps[v] != null) {
+            return d >= 0 && d < size && (bitmaps[v][d >>> 6] & (1L << d)) != 0;
+        }
+        if (sorted[v] != null) {
+            return Arrays.binarySearch(sorted[v], d) >= 0;
+        }
+        return v == d;
+    }
+
+    /** 对 v 的每个后代（包括 v 自己）调用 VISITOR */
+    void forEachDescendant(int v, IntVisitor visitor) {
+        if (bitmaps[v] != null) {
+            long[] bits = bitmaps[v];
+            for (int w = 0; w < bits.length; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    visitor.visit((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        } else if (sorted[v] != null) {
+            for (int d : sorted[v]) {
+                visitor.visit(d);
+            }
+        } else {
+            visitor.visit(v);
+        }
+    }
+
+    /** 接收一个 int，不装箱 */
+    interface IntVisitor {
+        void visit(int v);
+    }
+
+    /**
+     * 把索引写到 FILE：先写临时文件再原子地替换，读者不会看到写了一半的文件。
+     */
+    void write(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(size);
+            out.writeInt(edgeCount);
+            for (int v = 0; v < size; v++) {
+                if (bitmaps[v] != null) {
+                    out.writeByte(BITMAP);
+                    out.writeInt(bitmaps[v].length);
+                    for (long word : bitmaps[v]) {
+                        out.writeLong(word);
+                    }
+                } else if (sorted[v] != null) {
+                    out.writeByte(SORTED);
+                    out.writeInt(sorted[v].length);
+                    for (int d : sorted[v]) {
+                        out.writeInt(d);
+                    }
+                } else {
+                    out.writeByte(LEAF);
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 从 FILE 读取为 GRAPH 建的索引。文件格式不对、或者节点数/边数和 GRAPH 不一致
+     * （说明文件是为别的图建的）时返回 null。
+     */
+    static ClosureIndex read(Path file, Graph graph) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            int n = in.readInt();
+            int edges = in.readInt();
+            if (n != graph.size() || edges != graph.edgeCount()) {
+                return null;
+            }
+            int[][] sorted = new int[n][];
+            long[][] bitmaps = new long[n][];
+            long bytes = 0;
+            for (int v = 0; v < n; v++) {
+                byte kind = in.readByte();
+                if (kind == BITMAP) {
+                    long[] bits = new long[in.readInt()];
+                    if (bits.length != (n + 63) >>> 6) {
+                        return null;
+                    }
+                    for (int w = 0; w < bits.length; w++) {
+                        bits[w] = in.readLong();
+                    }
+                    bitmaps[v] = bits;
+                    bytes += 16 + 8L * bits.length;
+                } else if (kind == SORTED) {
+                    int[] members = new int[in.readInt()];
+                    for (int i = 0; i < members.length; i++) {
+                        members[i] = in.readInt();
+                    }
+                    sorted[v] = members;
+                    bytes += 16 + 4L * members.length;
+                } else if (kind != LEAF) {
+                    return null;
+                }
+            }
+            return new ClosureIndex(n, edges, sorted, bitmaps, bytes);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package main;
+
+import ngrams.NGramMap;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监视数据文件，文件变化后在后台建立新一代数据集，再通过 LiveDataset 原子地换上。
+ *
+ * 文件变化的事件来自 WatchService；一次变化往往带来一串事件（写入方还没写完），
+ * 所以最后一个事件之后安静 QUIETPERIOD 才开始重建。重建在单独的后台线程上进行，
+ * 期间查询继续使用旧数据：
+ * - n-gram 词文件只在末尾追加了行时，只解析追加的部分（见 NGramMap.refreshed），
+ *   否则完整重新加载；总数文件很小，每次都完整读取；
+ * - WordNet 每次都从文件重建，因为新一代的词典会重新编号，而 WordNet 按词编号存储。
+ * 重建失败（例如文件还没写完）时保留旧数据，等下一次变化再试。
+ */
+public final class DatasetWatcher implements AutoCloseable {
+    private final LiveDataset live;
+    private final String wordsFile;
+    private final String countsFile;
+    private final String synsetsFile;
+    private final String hyponymsFile;
+    private final Duration quietPeriod;
+
+    private final List<Path> files;
+    private final WatchService watchService;
+    private final Thread watchThread;
+    private final ScheduledExecutorService reloader;
+    private ScheduledFuture<?> pending; // 由 this 保护
+    // 重建互斥锁，保护 stamps
+    private final Object reloadLock = new Object();
+    // 上一次建立数据集时各文件的状态
+    private List<FileStamp> stamps;
+
+    /** 文件的 inode、大小和修改时间，任何一项变化都说明文件变了 */
+    private record FileStamp(Object fileKey, long size, long modified) {
+        static FileStamp of(Path file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return new FileStamp(attributes.fileKey(), attributes.size(),
+                        attributes.lastModifiedTime().toMillis());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 开始监视四个数据文件，LIVE 的当前数据必须来自这些文件
+     * @param quietPeriod 最后一次文件变化之后等待多久再重建
+     */
+    public DatasetWatcher(LiveDataset live, String wordsFile, String countsFile,
+                          String synsetsFile, String hyponymsFile, Duration quietPeriod) throws IOException {
+        this.live = live;
+        this.wordsFile = wordsFile;
+        this.countsFile = countsFile;
+        this.synsetsFile = synsetsFile;
+        this.hyponymsFile = hyponymsFile;
+        this.quietPeriod = quietPeriod;
+        this.files = List.of(Path.of(wordsFile).toAbsolutePath().normalize(),
+                Path.of(countsFile).toAbsolutePath().normalize(),
+                Path.of(synsetsFile).toAbsolutePath().normalize(),
+                Path.of(hyponymsFile).toAbsolutePath().normalize());
+        this.stamps = stampFiles();
+
+        watchService = FileSystems.getDefault().newWatchService();
+        Set<Path> directories = new HashSet<>();
+        for (Path file : files) {
+            directories.add(file.getParent());
+        }
+        for (Path directory : directories) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ngordnet-dataset-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchThread = new Thread(this::watch, "ngordnet-dataset-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /** 等待文件事件，涉及数据文件时安排一次重建 */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory = (Path) key.watchable();
+                boolean relevant = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        relevant = true;
+                    } else if (files.contains(directory.resolve((Path) event.context()))) {
+                        relevant = true;
+                    }
+                }
+                key.reset();
+                if (relevant) {
+                    scheduleReload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 关闭监视
+        }
+    }
+
+    /** 在安静 quietPeriod 之后重建；期间又有变化就重新计时 */
+    private synchronized void scheduleReload() {
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = reloader.schedule(this::reloadIfChanged, quietPeriod.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** 文件和上次建立时相比有变化才重建 */
+    private void reloadIfChanged() {
+        synchronized (reloadLock) {
+            if (!Objects.equals(stamps, stampFiles())) {
+                reload();
+            }
+        }
+    }
+
+    /**
+     * 立即在调用线程上根据当前文件建立新一代数据并换上，返回新的版本号；
+     * 失败时保留旧数据并返回当前版本号。
+     */
+    public long reloadNow() {
+        synchronized (reloadLock) {
+            return reload();
+        }
+    }
+
+    /** 必须持有 reloadLock */
+    private long reload() {
+        // 先记下文件状态：重建期间文件又变了的话，下一次检查会再重建
+        List<FileStamp> before = stampFiles();
+        long start = System.nanoTime();
+        try {
+            NGramMap ngm = live.dataset().ngramMap().refreshed(wordsFile, countsFile);
+            NgordnetDataset dataset = NgordnetDataset.of(ngm, synsetsFile, hyponymsFile);
+            long version = live.publish(dataset).version();
+            stamps = before;
+            System.out.printf("Loaded dataset generation %d in %.2f sec: %s%n", version,
+                    (System.nanoTime() - start) / 1e9, ngm.loadStats());
+            return version;
+        } catch (RuntimeException e) {
+            System.out.println("Keeping dataset generation " + live.version()
+                    + ", reload failed: " + e);
+            return live.version();
+        }
+    }
+
+    private List<FileStamp> stampFiles() {
+        return files.stream().map(FileStamp::of).toList();
+    }
+
+    /** 停止监视，不再重建 */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        watchThread.interrupt();
+        reloader.shutdownNow();
+    }
+}
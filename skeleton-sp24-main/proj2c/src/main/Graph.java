@@ -2,43 +2,185 @@ package main;
 
 import java.util.*;
 
+/**
+ * 有向图：先用 addNode/addEdge 建图，再调用 freeze() 压缩成 CSR（compressed sparse row）格式。
+ *
+ * 冻结后，节点 v 的子节点（hyponym）是 children[childOffsets[v] .. childOffsets[v + 1])，
+ * 父节点（hypernym）是 parents[parentOffsets[v] .. parentOffsets[v + 1])，全部是 int，
+ * 遍历时不产生任何装箱对象。节点 ID 必须是非负整数，数组按最大 ID 分配。
+ */
 public class Graph {
-    private final Map<Integer, Set<Integer>> graph; // 存储向下的边（hyponym关系）
-    private final Map<Integer, Set<Integer>> reverseGraph;  // 存储向上的边（hypernym关系）
+    // 建图阶段：节点集合和按输入顺序记录的边
+    private BitSet nodes;
+    private int[] edgeFrom;
+    private int[] edgeTo;
+    private int edgeCount;
+
+    // 冻结后的 CSR 数组，向下的边（hyponym关系）和向上的边（hypernym关系）
+    private int[] childOffsets;
+    private int[] children;
+    private int[] parentOffsets;
+    private int[] parents;
+    private int size;
 
     public Graph() {
-        graph = new HashMap<>();
-        reverseGraph = new HashMap<>();
+        nodes = new BitSet();
+        edgeFrom = new int[16];
+        edgeTo = new int[16];
     }
 
     // Add Node
     public void addNode(int v) {
-        graph.putIfAbsent(v, new HashSet<>());
-        reverseGraph.putIfAbsent(v, new HashSet<>());
+        checkBuilding();
+        if (v < 0) {
+            throw new IllegalArgumentException("Node " + v + " must not be negative");
+        }
+        nodes.set(v);
     }
 
     // Add Edge
     public void addEdge(int from, int to) {
-        if (!graph.containsKey(from) || !graph.containsKey(to)) {
+        checkBuilding();
+        if (from < 0 || to < 0 || !nodes.get(from) || !nodes.get(to)) {
             throw new IllegalArgumentException("Nodes do not exist!");
         }
-        graph.get(from).add(to);
-        reverseGraph.get(to).add(from);  // 添加反向边
+        if (edgeCount == edgeFrom.length) {
+            edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+            edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+        }
+        edgeFrom[edgeCount] = from;
+        edgeTo[edgeCount] = to;
+        edgeCount += 1;
     }
 
-    // 获取子节点（hyponyms）
-    public Set<Integer> getNeighbors(int v) {
-        if (!graph.containsKey(v)) {
+    /**
+     * 把已加入的边压缩成两个方向的 CSR 数组，之后图只读，不能再加点或边。
+     * 重复的边只保留一条，每个节点的邻居按 ID 升序排列。
+     */
+    public void freeze() {
+        checkBuilding();
+        size = nodes.length();
+        childOffsets = new int[size + 1];
+        parentOffsets = new int[size + 1];
+        children = buildRows(edgeFrom, edgeTo, childOffsets);
+        parents = buildRows(edgeTo, edgeFrom, parentOffsets);
+        // 建图用的边列表不再需要
+        edgeFrom = null;
+        edgeTo = null;
+    }
+
+    /**
+     * 用计数排序把边 (sources[i], targets[i]) 按起点分组，填好 OFFSETS，
+     * 返回去重后的目标数组。
+     */
+    private int[] buildRows(int[] sources, int[] targets, int[] offsets) {
+        for (int i = 0; i < edgeCount; i += 1) {
+            offsets[sources[i] + 1] += 1;
+        }
+        for (int v = 0; v < size; v += 1) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] next = Arrays.copyOf(offsets, size);
+        int[] rows = new int[edgeCount];
+        for (int i = 0; i < edgeCount; i += 1) {
+            rows[next[sources[i]]++] = targets[i];
+        }
+
+        // 每行排序后去重，原地压紧
+        int write = 0;
+        int rowStart = 0;
+        for (int v = 0; v < size; v += 1) {
+            int rowEnd = offsets[v + 1];
+            Arrays.sort(rows, rowStart, rowEnd);
+            offsets[v] = write;
+            for (int i = rowStart; i < rowEnd; i += 1) {
+                if (i == rowStart || rows[i] != rows[i - 1]) {
+                    rows[write++] = rows[i];
+                }
+            }
+            rowStart = rowEnd;
+        }
+        offsets[size] = write;
+        return write == rows.length ? rows : Arrays.copyOf(rows, write);
+    }
+
+    private void checkBuilding() {
+        if (childOffsets != null) {
+            throw new IllegalStateException("Graph is frozen");
+        }
+    }
+
+    private void checkNode(int v) {
+        if (childOffsets == null) {
+            throw new IllegalStateException("Graph is not frozen yet");
+        }
+        if (!hasNode(v)) {
             throw new IllegalArgumentException("Node " + v + " does not exist");
         }
-        return Collections.unmodifiableSet(graph.get(v));
     }
 
-    // 获取父节点（hypernyms）
+    /** 节点 ID 的上界（最大 ID + 1），可以用来分配按 ID 索引的数组 */
+    public int size() {
+        return childOffsets == null ? nodes.length() : size;
+    }
+
+    /** 边数（冻结后不含重复的边） */
+    public int edgeCount() {
+        return childOffsets == null ? edgeCount : children.length;
+    }
+
+    /** 节点 v 是否存在 */
+    public boolean hasNode(int v) {
+        return v >= 0 && nodes.get(v);
+    }
+
+    // 子节点在 child(i) 中的下标范围 [childrenStart(v), childrenEnd(v))
+    public int childrenStart(int v) {
+        checkNode(v);
+        return childOffsets[v];
+    }
+
+    public int childrenEnd(int v) {
+        checkNode(v);
+        return childOffsets[v + 1];
+    }
+
+    public int child(int i) {
+        return children[i];
+    }
+
+    // 父节点在 parent(i) 中的下标范围 [parentsStart(v), parentsEnd(v))
+    public int parentsStart(int v) {
+        checkNode(v);
+        return parentOffsets[v];
+    }
+
+    public int parentsEnd(int v) {
+        checkNode(v);
+        return parentOffsets[v + 1];
+    }
+
+    public int parent(int i) {
+        return parents[i];
+    }
+
+    // 获取子节点（hyponyms），会装箱，遍历时请用 childrenStart/childrenEnd/child
+    public Set<Integer> getNeighbors(int v) {
+        checkNode(v);
+        Set<Integer> result = new LinkedHashSet<>();
+        for (int i = childOffsets[v]; i < childOffsets[v + 1]; i += 1) {
+            result.add(children[i]);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    // 获取父节点（hypernyms），会装箱，遍历时请用 parentsStart/parentsEnd/parent
     public Set<Integer> getParents(int v) {
-        if (!reverseGraph.containsKey(v)) {
-            throw new IllegalArgumentException("Node " + v + " does not exist");
+        checkNode(v);
+        Set<Integer> result = new LinkedHashSet<>();
+        for (int i = parentOffsets[v]; i < parentOffsets[v + 1]; i += 1) {
+            result.add(parents[i]);
         }
-        return Collections.unmodifiableSet(reverseGraph.get(v));
+        return Collections.unmodifiableSet(result);
     }
 }
@@ -0,0 +1,123 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * 在 Graph 上做迭代式 DFS/BFS，用显式的 int 栈/队列代替递归，再深的链也不会栈溢出。
+ *
+ * 访问标记按 epoch 记录：stamps[v] == epoch 表示本轮访问过 v，begin() 开始新一轮时
+ * 只需 epoch 加一。同一轮里从多个起点出发的遍历共用访问标记，每个节点最多访问一次。
+ * 一个对象同一时刻只能给一个线程用，可以反复使用，遍历过程中不分配对象也不装箱。
+ */
+public class GraphTraversal {
+    /** 沿哪个方向遍历 */
+    public enum Direction {
+        HYPONYMS,  // 向下：上位词 -> 下位词
+        HYPERNYMS  // 向上：下位词 -> 上位词
+    }
+
+    /** 访问一个节点；返回 false 时立即停止遍历 */
+    public interface Visitor {
+        boolean visit(int v);
+    }
+
+    private final Graph graph;
+    private final int[] stamps;
+    private int epoch;
+    // DFS 的栈和 BFS 的队列共用
+    private int[] pending;
+
+    public GraphTraversal(Graph graph) {
+        this.graph = graph;
+        this.stamps = new int[graph.size()];
+        this.pending = new int[64];
+    }
+
+    /** 开始新的一轮，之前的访问标记全部失效 */
+    public void begin() {
+        epoch++;
+        if (epoch == 0) {
+            // epoch 溢出后从头开始，旧标记必须清掉
+            Arrays.fill(stamps, 0);
+            epoch = 1;
+        }
+    }
+
+    /** 本轮是否访问过 v */
+    public boolean visited(int v) {
+        return stamps[v] == epoch;
+    }
+
+    /** 标记 v；若本轮已访问过返回 false */
+    private boolean mark(int v) {
+        if (stamps[v] == epoch) {
+            return false;
+        }
+        stamps[v] = epoch;
+        return true;
+    }
+
+    private void push(int size, int v) {
+        if (size == pending.length) {
+            pending = Arrays.copyOf(pending, size * 2);
+        }
+        pending[size] = v;
+    }
+
+    /**
+     * 从 START 出发深度优先遍历本轮还没访问过的节点（先序，包括 START 自己），
+     * 对每个节点调用 VISITOR。VISITOR 要求停止时返回 false，否则返回 true。
+     */
+    public boolean depthFirst(int start, Direction direction, Visitor visitor) {
+        if (!mark(start)) {
+            return true;
+        }
+        boolean down = direction == Direction.HYPONYMS;
+        int size = 0;
+        push(size++, start);
+        while (size > 0) {
+            int v = pending[--size];
+            if (!visitor.visit(v)) {
+                return false;
+            }
+            int begin = down ? graph.childrenStart(v) : graph.parentsStart(v);
+            int end = down ? graph.childrenEnd(v) : graph.parentsEnd(v);
+            // 逆序入栈，同一节点的邻居按 ID 升序出栈
+            for (int i = end - 1; i >= begin; i--) {
+                int next = down ? graph.child(i) : graph.parent(i);
+                if (mark(next)) {
+                    push(size++, next);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 从 START 出发广度优先遍历本轮还没访问过的节点（包括 START 自己），离 START
+     * 越近越先访问。VISITOR 要求停止时返回 false，否则返回 true。
+     */
+    public boolean breadthFirst(int start, Direction direction, Visitor visitor) {
+        if (!mark(start)) {
+            return true;
+        }
+        boolean down = direction == Direction.HYPONYMS;
+        int tail = 0;
+        push(tail++, start);
+        for (int head = 0; head < tail; head++) {
+            int v = pending[head];
+            if (!visitor.visit(v)) {
+                return false;
+            }
+            int begin = down ? graph.childrenStart(v) : graph.parentsStart(v);
+            int end = down ? graph.childrenEnd(v) : graph.parentsEnd(v);
+            for (int i = begin; i < end; i++) {
+                int next = down ? graph.child(i) : graph.parent(i);
+                if (mark(next)) {
+                    push(tail++, next);
+                }
+            }
+        }
+        return true;
+    }
+}
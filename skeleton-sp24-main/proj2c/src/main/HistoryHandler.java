@@ -1,35 +1,120 @@
 package main;
 
+import browser.JsonStrings;
 import browser.NgordnetQuery;
 import browser.NgordnetQueryHandler;
+import ngrams.DenseTimeSeries;
 import ngrams.NGramMap;
 import ngrams.TimeSeries;
-import plotting.Plotter;
-import org.knowm.xchart.XYChart;
+import ngrams.TimeSeriesTransform;
+import plotting.ChartRenderer;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 public class HistoryHandler extends NgordnetQueryHandler {
-    private NGramMap map;
+    /** 默认缓存的图表数量。 */
+    public static final int DEFAULT_CHART_CACHE_CAPACITY = 256;
+
+    private final Supplier<NGramMap> maps;
+    private final ChartRenderer renderer;
+
     public HistoryHandler(NGramMap map) {
-        this.map = map;
+        this(map, ChartRenderer.forAvailableProcessors(DEFAULT_CHART_CACHE_CAPACITY));
+    }
+
+    /** 用 RENDERER 绘制图表，多个 handler 可以共用一个 renderer。 */
+    public HistoryHandler(NGramMap map, ChartRenderer renderer) {
+        this(() -> map, renderer);
+    }
+
+    /** 使用 LIVE 当前一代的 n-gram 数据，换上新数据时清空图表缓存。 */
+    public HistoryHandler(LiveDataset live) {
+        this(live, ChartRenderer.forAvailableProcessors(DEFAULT_CHART_CACHE_CAPACITY));
+    }
+
+    public HistoryHandler(LiveDataset live, ChartRenderer renderer) {
+        this(() -> live.dataset().ngramMap(), renderer);
+        live.onPublish(generation -> renderer.clear());
+    }
+
+    private HistoryHandler(Supplier<NGramMap> maps, ChartRenderer renderer) {
+        this.maps = maps;
+        this.renderer = renderer;
     }
 
     @Override
     public String handle(NgordnetQuery q) {
+        return ChartRenderer.toBase64(join(render(q)));
+    }
+
+    /**
+     * 只提交绘制任务就返回；响应线程等图表画完后，把 Base64 直接写进响应，
+     * 不再拼出整个字符串。
+     */
+    @Override
+    public StreamedResult stream(NgordnetQuery q) {
+        CompletableFuture<byte[]> png = render(q);
+        return new StreamedResult() {
+            @Override
+            public void render() {
+                join(png);
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                byte[] bytes = join(png);
+                out.write('"');
+                ChartRenderer.writeBase64(bytes, JsonStrings.escapingAscii(out));
+                out.write('"');
+            }
+        };
+    }
+
+    private CompletableFuture<byte[]> render(NgordnetQuery q) {
         List<String> words = q.words();
         int startYear = q.startYear();
         int endYear = q.endYear();
-        ArrayList<TimeSeries> lts = new ArrayList<>();
-        ArrayList<String> labels = new ArrayList<>();
-        for (String word: words) {
-            TimeSeries ts = map.weightHistory(word, startYear, endYear);
-            lts.add(ts);
-            labels.add(word);
+        TimeSeriesTransform transform = HistoryTextHandler.transformOf(q);
+        if (transform.isIdentity()) {
+            // 数据在绘制线程上才读取：缓存清空之后放进缓存的图表一定来自新数据
+            return renderer.renderPng(words, startYear, endYear, () -> {
+                NGramMap map = maps.get();
+                ArrayList<TimeSeries> lts = new ArrayList<>();
+                for (String word: words) {
+                    lts.add(map.weightHistory(word, startYear, endYear));
+                }
+                return lts;
+            });
+        }
+        // 时间算子在两个复用的 DenseTimeSeries 上原地计算，每个词只建一个画图用的 TimeSeries
+        return renderer.renderPng(words, startYear, endYear, transform.toString(), () -> {
+            NGramMap map = maps.get();
+            DenseTimeSeries series = new DenseTimeSeries();
+            DenseTimeSeries scratch = new DenseTimeSeries();
+            ArrayList<TimeSeries> lts = new ArrayList<>();
+            for (String word: words) {
+                map.weightHistoryInto(word, startYear, endYear, series);
+                lts.add(transform.apply(series, scratch).toTimeSeries());
+            }
+            return lts;
+        });
+    }
+
+    /** 等待绘制结束，并把绘制线程上的异常原样抛出。 */
+    private static byte[] join(CompletableFuture<byte[]> png) {
+        try {
+            return png.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
         }
-        XYChart chart = Plotter.generateTimeSeriesChart(labels, lts);
-        String encodedImage = Plotter.encodeChartAsString(chart);
-        return encodedImage;
     }
 }
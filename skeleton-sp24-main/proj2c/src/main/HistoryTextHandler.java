@@ -1,28 +1,85 @@
 package main;
 
+import browser.JsonStrings;
+import browser.NgordnetOutputFormat;
 import browser.NgordnetQuery;
 import browser.NgordnetQueryHandler;
 import ngrams.NGramMap;
-import ngrams.TimeSeries;
+import ngrams.TimeSeriesTransform;
 
-import java.util.List;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
 
 public class HistoryTextHandler extends NgordnetQueryHandler {
-    private NGramMap map;
+    private final Supplier<NGramMap> maps;
     public HistoryTextHandler(NGramMap map) {
-        this.map = map;
+        this.maps = () -> map;
+    }
+
+    /** 使用 LIVE 当前一代的 n-gram 数据。 */
+    public HistoryTextHandler(LiveDataset live) {
+        this.maps = () -> live.dataset().ngramMap();
     }
 
     @Override
     public String handle(NgordnetQuery q) {
-        String output = "";
-        List<String> words = q.words();
-        int startYear = q.startYear();
-        int endYear = q.endYear();
-        for (String word: words) {
-            TimeSeries ts = map.weightHistory(word, startYear, endYear);
-            output += word + ": " + ts.toString() + "\n";
+        StringWriter output = new StringWriter();
+        try {
+            write(q, transformOf(q), maps.get(), output);
+        } catch (IOException e) {
+            // StringWriter 不会抛出 IOException
+            throw new UncheckedIOException(e);
         }
-        return output;
+        return output.toString();
+    }
+
+    /**
+     * 逐词把结果写进响应。TEXT 格式写成与 gson.toJson(handle(q)) 相同的 JSON 字符串，
+     * CSV 和 JSON 格式直接写给机器客户端。
+     */
+    @Override
+    public StreamedResult stream(NgordnetQuery q) {
+        NgordnetOutputFormat format = q.format();
+        // 在开始写响应之前解析 transform，无效时直接报错
+        TimeSeriesTransform transform = transformOf(q);
+        // 整个查询都用开始时的这一代数据
+        NGramMap map = maps.get();
+        return new StreamedResult() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                if (format == NgordnetOutputFormat.TEXT) {
+                    writer.write('"');
+                    write(q, transform, map, JsonStrings.escaping(writer));
+                    writer.write('"');
+                } else {
+                    write(q, transform, map, writer);
+                }
+                writer.flush();
+            }
+
+            @Override
+            public String contentType() {
+                return format.contentType();
+            }
+        };
+    }
+
+    private static void write(NgordnetQuery q, TimeSeriesTransform transform, NGramMap map, Writer out)
+            throws IOException {
+        new HistoryTextWriter(map, transform).write(q.words(), q.startYear(), q.endYear(),
+                q.format(), out);
+    }
+
+    /** 解析查询的 transform，无效时抛出 IllegalArgumentException。 */
+    static TimeSeriesTransform transformOf(NgordnetQuery q) {
+        return TimeSeriesTransform.parse(q.transform());
     }
 }
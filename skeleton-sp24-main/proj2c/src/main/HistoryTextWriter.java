@@ -0,0 +1,148 @@
+package main;
+
+import browser.CsvStrings;
+import browser.JsonStrings;
+import browser.NgordnetOutputFormat;
+import ngrams.DenseTimeSeries;
+import ngrams.NGramMap;
+import ngrams.TimeSeries;
+import ngrams.TimeSeriesTransform;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * 把每个词的相对频率逐词写到 Writer，不拼出整个结果字符串。
+ *
+ * 数据直接从 NGramMap 的列存储读进一个复用的 DenseTimeSeries，年份和数值都不装箱；
+ * 查询带 transform 时，时间算子在这个序列（和一个复用的备用序列）上原地计算。
+ * 数字用 StringBuilder.append(double) 格式化，算法与 Double.toString 相同，
+ * 但不产生中间 String。输出格式：
+ * - TEXT：与原来的 word + ": " + TimeSeries.toString() + "\n" 逐字节相同；
+ * - CSV：表头 word,year,weight，每个词的每一年一行；
+ * - JSON：[{"word":...,"years":[...],"weights":[...]}, ...]，非有限值写成 null。
+ *
+ * 不是线程安全的，每个请求用一个新实例。
+ */
+final class HistoryTextWriter {
+    /** 缓冲超过这个长度就写给 Writer。 */
+    private static final int FLUSH_THRESHOLD = 8192;
+
+    private final NGramMap map;
+    private final TimeSeriesTransform transform;
+    private final DenseTimeSeries series = new DenseTimeSeries();
+    private final DenseTimeSeries scratch = new DenseTimeSeries();
+    private final StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD + 256);
+    private final char[] chars = new char[FLUSH_THRESHOLD + 256];
+    private Writer out;
+
+    HistoryTextWriter(NGramMap map) {
+        this(map, TimeSeriesTransform.IDENTITY);
+    }
+
+    /** 写出的每个序列先经过 TRANSFORM。 */
+    HistoryTextWriter(NGramMap map, TimeSeriesTransform transform) {
+        this.map = map;
+        this.transform = transform;
+    }
+
+    /** 返回 WORD 在 STARTYEAR 到 ENDYEAR 之间经过 transform 的相对频率，结果在 series 或 scratch 里。 */
+    private DenseTimeSeries weights(String word, int startYear, int endYear) {
+        return transform.apply(map.weightHistoryInto(word, startYear, endYear, series), scratch);
+    }
+
+    /** 把 WORDS 在 STARTYEAR 到 ENDYEAR 之间的历史按 FORMAT 写到 OUT，最后 flush 缓冲。 */
+    void write(List<String> words, int startYear, int endYear, NgordnetOutputFormat format,
+               Writer out) throws IOException {
+        this.out = out;
+        switch (format) {
+            case CSV -> writeCsv(words, startYear, endYear);
+            case JSON -> writeJson(words, startYear, endYear);
+            default -> writeText(words, startYear, endYear);
+        }
+        drain();
+    }
+
+    private void writeText(List<String> words, int startYear, int endYear) throws IOException {
+        for (String word : words) {
+            DenseTimeSeries history = weights(word, startYear, endYear);
+            // 与 AbstractMap.toString 相同：{year=value, year=value}
+            buffer.append(word).append(": {");
+            String separator = "";
+            for (int year = history.nextYear(TimeSeries.MIN_YEAR); year != -1;
+                 year = history.nextYear(year + 1)) {
+                buffer.append(separator).append(year).append('=').append(history.get(year));
+                separator = ", ";
+                maybeDrain();
+            }
+            buffer.append("}\n");
+        }
+    }
+
+    private void writeCsv(List<String> words, int startYear, int endYear) throws IOException {
+        buffer.append("word,year,weight\n");
+        for (String word : words) {
+            DenseTimeSeries history = weights(word, startYear, endYear);
+            for (int year = history.nextYear(TimeSeries.MIN_YEAR); year != -1;
+                 year = history.nextYear(year + 1)) {
+                CsvStrings.appendField(buffer, word);
+                buffer.append(',').append(year).append(',').append(history.get(year)).append('\n');
+                maybeDrain();
+            }
+        }
+    }
+
+    private void writeJson(List<String> words, int startYear, int endYear) throws IOException {
+        buffer.append('[');
+        String separator = "";
+        for (String word : words) {
+            DenseTimeSeries history = weights(word, startYear, endYear);
+            buffer.append(separator).append("{\"word\":");
+            JsonStrings.appendQuoted(buffer, word);
+            buffer.append(",\"years\":[");
+            String itemSeparator = "";
+            for (int year = history.nextYear(TimeSeries.MIN_YEAR); year != -1;
+                 year = history.nextYear(year + 1)) {
+                buffer.append(itemSeparator).append(year);
+                itemSeparator = ",";
+                maybeDrain();
+            }
+            buffer.append("],\"weights\":[");
+            itemSeparator = "";
+            for (int year = history.nextYear(TimeSeries.MIN_YEAR); year != -1;
+                 year = history.nextYear(year + 1)) {
+                double weight = history.get(year);
+                buffer.append(itemSeparator);
+                if (Double.isFinite(weight)) {
+                    buffer.append(weight);
+                } else {
+                    buffer.append("null");
+                }
+                itemSeparator = ",";
+                maybeDrain();
+            }
+            buffer.append("]}");
+            separator = ",";
+        }
+        buffer.append(']');
+    }
+
+    private void maybeDrain() throws IOException {
+        if (buffer.length() >= FLUSH_THRESHOLD) {
+            drain();
+        }
+    }
+
+    /** 把缓冲里的字符写给 Writer；经过 char[] 中转，避免 toString 复制出新字符串。 */
+    private void drain() throws IOException {
+        int start = 0;
+        while (start < buffer.length()) {
+            int end = Math.min(buffer.length(), start + chars.length);
+            buffer.getChars(start, end, chars, 0);
+            out.write(chars, 0, end - start);
+            start = end;
+        }
+        buffer.setLength(0);
+    }
+}
@@ -3,13 +3,14 @@ package main;
 import browser.NgordnetQuery;
 import browser.NgordnetQueryHandler;
 import browser.NgordnetQueryType;
+import browser.SharedResults;
 import ngrams.NGramMap;
+import ngrams.WordDictionary;
 
 import java.util.*;
 
 public class HyponymsHandler extends NgordnetQueryHandler {
-    private WordNet wordnet;
-    private NGramMap ngm;
+    private final LiveDataset live;
 
     /**
      * HyponymsHandler 构造函数
@@ -17,16 +18,48 @@ public class HyponymsHandler extends NgordnetQueryHandler {
      * @param hyponymsFile 下位词关系文件路径
      */
     public HyponymsHandler(String synsetsFile, String hyponymsFile, String wordsFile, String countsFile) {
+        this(loadDataset(synsetsFile, hyponymsFile, wordsFile, countsFile));
+    }
+
+    /**
+     * 使用共用的数据集，不再单独加载 WordNet 和 n-gram 数据
+     * @param dataset 共用词典的数据集
+     */
+    public HyponymsHandler(NgordnetDataset dataset) {
+        this(new LiveDataset(dataset));
+    }
+
+    /**
+     * 每个查询使用 LIVE 在查询开始时的那一代数据，数据热更新时正在进行的查询不受影响
+     * @param live 带版本的数据集引用
+     */
+    public HyponymsHandler(LiveDataset live) {
+        this.live = live;
+    }
+
+    private static NgordnetDataset loadDataset(String synsetsFile, String hyponymsFile,
+                                               String wordsFile, String countsFile) {
         if (synsetsFile == null || hyponymsFile == null ||
             wordsFile == null || countsFile == null) {
             throw new IllegalArgumentException("File paths cannot be null");
         }
-        wordnet = new WordNet(synsetsFile, hyponymsFile);
-        ngm = new NGramMap(wordsFile, countsFile);
+        return NgordnetDataset.load(wordsFile, countsFile, synsetsFile, hyponymsFile);
     }
 
+    /**
+     * 批量查询中共享的词集合的键：数据集、查询类型和输入词相同，词集合就相同，与年份和 k 无关。
+     * 数据集按引用比较，不同代的词编号不会混用。
+     */
+    private record WordSetKey(NgordnetDataset dataset, NgordnetQueryType type, List<String> words) { }
+
     @Override
     public String handle (NgordnetQuery query) {
+        return handle(query, null);
+    }
+
+    /** 同一批查询中，输入词和类型相同的查询只计算一次下位词/祖先集合。 */
+    @Override
+    public String handle(NgordnetQuery query, SharedResults shared) {
         // 从 query 中获取查询参数
         List<String> words = query.words();
         int k = query.k();
@@ -38,83 +71,61 @@ public class HyponymsHandler extends NgordnetQueryHandler {
             return "[]"; // 若没有输入词，返回空列表
         }
 
-        Set<String> resultSet;
-        // 根据查询类型选择不同的处理方式
-        if (query.ngordnetQueryType().equals(NgordnetQueryType.HYPONYMS)) {
-            resultSet = words.size() == 1 ?
-                    wordnet.getHyponyms(words.get(0)) :
-                    wordnet.getCommonHyponyms(words);
-        } else {  // ANCESTORS
-            resultSet = words.size() == 1 ?
-                    wordnet.getAncestors(words.get(0)) :
-                    wordnet.getCommonAncestors(words);
-        }
+        // 整个查询只读取一次当前数据
+        NgordnetDataset dataset = live.dataset();
+        WordDictionary dictionary = dataset.dictionary();
+        // 结果是共用词典中的词编号
+        int[] resultIds = shared == null
+                ? wordIds(dataset.wordNet(), query.ngordnetQueryType(), words)
+                : shared.computeIfAbsent(new WordSetKey(dataset, query.ngordnetQueryType(), List.copyOf(words)),
+                        () -> wordIds(dataset.wordNet(), query.ngordnetQueryType(), words));
 
 
         // k = 0
         if (k == 0) {
             // 原有的k=0处理逻辑
-            List<String> sortResults = new ArrayList<>(resultSet);
+            List<String> sortResults = new ArrayList<>(resultIds.length);
+            for (int id : resultIds) {
+                sortResults.add(dictionary.word(id));
+            }
             return formatResult(sortResults);
         }
 
         // k > 0 考虑词频
-        // 创建词-频率映射的列表
-        List<WordFreq> wordFreqs = new ArrayList<>();
-        for (String word : resultSet) {
-            double count = getWordCount(word, startYear, endYear);
+        if (k < 0 || resultIds.length == 0) {
+            return "[]";
+        }
+        // 用大小为 k 的堆流式地保留频率最高的词（频率降序，词字母升序），不用给全部候选词排序
+        TopK topK = new TopK(Math.min(k, resultIds.length));
+        for (int id : resultIds) {
+            double count = getWordCount(dataset.ngramMap(), id, startYear, endYear);
             if (count > 0) {  // 只添加出现次数大于0的词
-                wordFreqs.add(new WordFreq(word, count));
+                topK.offer(dictionary.word(id), count);
             }
         }
 
-        if (wordFreqs.isEmpty()) {
+        if (topK.size() == 0) {
             return "[]";  // 如果没有任何词在指定时间范围内出现，返回空列表
         }
 
-        // 按照频率降序，词字母升序排序
-        Collections.sort(wordFreqs);
-        // 取前 k 个词
-        List<String> result = new ArrayList<>();
-        for (int i = 0; i < Math.min(k, wordFreqs.size()); i++) {
-            result.add(wordFreqs.get(i).word);
-        }
-
-        return formatResult(result);
+        return formatResult(topK.sortedWords());
     }
 
-    /**
-     * 计算单词在指定时间范围内的总出现次数
-     */
-    private double getWordCount(String word, int startYear, int endYear) {
-        return ngm.countHistory(word, startYear, endYear)
-                .values()
-                .stream()
-                .mapToDouble(Double::doubleValue)
-                .sum();
+    /** 根据查询类型返回 WORDS 的下位词或祖先的词编号，调用方不能修改返回的数组。 */
+    private static int[] wordIds(WordNet wordnet, NgordnetQueryType type, List<String> words) {
+        // 根据查询类型选择不同的处理方式
+        if (type.equals(NgordnetQueryType.HYPONYMS)) {
+            return wordnet.getHyponymIds(words);
+        } else {  // ANCESTORS
+            return wordnet.getAncestorIds(words);
+        }
     }
 
     /**
-     * 辅助方法 WordFreq 来帮助排序
+     * 计算词编号为 ID 的词在指定时间范围内的总出现次数（按行号取前缀和，不做字符串哈希，不分配对象）
      */
-    private static class WordFreq implements Comparable<WordFreq> {
-        String word;
-        double frequency;
-
-        WordFreq(String word, double frequency) {
-            this.word = word;
-            this.frequency = frequency;
-        }
-
-        @Override
-        public int compareTo(WordFreq other) {
-            if (this.frequency != other.frequency) {
-                // 频率降序
-                return Double.compare(other.frequency, this.frequency);
-            }
-            // 频率相同时按字母升序
-            return this.word.compareTo(other.word);
-        }
+    private static double getWordCount(NGramMap ngm, int id, int startYear, int endYear) {
+        return ngm.totalCount(id, startYear, endYear);
     }
 
     /**
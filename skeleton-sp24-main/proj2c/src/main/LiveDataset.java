@@ -0,0 +1,73 @@
+package main;
+
+import java.lang.ref.Cleaner;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * 当前数据集的带版本引用，处理器每次查询都从这里读取数据。
+ *
+ * 新一代数据在后台建好后由 publish 原子地换上，版本号加一。一个查询开始时读取一次
+ * current()，之后只用这一代数据，所以正在进行的查询在旧数据上完成；旧的一代不再被任何
+ * 查询引用后由 GC 回收（包括快照的内存映射），回收时打印一行日志。
+ */
+public final class LiveDataset {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /** 一代数据及其版本号，版本号从 1 开始递增。 */
+    public record Generation(long version, NgordnetDataset dataset) { }
+
+    private final AtomicReference<Generation> current;
+    private final List<Consumer<Generation>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 以 DATASET 作为第 1 代数据
+     */
+    public LiveDataset(NgordnetDataset dataset) {
+        Generation first = new Generation(1, dataset);
+        current = new AtomicReference<>(first);
+        logRelease(first);
+    }
+
+    /** 返回当前这一代数据 */
+    public Generation current() {
+        return current.get();
+    }
+
+    /** 返回当前这一代的数据集 */
+    public NgordnetDataset dataset() {
+        return current.get().dataset();
+    }
+
+    /** 返回当前的版本号 */
+    public long version() {
+        return current.get().version();
+    }
+
+    /**
+     * 原子地换上新一代数据 DATASET，然后按注册顺序通知监听者（例如清空结果缓存）。
+     * 返回新的一代。
+     */
+    public Generation publish(NgordnetDataset dataset) {
+        Generation next = current.updateAndGet(old -> new Generation(old.version() + 1, dataset));
+        logRelease(next);
+        for (Consumer<Generation> listener : listeners) {
+            listener.accept(next);
+        }
+        return next;
+    }
+
+    /** 每次换上新一代数据后调用 LISTENER，在调用 publish 的线程上执行 */
+    public void onPublish(Consumer<Generation> listener) {
+        listeners.add(listener);
+    }
+
+    /** GENERATION 的数据集被回收时打印日志；清理动作不能引用数据集本身 */
+    private static void logRelease(Generation generation) {
+        long version = generation.version();
+        CLEANER.register(generation.dataset(),
+                () -> System.out.println("Released dataset generation " + version));
+    }
+}
@@ -1,29 +1,140 @@
 package main;
 
+import browser.CachingQueryHandler;
+import browser.MetricsHandler;
+import browser.NgordnetQueryHandler;
 import browser.NgordnetServer;
+import browser.QueryExecutor;
 import ngrams.NGramMap;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+
 public class Main {
+    /** Number of results each query handler keeps in its cache. */
+    private static final int CACHE_CAPACITY = 1024;
+    /** Queries admitted at once across all routes; more are answered with 503. */
+    private static final int MAX_IN_FLIGHT = 256;
+    /** Queries of one route that may wait for a CPU thread; more are answered with 503. */
+    private static final int MAX_QUEUED_PER_ROUTE = 64;
+    /** How long the data files must stay unchanged before a reload starts. */
+    private static final Duration RELOAD_QUIET_PERIOD = Duration.ofSeconds(2);
+
     static {
         LoggerFactory.getLogger(Main.class).info("\033[1;38mChanging text color to white");
     }
     public static void main(String[] args) {
-        NgordnetServer hns = new NgordnetServer();
+        NgordnetServer hns = new NgordnetServer(
+                QueryExecutor.forAvailableProcessors(MAX_IN_FLIGHT, MAX_QUEUED_PER_ROUTE));
         
 
         String wordFile = "./data/ngrams/top_14377_words.csv";
         String countFile = "./data/ngrams/total_counts.csv";
         String synsetFile = "./data/wordnet/synsets.txt";
         String hyponymFile = "./data/wordnet/hyponyms.txt";
+        String snapshotFile = "./data/ngrams/top_14377_words.snapshot";
+        String autocompleteFile = "./data/autocomplete.index";
 
-        NGramMap ngm = new NGramMap(wordFile, countFile);
+        NGramMap ngm = loadNGramMap(wordFile, countFile, snapshotFile);
+        System.out.println("Loaded n-gram data: " + ngm.loadStats());
+        // All handlers share one dataset, whose WordNet and n-grams use one word dictionary.
+        // Handlers read it through a versioned reference, so changed data files are
+        // loaded in the background and swapped in while the server keeps answering.
+        LiveDataset live = new LiveDataset(NgordnetDataset.of(ngm, synsetFile, hyponymFile));
 
         hns.startUp();
-        hns.register("history", new HistoryHandler(ngm));
-        hns.register("historytext", new HistoryTextHandler(ngm));
-        hns.register("hyponyms", new HyponymsHandler(synsetFile, hyponymFile, wordFile, countFile));
+        // HistoryHandler caches rendered charts itself
+        hns.register("history", new HistoryHandler(live));
+        // HistoryTextHandler streams its result, which a result cache would hold as one String
+        hns.register("historytext", new HistoryTextHandler(live));
+        CachingQueryHandler hyponyms = cached("hyponyms", new HyponymsHandler(live));
+        live.onPublish(generation -> hyponyms.clear());
+        hns.register("hyponyms", hyponyms);
+        // Suggestions for the words of all datasets, served from a memory-mapped index
+        AutocompleteIndex autocomplete = loadAutocompleteIndex(live.dataset(), autocompleteFile,
+                wordFile, countFile, synsetFile, hyponymFile);
+        hns.register("autocomplete", new AutocompleteHandler(live, autocomplete, Path.of(autocompleteFile)));
+        hns.register("metrics", new MetricsHandler(hns.metrics()));
+        hns.registerBatch("batch");
+        try {
+            new DatasetWatcher(live, wordFile, countFile, synsetFile, hyponymFile, RELOAD_QUIET_PERIOD);
+        } catch (IOException e) {
+            System.out.println("Not watching the data files for changes: " + e.getMessage());
+        }
 
         System.out.println("Finished server startup! Visit http://localhost:4567/ngordnet.html");
     }
+
+    /** Returns HANDLER behind a result cache called NAME. */
+    private static CachingQueryHandler cached(String name, NgordnetQueryHandler handler) {
+        return new CachingQueryHandler(name, handler, CACHE_CAPACITY);
+    }
+
+    /**
+     * Returns the autocomplete index of DATASET. Maps INDEXFILE when it is newer than
+     * every one of DATAFILES; otherwise builds the index and writes it to INDEXFILE.
+     */
+    private static AutocompleteIndex loadAutocompleteIndex(NgordnetDataset dataset, String indexFile,
+                                                           String... dataFiles) {
+        Path index = Path.of(indexFile);
+        try {
+            if (isNewerThanAll(index, dataFiles)) {
+                return AutocompleteIndex.read(index);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Ignoring autocomplete index " + indexFile + ": " + e.getMessage());
+        }
+
+        AutocompleteIndex built = AutocompleteIndex.build(dataset);
+        try {
+            built.write(index);
+        } catch (UncheckedIOException e) {
+            System.out.println(e.getMessage());
+        }
+        return built;
+    }
+
+    /** Returns whether FILE exists and was modified after every one of OTHERS. */
+    private static boolean isNewerThanAll(Path file, String... others) throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        FileTime time = Files.getLastModifiedTime(file);
+        for (String other : others) {
+            if (time.compareTo(Files.getLastModifiedTime(Path.of(other))) <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the NGramMap for WORDFILE and COUNTFILE. Serves it from SNAPSHOTFILE when
+     * that snapshot is newer than both files; otherwise parses the files and writes a
+     * fresh snapshot so that the next startup can skip parsing.
+     */
+    private static NGramMap loadNGramMap(String wordFile, String countFile, String snapshotFile) {
+        Path snapshot = Path.of(snapshotFile);
+        try {
+            if (isNewerThanAll(snapshot, wordFile, countFile)) {
+                return NGramMap.fromSnapshot(snapshot);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Ignoring snapshot " + snapshotFile + ": " + e.getMessage());
+        }
+
+        NGramMap ngm = new NGramMap(wordFile, countFile);
+        try {
+            ngm.writeSnapshot(snapshot);
+        } catch (UncheckedIOException | IllegalArgumentException e) {
+            // Without a snapshot the next startup parses the files again
+            System.out.println(e.getMessage());
+        }
+        return ngm;
+    }
 }
@@ -0,0 +1,60 @@
+package main;
+
+import ngrams.NGramMap;
+import ngrams.WordDictionary;
+
+/**
+ * 一份完整的数据集：n-gram 数据和 WordNet 共用同一个词典，所有处理器共用同一份数据。
+ *
+ * 词典先按行号加入 n-gram 的全部词，所以一个词的词编号就是它在 n-gram 列存储中的行号；
+ * 只在 WordNet 中出现的词排在后面。下位词集合可以直接用词编号去取词频，不需要再按字符串哈希。
+ */
+public final class NgordnetDataset {
+    private final WordDictionary dictionary;
+    private final NGramMap ngramMap;
+    private final WordNet wordNet;
+
+    private NgordnetDataset(WordDictionary dictionary, NGramMap ngramMap, WordNet wordNet) {
+        this.dictionary = dictionary;
+        this.ngramMap = ngramMap;
+        this.wordNet = wordNet;
+    }
+
+    /**
+     * 用已经加载好的 NGM 和 WordNet 文件建立数据集
+     * @param ngm n-gram 数据，可以来自文件或快照
+     * @param synsetsFile 同义词集文件路径
+     * @param hyponymsFile 下位词关系文件路径
+     */
+    public static NgordnetDataset of(NGramMap ngm, String synsetsFile, String hyponymsFile) {
+        WordDictionary dictionary = new WordDictionary();
+        NGramMap keyed = ngm.withDictionary(dictionary);
+        WordNet wordNet = new WordNet(synsetsFile, hyponymsFile, dictionary,
+                WordNet.DEFAULT_CLOSURE_BUDGET, null);
+        dictionary.freeze();
+        return new NgordnetDataset(dictionary, keyed, wordNet);
+    }
+
+    /**
+     * 从四个数据文件建立数据集
+     */
+    public static NgordnetDataset load(String wordsFile, String countsFile,
+                                       String synsetsFile, String hyponymsFile) {
+        return of(new NGramMap(wordsFile, countsFile), synsetsFile, hyponymsFile);
+    }
+
+    /** 返回共用的词典 */
+    public WordDictionary dictionary() {
+        return dictionary;
+    }
+
+    /** 返回以共用词典为键的 NGramMap */
+    public NGramMap ngramMap() {
+        return ngramMap;
+    }
+
+    /** 返回以共用词典为键的 WordNet */
+    public WordNet wordNet() {
+        return wordNet;
+    }
+}
@@ -0,0 +1,102 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 流式 top-k：用固定大小的小根堆保留频率最高的 k 个词，O(n log k)。
+ *
+ * 排名规则和原来排序的规则一样：频率降序，频率相同时词按字母升序。堆顶是当前 k 个里
+ * 排名最差的那个，新词只有排在它前面才会替换它。堆用两个平行数组存 (词, 频率)，
+ * 加入候选词时不创建任何对象。
+ */
+public class TopK {
+    private final String[] words;
+    private final double[] counts;
+    private int size;
+
+    /**
+     * @param k 最多保留的词数，必须为正
+     */
+    public TopK(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        words = new String[k];
+        counts = new double[k];
+    }
+
+    /** 加入一个候选词 */
+    public void offer(String word, double count) {
+        if (size < words.length) {
+            words[size] = word;
+            counts[size] = count;
+            siftUp(size++);
+        } else if (ranksBefore(word, count, words[0], counts[0])) {
+            words[0] = word;
+            counts[0] = count;
+            siftDown(0);
+        }
+    }
+
+    /** 当前保留的词数 */
+    public int size() {
+        return size;
+    }
+
+    /** 返回保留下来的词，按字母升序 */
+    public List<String> sortedWords() {
+        String[] result = Arrays.copyOf(words, size);
+        Arrays.sort(result);
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    /** (a, aCount) 是否排在 (b, bCount) 前面：频率降序，频率相同时按字母升序 */
+    private static boolean ranksBefore(String a, double aCount, String b, double bCount) {
+        if (aCount != bCount) {
+            return aCount > bCount;
+        }
+        return a.compareTo(b) < 0;
+    }
+
+    // 小根堆：父节点排名不比子节点靠前
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!ranksBefore(words[parent], counts[parent], words[i], counts[i])) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && ranksBefore(words[worst], counts[worst], words[left], counts[left])) {
+                worst = left;
+            }
+            if (right < size && ranksBefore(words[worst], counts[worst], words[right], counts[right])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int i, int j) {
+        String word = words[i];
+        words[i] = words[j];
+        words[j] = word;
+        double count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+    }
+}
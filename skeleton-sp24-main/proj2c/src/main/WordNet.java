@@ -1,33 +1,128 @@
 package main;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import edu.princeton.cs.algs4.In;
+import ngrams.WordDictionary;
 
 public class WordNet {
-    // 同义词集映射
-    private Map<Integer, Set<String>> idToWords; // ID -> 词集
-    private Map<String, Set<Integer>> wordToIds; // 词 -> ID集
+    // 闭包索引默认的内存预算，完整的 WordNet 只需要其中一小部分
+    public static final long DEFAULT_CLOSURE_BUDGET = 64L << 20;
+
+    // 词典：词 <-> 词编号，可以和 NGramMap 共用，同一个词在整个进程里只有一个编号和一个 String
+    private final WordDictionary dictionary;
+    // 同义词集映射，都用词编号表示
+    private int[][] synsetWords; // 同义词集ID -> 它包含的词编号，按 ID 索引
+    private int[][] wordSynsets; // 词编号 -> 同义词集ID，不在 WordNet 中的词为 null
     // 下位词关系图
     private Graph graph;
+    // 可复用的访问标记，查询时取出、用完放回，多个请求线程可以同时查询
+    private final Queue<GraphTraversal> traversalPool = new ConcurrentLinkedQueue<>();
+    // 传递闭包索引，没有索引时为 null，查询退回到 DFS
+    private ClosureIndex closure;
 
     /**
-     * WordNet 构造函数
+     * WordNet 构造函数，使用默认内存预算建立闭包索引
      * @param synsetsFile 同义词集文件路径
      * @param hyponymsFile 下位词关系文件路径
      */
     public WordNet(String synsetsFile, String hyponymsFile) {
-        idToWords = new HashMap<>();
-        wordToIds = new HashMap<>();
-        graph = new Graph();
+        this(synsetsFile, hyponymsFile, DEFAULT_CLOSURE_BUDGET, null);
+    }
+
+    /**
+     * WordNet 构造函数
+     * @param synsetsFile 同义词集文件路径
+     * @param hyponymsFile 下位词关系文件路径
+     * @param closureBudgetBytes 闭包索引最多占用的字节数，不大于 0 表示不建索引
+     */
+    public WordNet(String synsetsFile, String hyponymsFile, long closureBudgetBytes) {
+        this(synsetsFile, hyponymsFile, closureBudgetBytes, null);
+    }
 
+    /**
+     * WordNet 构造函数，使用自己的词典
+     * @param synsetsFile 同义词集文件路径
+     * @param hyponymsFile 下位词关系文件路径
+     * @param closureBudgetBytes 闭包索引最多占用的字节数，不大于 0 表示不建索引
+     * @param closureFile 闭包索引快照文件路径，可以为 null；和当前图匹配时直接读取，否则重建并写入
+     */
+    public WordNet(String synsetsFile, String hyponymsFile, long closureBudgetBytes, String closureFile) {
+        this(synsetsFile, hyponymsFile, new WordDictionary(), closureBudgetBytes, closureFile);
+        dictionary.freeze();
+    }
+
+    /**
+     * WordNet 构造函数，把词加进共用的词典 DICTIONARY（不能已经冻结）。
+     * 词典由调用方在所有数据加载完后冻结。
+     * @param synsetsFile 同义词集文件路径
+     * @param hyponymsFile 下位词关系文件路径
+     * @param dictionary 共用的词典
+     * @param closureBudgetBytes 闭包索引最多占用的字节数，不大于 0 表示不建索引
+     * @param closureFile 闭包索引快照文件路径，可以为 null
+     */
+    public WordNet(String synsetsFile, String hyponymsFile, WordDictionary dictionary,
+                   long closureBudgetBytes, String closureFile) {
         if (synsetsFile == null || hyponymsFile == null) {
             throw new IllegalArgumentException("File paths cannot be null");
         }
+        this.dictionary = dictionary;
+        synsetWords = new int[16][];
+        graph = new Graph();
 
         // 解析文件
         parseSynsets(synsetsFile); // 先处理synsets，建立基础映射关系
         parseHyponyms(hyponymsFile); // 再处理hyponyms，建立词之间的关系
+        graph.freeze(); // 建图完成，压缩成 CSR
+        loadClosureIndex(closureBudgetBytes, closureFile);
+    }
+
+    /**
+     * 读取或建立闭包索引；预算不够或图中有环时不使用索引
+     */
+    private void loadClosureIndex(long budgetBytes, String closureFile) {
+        if (budgetBytes <= 0) {
+            return;
+        }
+        Path file = closureFile == null ? null : Path.of(closureFile);
+        if (file != null && Files.exists(file)) {
+            try {
+                ClosureIndex read = ClosureIndex.read(file, graph);
+                if (read != null && read.bytes() <= budgetBytes) {
+                    closure = read;
+                }
+            } catch (IOException e) {
+                System.out.println("Ignoring closure index " + closureFile + ": " + e.getMessage());
+            }
+        }
+        if (closure == null) {
+            closure = ClosureIndex.build(graph, budgetBytes);
+            if (closure != null && file != null) {
+                try {
+                    closure.write(file);
+                } catch (IOException e) {
+                    System.out.println("Could not write closure index " + closureFile + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 是否建立了闭包索引
+     */
+    public boolean hasClosureIndex() {
+        return closure != null;
+    }
+
+    /**
+     * 返回这个 WordNet 使用的词典
+     */
+    public WordDictionary dictionary() {
+        return dictionary;
     }
 
     /**
@@ -41,6 +136,8 @@ public class WordNet {
             throw new IllegalArgumentException("Could not read file: " + synsetsFile);
         }
 
+        // 词编号 -> 同义词集ID，先用可增长的数组收集
+        int[][] synsetsOf = new int[16][];
         // 2. 逐行读取文件
         while (in.hasNextLine()) {
             String line = in.readLine();
@@ -50,21 +147,56 @@ public class WordNet {
             int id = Integer.parseInt(parts[0]); // 解析ID，将ID字符串转换为整数
             String[] synonyms = parts[1].split(" "); // 获取同义词集字符串并分割成单个词
 
-            // 4. 循环处理同义词
-            Set<String> synonymSet = new HashSet<>();
+            // 4. 循环处理同义词，同一个词在一个同义词集里只记一次
+            int[] wordIds = new int[synonyms.length];
+            int count = 0;
             for (String word: synonyms) {
-                synonymSet.add(word);
-                // 5. 更新 wordToIds 映射
-                if (!wordToIds.containsKey(word)) {
-                    wordToIds.put(word, new HashSet<>());  // 如果这个词第一次出现，为它创建一个新的ID集合
+                int wordId = dictionary.add(word);
+                if (!contains(wordIds, count, wordId)) {
+                    wordIds[count++] = wordId;
+                }
+                // 5. 更新词编号 -> 同义词集ID 的映射
+                if (wordId >= synsetsOf.length) {
+                    synsetsOf = Arrays.copyOf(synsetsOf, Math.max(wordId + 1, synsetsOf.length * 2));
                 }
-                wordToIds.get(word).add(id); // 将当前ID添加到这个词的ID集合中
+                synsetsOf[wordId] = appendId(synsetsOf[wordId], id);
             }
-            idToWords.put(id, synonymSet); // 更新 idToWords
+            // 更新 synsetWords
+            if (id >= synsetWords.length) {
+                synsetWords = Arrays.copyOf(synsetWords, Math.max(id + 1, synsetWords.length * 2));
+            }
+            synsetWords[id] = Arrays.copyOf(wordIds, count);
             graph.addNode(id); // 将ID添加到图中作为节点
         }
+        wordSynsets = Arrays.copyOf(synsetsOf, dictionary.size());
+    }
+
+    /**
+     * IDS 的前 COUNT 个元素中是否有 ID
+     */
+    private static boolean contains(int[] ids, int count, int id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                return true;
+            }
+        }
+        return false;
     }
 
+    /**
+     * 把 ID 追加到 IDS（可以为 null），已有的ID不重复添加
+     */
+    private static int[] appendId(int[] ids, int id) {
+        if (ids == null) {
+            return new int[] {id};
+        }
+        if (contains(ids, ids.length, id)) {
+            return ids;
+        }
+        int[] result = Arrays.copyOf(ids, ids.length + 1);
+        result[ids.length] = id;
+        return result;
+    }
 
     /**
      * 处理下位词关系 parseHyponyms，解析文件辅助方法
@@ -94,52 +226,23 @@ public class WordNet {
     }
 
     /**
-     * 下位词查询方法，返回一个词的所有下位词
-     * @param word 要查询的词
-     * @return 包含所有下位词的集合
+     * 返回 WORD 所在的全部同义词集ID；WORD 不在 WordNet 中时抛出 IllegalArgumentException
      */
-    public Set<String> getHyponyms(String word) {
-        if (word == null || !wordToIds.containsKey(word)) {
-            throw new IllegalArgumentException("Word does not exist in WordNet");
+    private int[] synsetsOf(String word) {
+        int wordId = word == null ? WordDictionary.NOT_FOUND : dictionary.id(word);
+        if (wordId < 0 || wordId >= wordSynsets.length || wordSynsets[wordId] == null) {
+            throw new IllegalArgumentException("Word '" + word + "' does not exist in WordNet");
         }
-        // 获取这个词对应的所有同义词集ID
-        Set<Integer> startIds = wordToIds.get(word);
-        // 从这些ID出发，找到所有可达节点
-        Set<Integer> reachableIds = new HashSet<>();
-        reachableIds.addAll(startIds);
-
-        Set<Integer> currentVisited = new HashSet<>();
-        for (int startId : startIds) {
-            currentVisited.clear();  // 每次DFS前清空访问记录
-            currentVisited.add(startId);
-            dfs(startId, currentVisited);
-            reachableIds.addAll(currentVisited);
-        }
-
-        // 将可达节点对应的词收集起来
-        Set<String> hyponyms = new HashSet<>();
-        for (int id : reachableIds) {
-            // 将这个ID对应的所有词加入结果集
-            hyponyms.addAll(idToWords.get(id));
-        }
-
-        return hyponyms;
+        return wordSynsets[wordId];
     }
 
     /**
-     * 深度优先搜索遍历图，辅助方法
-     * @param v 当前访问的节点ID
-     * @param visited 存储已访问节点的集合
+     * 下位词查询方法，返回一个词的所有下位词
+     * @param word 要查询的词
+     * @return 包含所有下位词的集合
      */
-    private void dfs(int v, Set<Integer> visited) {
-        // 访问所有邻居节点
-        for (int neighbor : graph.getNeighbors(v)) {
-            // 如果邻居节点未被访问过，则递归访问它
-            if (!visited.contains(neighbor)) {
-                visited.add(neighbor);
-                dfs(neighbor, visited);
-            }
-        }
+    public Set<String> getHyponyms(String word) {
+        return toWords(wordIds(word, GraphTraversal.Direction.HYPONYMS));
     }
 
     /**
@@ -148,27 +251,16 @@ public class WordNet {
      * @return 包含所有共同下位词的集合
      */
     public Set<String> getCommonHyponyms(List<String> words) {
-        if (words == null || words.isEmpty()) {
-            throw new IllegalArgumentException("Words list cannot be null");
-        }
-        for (String word : words) {
-            if (!wordToIds.containsKey(word)) {
-                throw new IllegalArgumentException("Word '" + "' dose not exist in WordNet");
-            }
-        }
-
-        // 获取第一个词的下位词作为初始结果集
-        Set<String> result = getHyponyms(words.get(0));
-
-        // 遍历剩余的词，求交集
-        for (int i = 1; i < words.size(); i++) {
-            Set<String> currentHyponyms = getHyponyms(words.get(i));
-            result.retainAll(currentHyponyms);
-        }
-
-        return result;
+        return toWords(commonWordIds(words, GraphTraversal.Direction.HYPONYMS));
     }
 
+    /**
+     * 返回 WORDS 的共同下位词（只有一个词时就是它的下位词）的词编号，按编号升序。
+     * 和同一个词典上的 NGramMap 连接时不需要再对词做哈希。
+     */
+    public int[] getHyponymIds(List<String> words) {
+        return commonWordIds(words, GraphTraversal.Direction.HYPONYMS);
+    }
 
     /**
      * 获取单个词的所有祖先节点
@@ -176,61 +268,188 @@ public class WordNet {
      * @return 包含所有祖先词的集合
      */
     public Set<String> getAncestors(String word) {
-        if (word == null || !wordToIds.containsKey(word)) {
-            throw new IllegalArgumentException("Word does not exist in WordNet");
-        }
+        return toWords(wordIds(word, GraphTraversal.Direction.HYPERNYMS));
+    }
+
+    /**
+     * 获取多个词的共同祖先
+     * @param words 要查询的词列表
+     * @return 包含所有共同祖先的集合
+     */
+    public Set<String> getCommonAncestors(List<String> words) {
+        return toWords(commonWordIds(words, GraphTraversal.Direction.HYPERNYMS));
+    }
 
-        // 获取这个词对应的所有同义词集ID
-        Set<Integer> startIds = wordToIds.get(word);
+    /**
+     * 返回 WORDS 的共同祖先的词编号，按编号升序
+     */
+    public int[] getAncestorIds(List<String> words) {
+        return commonWordIds(words, GraphTraversal.Direction.HYPERNYMS);
+    }
 
-        // 从这些ID出发，找到所有可达的祖先节点
-        Set<Integer> ancestorIds = new HashSet<>();
-        for (int startId : startIds) {
-            dfsAncestors(startId, ancestorIds);
+    /**
+     * 求多个词沿 DIRECTION 可达的词的交集：每个词的结果是升序的词编号数组，依次归并求交，
+     * 代价只和各个词的结果大小有关，和词典大小无关。
+     * 交集按词而不是按同义词集求，和逐个求集合再 retainAll 的结果完全一样。
+     */
+    private int[] commonWordIds(List<String> words, GraphTraversal.Direction direction) {
+        if (words == null || words.isEmpty()) {
+            throw new IllegalArgumentException("Words list cannot be null or empty");
         }
-
-        // 将可达节点对应的词收集起来
-        Set<String> ancestors = new HashSet<>();
-        for (int id : ancestorIds) {
-            ancestors.addAll(idToWords.get(id));
+        for (String word : words) {
+            synsetsOf(word); // 先检查所有词都存在
         }
+        int[] common = wordIds(words.get(0), direction);
+        for (int i = 1; i < words.size() && common.length > 0; i++) {
+            common = intersect(common, wordIds(words.get(i), direction));
+        }
+        return common;
+    }
 
-        return ancestors;
+    /**
+     * 返回从 WORD 的所有同义词集出发沿 DIRECTION 可达（包括起点）的全部词编号，升序且不重复。
+     * 向下有闭包索引时直接读出后代，否则迭代式 DFS。
+     */
+    private int[] wordIds(String word, GraphTraversal.Direction direction) {
+        int[] startIds = synsetsOf(word);
+        IdCollector ids = new IdCollector();
+        if (closure != null && direction == GraphTraversal.Direction.HYPONYMS) {
+            for (int startId : startIds) {
+                closure.forEachDescendant(startId, id -> ids.addAll(synsetWords[id]));
+            }
+            return ids.sortedDistinct();
+        }
+        GraphTraversal traversal = acquireTraversal();
+        try {
+            // 所有起点共用一轮访问标记，结果就是它们的并集
+            for (int startId : startIds) {
+                traversal.depthFirst(startId, direction, id -> {
+                    ids.addAll(synsetWords[id]);
+                    return true;
+                });
+            }
+        } finally {
+            traversalPool.offer(traversal);
+        }
+        return ids.sortedDistinct();
     }
+
     /**
-     * 向上遍历图查找祖先节点的辅助方法
+     * 两个升序不重复的词编号数组的交集，仍然升序
      */
-    private void dfsAncestors(int v, Set<Integer> visited) {
-        visited.add(v);
-        for (int parent : graph.getParents(v)) {
-            if (!visited.contains(parent)) {
-                dfsAncestors(parent, visited);
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
             }
         }
+        return Arrays.copyOf(result, count);
     }
 
+    /**
+     * 词编号 -> 词集合，集合中的 String 都是词典里的同一个实例
+     */
+    private Set<String> toWords(int[] ids) {
+        Set<String> words = new HashSet<>(ids.length * 2);
+        for (int id : ids) {
+            words.add(dictionary.word(id));
+        }
+        return words;
+    }
 
     /**
-     * 获取多个词的共同祖先
-     * @param words 要查询的词列表
-     * @return 包含所有共同祖先的集合
+     * 收集一次查询可达的词编号，大小只和结果有关
      */
-    public Set<String> getCommonAncestors(List<String> words) {
-        if (words == null || words.isEmpty()) {
-            throw new IllegalArgumentException("Words list cannot be null or empty");
+    private static final class IdCollector {
+        private int[] ids = new int[16];
+        private int size;
+
+        void addAll(int[] wordIds) {
+            if (size + wordIds.length > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(size + wordIds.length, ids.length * 2));
+            }
+            System.arraycopy(wordIds, 0, ids, size, wordIds.length);
+            size += wordIds.length;
         }
 
-        // 获取第一个词的祖先作为初始结果集
-        Set<String> result = getAncestors(words.get(0));
+        /** 排序去重后的词编号；一个词可以属于多个同义词集，所以会有重复 */
+        int[] sortedDistinct() {
+            Arrays.sort(ids, 0, size);
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (count == 0 || ids[i] != ids[count - 1]) {
+                    ids[count++] = ids[i];
+                }
+            }
+            return Arrays.copyOf(ids, count);
+        }
+    }
 
-        // 遍历剩余的词，求交集
-        for (int i = 1; i < words.size(); i++) {
-            Set<String> currentAncestors = getAncestors(words.get(i));
-            result.retainAll(currentAncestors);  // 取交集
+    /**
+     * 从池中取出一个遍历器并开始新的一轮访问
+     */
+    private GraphTraversal acquireTraversal() {
+        GraphTraversal traversal = traversalPool.poll();
+        if (traversal == null) {
+            traversal = new GraphTraversal(graph);
         }
+        traversal.begin();
+        return traversal;
+    }
 
-        return result;
+    /**
+     * 判断 HYPONYM 是否是 WORD 的下位词（一个词也算是它自己的下位词）。
+     * 有闭包索引时只需检查两个词的同义词集两两之间的包含关系。
+     */
+    public boolean isHyponym(String hyponym, String word) {
+        int[] hyponymIds = synsetsOf(hyponym);
+        int[] wordIds = synsetsOf(word);
+        if (closure == null) {
+            return isHyponymByDfs(hyponymIds, wordIds);
+        }
+        for (int id : wordIds) {
+            for (int hyponymId : hyponymIds) {
+                if (closure.contains(id, hyponymId)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
 
+    /**
+     * 没有闭包索引时，从 STARTIDS 向下 DFS，遇到 TARGETIDS 中任意一个就提前停止
+     */
+    private boolean isHyponymByDfs(int[] targetIds, int[] startIds) {
+        GraphTraversal traversal = acquireTraversal();
+        try {
+            for (int startId : startIds) {
+                boolean finished = traversal.depthFirst(startId, GraphTraversal.Direction.HYPONYMS, id -> {
+                    for (int targetId : targetIds) {
+                        if (id == targetId) {
+                            return false;
+                        }
+                    }
+                    return true;
+                });
+                if (!finished) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            traversalPool.offer(traversal);
+        }
+    }
 }
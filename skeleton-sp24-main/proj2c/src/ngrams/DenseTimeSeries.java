@@ -0,0 +1,315 @@
+package ngrams;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A year-indexed counterpart of {@link TimeSeries} for arithmetic on many series.
+ *
+ * Values are stored in a double[] indexed by year - MIN_YEAR, and which years are
+ * present is tracked in a bitmap. Absent years always hold 0.0, so adding two
+ * series is a plain element-wise loop over both arrays, run by the
+ * {@link SeriesKernels} chosen at startup. The in-place kernels follow the
+ * semantics of TimeSeries.plus and TimeSeries.dividedBy exactly, but they modify
+ * this series instead of creating a new one.
+ *
+ * Only years between MIN_YEAR and MAX_YEAR can be stored.
+ */
+public final class DenseTimeSeries {
+    /** Number of years between MIN_YEAR and MAX_YEAR, inclusive. */
+    static final int YEAR_SPAN = TimeSeries.MAX_YEAR - TimeSeries.MIN_YEAR + 1;
+
+    private final double[] values;
+    private final long[] present;
+
+    /** Constructs a new empty DenseTimeSeries. */
+    public DenseTimeSeries() {
+        values = new double[YEAR_SPAN];
+        present = new long[(YEAR_SPAN + 63) >>> 6];
+    }
+
+    /** Constructs a DenseTimeSeries with the same data as TS. */
+    public DenseTimeSeries(TimeSeries ts) {
+        this();
+        for (Map.Entry<Integer, Double> entry : ts.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /** Returns the index of YEAR, throwing an IllegalArgumentException if it is out of range. */
+    private static int index(int year) {
+        if (year < TimeSeries.MIN_YEAR || year > TimeSeries.MAX_YEAR) {
+            throw new IllegalArgumentException("Year out of range: " + year);
+        }
+        return year - TimeSeries.MIN_YEAR;
+    }
+
+    /** Sets the value of YEAR to VALUE. */
+    public void put(int year, double value) {
+        int i = index(year);
+        values[i] = value;
+        present[i >>> 6] |= 1L << i;
+    }
+
+    /** Adds VALUE to the value of YEAR, treating an absent year as 0. */
+    public void add(int year, double value) {
+        int i = index(year);
+        values[i] += value;
+        present[i >>> 6] |= 1L << i;
+    }
+
+    /** Returns whether this series has a value for YEAR. */
+    public boolean containsYear(int year) {
+        if (year < TimeSeries.MIN_YEAR || year > TimeSeries.MAX_YEAR) {
+            return false;
+        }
+        int i = year - TimeSeries.MIN_YEAR;
+        return (present[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /** Returns the value of YEAR, or 0.0 if this series has none. */
+    public double get(int year) {
+        return containsYear(year) ? values[year - TimeSeries.MIN_YEAR] : 0.0;
+    }
+
+    /** Returns the number of years in this series. */
+    public int size() {
+        int size = 0;
+        for (long bits : present) {
+            size += Long.bitCount(bits);
+        }
+        return size;
+    }
+
+    /** Returns whether this series has no years. */
+    public boolean isEmpty() {
+        for (long bits : present) {
+            if (bits != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the first year from FROMYEAR on that this series has a value for, or
+     * -1 if there is none. Iterating with nextYear(year + 1) visits the years in
+     * order without boxing them.
+     */
+    public int nextYear(int fromYear) {
+        int i = Math.max(fromYear, TimeSeries.MIN_YEAR) - TimeSeries.MIN_YEAR;
+        if (i >= YEAR_SPAN) {
+            return -1;
+        }
+        int w = i >>> 6;
+        long bits = present[w] & (-1L << i);
+        while (bits == 0) {
+            w += 1;
+            if (w == present.length) {
+                return -1;
+            }
+            bits = present[w];
+        }
+        return TimeSeries.MIN_YEAR + (w << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /** Removes every year from this series. */
+    public void clear() {
+        Arrays.fill(values, 0.0);
+        Arrays.fill(present, 0L);
+    }
+
+    /**
+     * Adds TS to this series year by year, in place. A year present in only one of the
+     * series keeps that series' value, as in {@link TimeSeries#plus(TimeSeries)}.
+     * Returns this series.
+     */
+    public DenseTimeSeries plusInPlace(DenseTimeSeries ts) {
+        SeriesKernels.get().add(values, ts.values, 0, YEAR_SPAN);
+        for (int w = 0; w < present.length; w += 1) {
+            present[w] |= ts.present[w];
+        }
+        return this;
+    }
+
+    /**
+     * Divides the value of each year of this series by the value of the same year in
+     * TS, in place. Throws an IllegalArgumentException, leaving this series unchanged,
+     * if TS is missing a year that exists in this series; years that only TS has are
+     * ignored, as in {@link TimeSeries#dividedBy(TimeSeries)}. Returns this series.
+     */
+    public DenseTimeSeries divideInPlace(DenseTimeSeries ts) {
+        for (int w = 0; w < present.length; w += 1) {
+            if ((present[w] & ~ts.present[w]) != 0) {
+                throw new IllegalArgumentException();
+            }
+        }
+        SeriesKernels.get().divide(values, ts.values, present, 0, YEAR_SPAN);
+        return this;
+    }
+
+    /**
+     * Divides the value of each year of this series by the sum of all its values, in
+     * place, so that they add up to 1. A series whose values add up to 0 is left
+     * unchanged. Returns this series.
+     */
+    public DenseTimeSeries normalizeInPlace() {
+        SeriesKernels kernels = SeriesKernels.get();
+        double sum = kernels.sum(values, 0, YEAR_SPAN);
+        if (sum != 0) {
+            kernels.divide(values, sum, 0, YEAR_SPAN);
+        }
+        return this;
+    }
+
+    /**
+     * Returns a new series with the same years as this one, where the value of each
+     * year is the mean of the values this series has in the WINDOW years ending with
+     * it. Years without a value inside the window do not count towards the mean.
+     */
+    public DenseTimeSeries movingAverage(int window) {
+        return movingAverageInto(window, new DenseTimeSeries());
+    }
+
+    /**
+     * Puts the same data into TARGET as movingAverage(WINDOW) returns, replacing what
+     * it held, and returns TARGET. TARGET must not be this series.
+     */
+    public DenseTimeSeries movingAverageInto(int window, DenseTimeSeries target) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive: " + window);
+        }
+        if (target == this) {
+            throw new IllegalArgumentException("Target must not be this series");
+        }
+        SeriesKernels.get().movingAverage(values, present, window, target.values, 0, YEAR_SPAN);
+        System.arraycopy(present, 0, target.present, 0, present.length);
+        return target;
+    }
+
+    /**
+     * Smooths this series exponentially with the factor ALPHA, in place, as in
+     * {@link TimeSeries#exponentialSmoothing(double)}. Returns this series.
+     */
+    public DenseTimeSeries exponentialSmoothingInPlace(double alpha) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("Smoothing factor must be in (0, 1]: " + alpha);
+        }
+        boolean first = true;
+        double smoothed = 0;
+        for (int w = 0; w < present.length; w += 1) {
+            long bits = present[w];
+            while (bits != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                smoothed = first ? values[i] : alpha * values[i] + (1 - alpha) * smoothed;
+                first = false;
+                values[i] = smoothed;
+                bits &= bits - 1;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Replaces this series by its year-over-year change, in place, as in
+     * {@link TimeSeries#yearOverYearDelta()}: years whose previous year has no value
+     * are removed. Returns this series.
+     */
+    public DenseTimeSeries yearOverYearDeltaInPlace() {
+        // Walks down, so that the value of the previous year is still the original one
+        for (int i = YEAR_SPAN - 1; i >= 0; i -= 1) {
+            if ((present[i >>> 6] & (1L << i)) == 0) {
+                continue;
+            }
+            if (i > 0 && (present[(i - 1) >>> 6] & (1L << (i - 1))) != 0) {
+                values[i] -= values[i - 1];
+            } else {
+                values[i] = 0.0;
+                present[i >>> 6] &= ~(1L << i);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the year with the largest value, the earliest one if several have it, or
+     * -1 if this series has no years. NaN values are never the largest.
+     */
+    public int argmaxYear() {
+        int best = -1;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int w = 0; w < present.length; w += 1) {
+            long bits = present[w];
+            while (bits != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                if (values[i] > max || (best == -1 && values[i] == max)) {
+                    best = TimeSeries.MIN_YEAR + i;
+                    max = values[i];
+                }
+                bits &= bits - 1;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Replaces each value of this series by its z-score, in place, as in
+     * {@link TimeSeries#zScores()}. Returns this series.
+     */
+    public DenseTimeSeries zScoresInPlace() {
+        long n = 0;
+        double mean = 0;
+        double squares = 0;
+        for (int w = 0; w < present.length; w += 1) {
+            long bits = present[w];
+            while (bits != 0) {
+                double value = values[(w << 6) + Long.numberOfTrailingZeros(bits)];
+                n += 1;
+                double delta = value - mean;
+                mean += delta / n;
+                squares += delta * (value - mean);
+                bits &= bits - 1;
+            }
+        }
+        double deviation = n == 0 ? 0 : Math.sqrt(squares / n);
+        for (int w = 0; w < present.length; w += 1) {
+            long bits = present[w];
+            while (bits != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                values[i] = deviation == 0 ? 0.0 : (values[i] - mean) / deviation;
+                bits &= bits - 1;
+            }
+        }
+        return this;
+    }
+
+    /** Adds VALUE to the entry at INDEX (year - MIN_YEAR), without a range check. */
+    void addAt(int index, double value) {
+        values[index] += value;
+        present[index >>> 6] |= 1L << index;
+    }
+
+    /** Returns the values of this series, indexed by year - MIN_YEAR, for the kernels. */
+    double[] values() {
+        return values;
+    }
+
+    /** Returns the bitmap of the years of this series, for the kernels. */
+    long[] present() {
+        return present;
+    }
+
+    /** Returns a TimeSeries with the same data as this series. */
+    public TimeSeries toTimeSeries() {
+        TimeSeries result = new TimeSeries();
+        for (int w = 0; w < present.length; w += 1) {
+            long bits = present[w];
+            while (bits != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                result.put(TimeSeries.MIN_YEAR + i, values[i]);
+                bits &= bits - 1;
+            }
+        }
+        return result;
+    }
+}
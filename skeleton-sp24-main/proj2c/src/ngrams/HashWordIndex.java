@@ -0,0 +1,31 @@
+package ngrams;
+
+import java.util.HashMap;
+
+/** A WordIndex kept on the heap as a HashMap plus an id -> word array. */
+class HashWordIndex implements WordIndex {
+    private final HashMap<String, Integer> ids;
+    private final String[] words;
+
+    /** Creates an index where WORDS[i] has id i and IDS maps each word back to its id. */
+    HashWordIndex(HashMap<String, Integer> ids, String[] words) {
+        this.ids = ids;
+        this.words = words;
+    }
+
+    @Override
+    public int id(String word) {
+        Integer id = ids.get(word);
+        return id == null ? NOT_FOUND : id;
+    }
+
+    @Override
+    public String word(int id) {
+        return words[id];
+    }
+
+    @Override
+    public int size() {
+        return words.length;
+    }
+}
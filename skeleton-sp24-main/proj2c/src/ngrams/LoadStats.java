@@ -0,0 +1,29 @@
+package ngrams;
+
+/**
+ * Throughput of one file load: how many BYTES and LINES were read and how
+ * long it took in NANOS.
+ */
+public record LoadStats(long bytes, long lines, long nanos) {
+
+    /** Returns the load throughput in megabytes (10^6 bytes) per second. */
+    public double megabytesPerSecond() {
+        return nanos == 0 ? 0 : bytes * 1e3 / nanos;
+    }
+
+    /** Returns the load throughput in lines per second. */
+    public double linesPerSecond() {
+        return nanos == 0 ? 0 : lines * 1e9 / nanos;
+    }
+
+    /** Returns the combined statistics of this load and OTHER. */
+    public LoadStats plus(LoadStats other) {
+        return new LoadStats(bytes + other.bytes, lines + other.lines, nanos + other.nanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d lines (%.1f MB) in %.2f sec: %.1f MB/s, %.0f lines/s",
+                lines, bytes / 1e6, nanos / 1e9, megabytesPerSecond(), linesPerSecond());
+    }
+}
@@ -0,0 +1,445 @@
+package ngrams;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.CRC32;
+
+/**
+ * Loads NGram words and counts files by memory-mapping them.
+ *
+ * A words file is cut into newline-aligned chunks that are parsed in parallel
+ * on the common ForkJoinPool. Each chunk is tokenized straight from the mapped
+ * bytes: years and counts are parsed without creating Strings, and a word's
+ * String is only created when it differs from the word on the previous line.
+ * Every chunk fills its own WordHistories.Builder, and the partial builders are
+ * merged back in file order, so the result is the same as a sequential load.
+ *
+ * Lines that do not parse (such as a header) are skipped, as are years outside
+ * [MIN_YEAR, MAX_YEAR].
+ */
+class NGramFileLoader {
+    /** Chunks are never made smaller than this, to keep task overhead low. */
+    private static final long MIN_CHUNK_BYTES = 1 << 20;
+    /** Chunks are never made larger than this, so each one fits in a single mapping. */
+    private static final long MAX_CHUNK_BYTES = 64 << 20;
+    /** Number of chunks per worker thread, to even out uneven chunks. */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** Bytes at the end of a loaded file whose checksum a FileMark keeps. */
+    private static final int MARK_TAIL_BYTES = 4096;
+
+    /** Parses the words file FILENAME into BUILDER and returns the load statistics. */
+    static LoadStats loadWords(String filename, WordHistories.Builder builder) {
+        return loadWords(filename, 0, builder);
+    }
+
+    /**
+     * Parses the words file FILENAME from byte FROM, which must be the start of a
+     * line, to its end into BUILDER and returns the load statistics, whose byte
+     * count is the number of bytes parsed.
+     */
+    static LoadStats loadWords(String filename, long from, WordHistories.Builder builder) {
+        return loadWords(filename, from, 0, builder);
+    }
+
+    /**
+     * Like loadWords(FILENAME, FROM, BUILDER), but cuts the file into chunks of about
+     * CHUNKBYTES bytes, or of the default size if CHUNKBYTES is 0. Tests use small
+     * chunks to parse a small file in many pieces.
+     */
+    static LoadStats loadWords(String filename, long from, long chunkBytes, WordHistories.Builder builder) {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel, from, chunkBytes);
+            List<ChunkResult> results = ForkJoinPool.commonPool()
+                    .invoke(new ParseTask(channel, bounds, 0, bounds.length - 1));
+            long lines = 0;
+            for (ChunkResult result : results) {
+                builder.addAll(result.builder);
+                lines += result.lines;
+            }
+            return new LoadStats(bounds[bounds.length - 1] - from, lines, System.nanoTime() - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + filename, e);
+        }
+    }
+
+    /**
+     * Remembers which file, and how much of it, was loaded, so that a later load can
+     * tell whether the file has only had lines appended since. A file is taken to be
+     * the same if it has the same file key (the inode, where the platform has one)
+     * and the same last bytes before LENGTH; a file replaced by a rename, truncated or
+     * edited near its old end is not.
+     */
+    record FileMark(Object fileKey, long length, long tailChecksum, boolean endsWithNewline) {
+
+        /** Returns the mark of the first LENGTH bytes of FILE. */
+        static FileMark of(Path file, long length) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer tail = readTail(channel, length);
+                boolean newline = tail.limit() > 0 && tail.get(tail.limit() - 1) == '\n';
+                return new FileMark(fileKey(file), length, checksum(tail), newline);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + file, e);
+            }
+        }
+
+        /**
+         * Returns the offset from which FILE holds lines appended since this mark was
+         * taken, which is its old length, or -1 if FILE cannot be loaded incrementally.
+         */
+        long appendedFrom(Path file) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() < length || !Objects.equals(fileKey, fileKey(file))
+                        || checksum(readTail(channel, length)) != tailChecksum) {
+                    return -1;
+                }
+                if (!endsWithNewline && channel.size() > length) {
+                    // The appended bytes must start a new line, not extend the old last one
+                    ByteBuffer next = ByteBuffer.allocate(1);
+                    channel.read(next, length);
+                    if (next.get(0) != '\n' && next.get(0) != '\r') {
+                        return -1;
+                    }
+                }
+                return length;
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        private static ByteBuffer readTail(FileChannel channel, long length) throws IOException {
+            int size = (int) Math.min(MARK_TAIL_BYTES, length);
+            ByteBuffer tail = ByteBuffer.allocate(size);
+            long position = length - size;
+            while (tail.hasRemaining()) {
+                int read = channel.read(tail, position + tail.position());
+                if (read < 0) {
+                    break;
+                }
+            }
+            tail.flip();
+            return tail;
+        }
+
+        private static long checksum(ByteBuffer bytes) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes.duplicate());
+            return crc.getValue();
+        }
+
+        private static Object fileKey(Path file) throws IOException {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        }
+    }
+
+    /**
+     * Parses the counts file FILENAME into TOTALS, indexed by year - MIN_YEAR,
+     * and returns the load statistics.
+     */
+    static LoadStats loadCounts(String filename, double[] totals) {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            // Counts files are tiny, so their chunks are parsed one after another
+            long[] bounds = chunkBounds(channel, 0, 0);
+            long lines = 0;
+            for (int i = 0; i + 1 < bounds.length; i += 1) {
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                        bounds[i], bounds[i + 1] - bounds[i]);
+                lines += new Tokenizer(chunk).parseCounts(totals);
+            }
+            return new LoadStats(channel.size(), lines, System.nanoTime() - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + filename, e);
+        }
+    }
+
+    /**
+     * Returns the chunk boundaries of the file behind CHANNEL from byte FROM on:
+     * chunk i spans [bounds[i], bounds[i + 1]) and, except for the last one, ends
+     * just after a newline. Chunks are about CHUNKBYTES long, or of the default
+     * size if CHUNKBYTES is 0.
+     */
+    static long[] chunkBounds(FileChannel channel, long from, long chunkBytes) throws IOException {
+        long size = channel.size();
+        long target = chunkBytes;
+        if (target <= 0) {
+            int chunks = ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD;
+            target = Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, (size - from) / chunks + 1));
+        }
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(from);
+        ByteBuffer probe = ByteBuffer.allocate(256);
+        long position = from;
+        while (position < size) {
+            long next = Math.min(size, position + target);
+            // Move the boundary forward to just past the next newline
+            while (next < size) {
+                probe.clear();
+                int read = channel.read(probe, next);
+                int newline = -1;
+                for (int i = 0; i < read && newline < 0; i += 1) {
+                    if (probe.get(i) == '\n') {
+                        newline = i;
+                    }
+                }
+                if (newline >= 0) {
+                    next += newline + 1;
+                    break;
+                }
+                next += read;
+            }
+            bounds.add(next);
+            position = next;
+        }
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /** The partial result of parsing one chunk. */
+    private record ChunkResult(WordHistories.Builder builder, long lines) { }
+
+    /**
+     * Parses chunks [lo, hi) by splitting the range in half until one chunk is
+     * left, and returns the per-chunk results in file order. Never serialized, so
+     * the channel need not be Serializable.
+     */
+    @SuppressWarnings("serial")
+    private static class ParseTask extends RecursiveTask<List<ChunkResult>> {
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final int lo;
+        private final int hi;
+
+        ParseTask(FileChannel channel, long[] bounds, int lo, int hi) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected List<ChunkResult> compute() {
+            List<ChunkResult> results = new ArrayList<>();
+            if (hi - lo == 1) {
+                try {
+                    MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                            bounds[lo], bounds[hi] - bounds[lo]);
+                    WordHistories.Builder builder = new WordHistories.Builder();
+                    long lines = new Tokenizer(chunk).parseWords(builder);
+                    results.add(new ChunkResult(builder, lines));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                ParseTask right = new ParseTask(channel, bounds, mid, hi);
+                right.fork();
+                results.addAll(new ParseTask(channel, bounds, lo, mid).compute());
+                results.addAll(right.join());
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Splits a buffer of lines into fields and parses them without allocating,
+     * apart from the Strings of new words.
+     */
+    private static class Tokenizer {
+        private final ByteBuffer buffer;
+        private final int limit;
+        private int position;
+
+        /** Start and end of the field most recently returned by nextField. */
+        private int fieldStart;
+        private int fieldEnd;
+
+        /** Holds the bytes of a word while it is decoded into a String. */
+        private byte[] scratch = new byte[64];
+
+        /** Result of the last successful parseInt/parseDouble call. */
+        private int intValue;
+        private double doubleValue;
+
+        Tokenizer(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.limit = buffer.limit();
+        }
+
+        /** Parses "word\tyear\tcount[\t...]" lines into BUILDER, returning the line count. */
+        long parseWords(WordHistories.Builder builder) {
+            long lines = 0;
+            int previousStart = -1;
+            int previousLength = -1;
+            int previousId = -1;
+            while (position < limit) {
+                int lineEnd = lineEnd();
+                lines += 1;
+                if (nextField('\t', lineEnd)) {
+                    int wordStart = fieldStart;
+                    int wordLength = fieldEnd - fieldStart;
+                    if (nextField('\t', lineEnd) && parseInt()) {
+                        int year = intValue;
+                        if (nextField('\t', lineEnd) && parseDouble()
+                                && year >= TimeSeries.MIN_YEAR && year <= TimeSeries.MAX_YEAR) {
+                            if (!sameBytes(previousStart, previousLength, wordStart, wordLength)) {
+                                previousId = builder.intern(decode(wordStart, wordLength));
+                                previousStart = wordStart;
+                                previousLength = wordLength;
+                            }
+                            builder.add(previousId, year, doubleValue);
+                        }
+                    }
+                }
+                position = lineEnd + 1;
+            }
+            return lines;
+        }
+
+        /** Parses "year,count[,...]" lines into TOTALS, returning the line count. */
+        long parseCounts(double[] totals) {
+            long lines = 0;
+            while (position < limit) {
+                int lineEnd = lineEnd();
+                lines += 1;
+                if (nextField(',', lineEnd) && parseInt()) {
+                    int year = intValue;
+                    if (nextField(',', lineEnd) && parseDouble()
+                            && year >= TimeSeries.MIN_YEAR && year <= TimeSeries.MAX_YEAR) {
+                        totals[year - TimeSeries.MIN_YEAR] = doubleValue;
+                    }
+                }
+                position = lineEnd + 1;
+            }
+            return lines;
+        }
+
+        /** Returns the index of the newline ending the current line (or the limit). */
+        private int lineEnd() {
+            int i = position;
+            while (i < limit && buffer.get(i) != '\n') {
+                i += 1;
+            }
+            return i;
+        }
+
+        /**
+         * Advances over the next field of the line ending at LINEEND, which is
+         * terminated by SEPARATOR or the end of the line. Returns false if the
+         * line has no more fields. A trailing '\r' is not part of the last field.
+         */
+        private boolean nextField(char separator, int lineEnd) {
+            if (position > lineEnd) {
+                return false;
+            }
+            int i = position;
+            while (i < lineEnd && buffer.get(i) != separator) {
+                i += 1;
+            }
+            fieldStart = position;
+            fieldEnd = i;
+            if (i == lineEnd && i > fieldStart && buffer.get(i - 1) == '\r') {
+                fieldEnd -= 1;
+            }
+            position = i + 1;
+            return true;
+        }
+
+        /** Parses the current field as an int into intValue; returns false if it is not one. */
+        private boolean parseInt() {
+            int length = fieldEnd - fieldStart;
+            if (length == 0 || length > 9) {
+                return parseIntSlow();
+            }
+            int value = 0;
+            for (int i = fieldStart; i < fieldEnd; i += 1) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return parseIntSlow();
+                }
+                value = value * 10 + digit;
+            }
+            intValue = value;
+            return true;
+        }
+
+        /** Parses the current field as a double into doubleValue; returns false if it is not one. */
+        private boolean parseDouble() {
+            int length = fieldEnd - fieldStart;
+            if (length == 0 || length > 18) {
+                return parseDoubleSlow();
+            }
+            long value = 0;
+            for (int i = fieldStart; i < fieldEnd; i += 1) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return parseDoubleSlow();
+                }
+                value = value * 10 + digit;
+            }
+            doubleValue = value;
+            return true;
+        }
+
+        /** Handles signs, decimals and exponents the same way Integer.parseInt does. */
+        private boolean parseIntSlow() {
+            try {
+                intValue = Integer.parseInt(decode(fieldStart, fieldEnd - fieldStart));
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        /** Handles signs, decimals and exponents the same way Double.parseDouble does. */
+        private boolean parseDoubleSlow() {
+            try {
+                doubleValue = Double.parseDouble(decode(fieldStart, fieldEnd - fieldStart));
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        /** Returns whether the byte ranges starting at A and B, of the given lengths, are equal. */
+        private boolean sameBytes(int a, int aLength, int b, int bLength) {
+            if (a < 0 || aLength != bLength) {
+                return false;
+            }
+            for (int i = 0; i < aLength; i += 1) {
+                if (buffer.get(a + i) != buffer.get(b + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Decodes LENGTH bytes of UTF-8 starting at START. */
+        private String decode(int start, int length) {
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(start, scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
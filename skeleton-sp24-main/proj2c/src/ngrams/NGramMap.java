@@ -1,14 +1,8 @@
 package ngrams;
 
-import edu.princeton.cs.algs4.In;
-import net.sf.saxon.functions.Minimax;
-
-import java.sql.Time;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-
-//import static ngrams.TimeSeries.MAX_YEAR;
-//import static ngrams.TimeSeries.MIN_YEAR;
 
 /**
  * An object that provides utility methods for making queries on the
@@ -18,14 +12,36 @@ import java.util.HashMap;
  * file". It is not a map in the strict sense, but it does provide additional
  * functionality.
  *
+ * Word histories are kept in columnar form (see {@link WordHistories}) rather
+ * than as one TimeSeries per word; TimeSeries objects are only created for the
+ * results handed out by the query methods.
+ *
  * @author Josh Hug
  */
 public class NGramMap {
-    /** Stores time series data for each word (word -> timeline mapping). */
-    private HashMap<String, TimeSeries> wordHistories;
+    /** Number of years between MIN_YEAR and MAX_YEAR, inclusive. */
+    private static final int YEAR_SPAN = TimeSeries.MAX_YEAR - TimeSeries.MIN_YEAR + 1;
+
+    /** Stores the count history of each word (word -> timeline mapping). */
+    private WordHistories wordHistories;
+
+    /** Stores total word counts for each year, indexed by year - MIN_YEAR (NaN if unknown). */
+    private double[] totalCounts;
+
+    /**
+     * Running sums of totalCounts: totalCountPrefix[i] is the number of words
+     * recorded from MIN_YEAR up to year MIN_YEAR + i (unknown years count as 0).
+     */
+    private double[] totalCountPrefix;
+
+    /** Throughput of loading the words and counts files. */
+    private LoadStats loadStats;
+
+    /** The dictionary the words are keyed on, or null if this map has its own index. */
+    private WordDictionary dictionary;
 
-    /** Stores total word counts for each year. */
-    private TimeSeries totalCounts;
+    /** How much of which words file was loaded, or null for snapshots. */
+    private NGramFileLoader.FileMark wordsFileMark;
 
     /**
      * Constructs an NGramMap from WORDSFILENAME and COUNTSFILENAME.
@@ -34,102 +50,127 @@ public class NGramMap {
      */
     public NGramMap(String wordsFilename, String countsFilename) {
         // Initialize data structures
-        wordHistories = new HashMap<>();
-        totalCounts = new TimeSeries();
+        totalCounts = new double[YEAR_SPAN];
+        Arrays.fill(totalCounts, Double.NaN);
 
         // Process the counts file (total words per year)
-        processCountsFile(countsFilename);
-
-        // Process the words file (individual word frequencies)
-        processWordsFile(wordsFilename);
-    }
-
-        /**
-         * Processes the counts file containing yearly total word counts.
-         * Format: year,totalCount,pages,sources
-         */
-        private void processCountsFile(String countsFilename) {
-            In in = new In(countsFilename);
-            int lineNumber = 0;
-
-            while (!in.isEmpty()) {
-                lineNumber += 1;
-                String nextLine = in.readLine();
-
-                // Skip header line
-                if (lineNumber == 1) {
-                    continue;
-                }
-
-                try {
-                    // Split and validate line data
-                    String[] parts = nextLine.split(",");
-                    if (parts.length < 2) {
-                        continue;
-                    }
-
-                    // Parse and validate data
-                    int year = Integer.parseInt(parts[0]);
-                    double count = Double.parseDouble(parts[1]);
-
-                    if (year < TimeSeries.MIN_YEAR || year > TimeSeries.MAX_YEAR) {
-                        continue;  // Skip years outside valid range
-                    }
-
-                    // Store valid data point
-                    totalCounts.put(year, count);
-                } catch (NumberFormatException e) {
-                    continue;  // Skip lines with invalid number format
-                }
+        LoadStats countsStats = NGramFileLoader.loadCounts(countsFilename, totalCounts);
+
+        // Process the words file (individual word frequencies) in parallel chunks
+        WordHistories.Builder builder = new WordHistories.Builder();
+        LoadStats wordsStats = NGramFileLoader.loadWords(wordsFilename, builder);
+        wordHistories = builder.build();
+
+        totalCountPrefix = prefixSums(totalCounts);
+        loadStats = countsStats.plus(wordsStats);
+        wordsFileMark = NGramFileLoader.FileMark.of(Path.of(wordsFilename), wordsStats.bytes());
+    }
+
+    /** Creates an NGramMap over already loaded HISTORIES and TOTALCOUNTS. */
+    NGramMap(WordHistories wordHistories, double[] totalCounts, LoadStats loadStats) {
+        this.wordHistories = wordHistories;
+        this.totalCounts = totalCounts;
+        this.totalCountPrefix = prefixSums(totalCounts);
+        this.loadStats = loadStats;
+    }
+
+    /** Returns the running sums of VALUES, treating NaN as 0. */
+    private static double[] prefixSums(double[] values) {
+        double[] prefix = new double[values.length];
+        double sum = 0;
+        for (int i = 0; i < values.length; i += 1) {
+            if (!Double.isNaN(values[i])) {
+                sum += values[i];
             }
+            prefix[i] = sum;
         }
+        return prefix;
+    }
 
-        /**
-         * Processes the words file containing individual word frequencies.
-         * Format: word    year    count   sources
-         */
-        private void processWordsFile(String wordsFilename) {
-            In wordsIn = new In(wordsFilename);
-            int lineNumber = 0;
-
-            while (!wordsIn.isEmpty()) {
-                lineNumber += 1;
-                String nextLine = wordsIn.readLine();
-
-                // Skip header line
-                if (lineNumber == 1) {
-                    continue;
-                }
-
-                try {
-                    // Split and validate line data
-                    String[] parts = nextLine.split("\t");
-                    if (parts.length < 3) {
-                        continue;
-                    }
-
-                    // Parse and validate data
-                    String word = parts[0];
-                    int year = Integer.parseInt(parts[1]);
-                    double count = Double.parseDouble(parts[2]);
-
-                    if (year < TimeSeries.MIN_YEAR || year > TimeSeries.MAX_YEAR) {
-                        continue;  // Skip years outside valid range
-                    }
-
-                    // Update or create time series for this word
-                    if (wordHistories.containsKey(word)) {
-                        wordHistories.get(word).put(year, count);
-                    } else {
-                        TimeSeries newTimeSeries = new TimeSeries();
-                        newTimeSeries.put(year, count);
-                        wordHistories.put(word, newTimeSeries);
-                    }
-                } catch (NumberFormatException e) {
-                    continue;  // Skip lines with invalid number format
-                }
-            }
+    /**
+     * Returns an NGramMap with the same data whose words are keyed on DICTIONARY,
+     * which must be empty and not frozen. The words are added to DICTIONARY in the
+     * order of their ids here, so the dictionary id of a word is its row in the
+     * columns and nothing is copied but the words themselves. Other data, such as a
+     * WordNet, can then add its words to the same dictionary.
+     */
+    public NGramMap withDictionary(WordDictionary dictionary) {
+        if (dictionary.size() != 0 || dictionary.isFrozen()) {
+            throw new IllegalStateException("The n-gram words must be added to an empty dictionary first");
+        }
+        for (int id = 0; id < wordHistories.size(); id += 1) {
+            dictionary.add(wordHistories.word(id));
+        }
+        NGramMap keyed = new NGramMap(wordHistories.withDictionary(dictionary), totalCounts, loadStats);
+        keyed.dictionary = dictionary;
+        keyed.wordsFileMark = wordsFileMark;
+        return keyed;
+    }
+
+    /**
+     * Returns an NGramMap with the current contents of WORDSFILENAME and COUNTSFILENAME,
+     * leaving this one unchanged. If this map was loaded from WORDSFILENAME and lines
+     * have only been appended to it since, only the appended lines are parsed and
+     * merged into a copy of the columns; a later line for a word and year replaces the
+     * old count. Existing words keep their ids and new words get ids after them.
+     * Otherwise, as for maps read from a snapshot, both files are loaded from scratch.
+     * The counts file is small and always read in full.
+     */
+    public NGramMap refreshed(String wordsFilename, String countsFilename) {
+        Path wordsFile = Path.of(wordsFilename);
+        long from = wordsFileMark == null ? -1 : wordsFileMark.appendedFrom(wordsFile);
+        if (from < 0) {
+            return new NGramMap(wordsFilename, countsFilename);
+        }
+
+        double[] counts = new double[YEAR_SPAN];
+        Arrays.fill(counts, Double.NaN);
+        LoadStats countsStats = NGramFileLoader.loadCounts(countsFilename, counts);
+
+        WordHistories.Builder builder = new WordHistories.Builder();
+        LoadStats wordsStats = NGramFileLoader.loadWords(wordsFilename, from, builder);
+        WordHistories histories = wordHistories;
+        if (wordsStats.lines() > 0) {
+            WordHistories.Builder merged = new WordHistories.Builder();
+            merged.addAll(wordHistories);
+            merged.addAll(builder);
+            histories = merged.build();
         }
+        NGramMap refreshed = new NGramMap(histories, counts, countsStats.plus(wordsStats));
+        refreshed.wordsFileMark = NGramFileLoader.FileMark.of(wordsFile, from + wordsStats.bytes());
+        return refreshed;
+    }
+
+    /** Returns the dictionary this map is keyed on, or null if it has its own word index. */
+    public WordDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Returns an NGramMap served from the binary snapshot SNAPSHOT, as written by
+     * {@link #writeSnapshot(Path)}. The file is memory-mapped read-only and
+     * queried in place, so this takes milliseconds regardless of the data size.
+     */
+    public static NGramMap fromSnapshot(Path snapshot) {
+        return NGramSnapshot.read(snapshot);
+    }
+
+    /**
+     * Writes the data of this NGramMap to SNAPSHOT in the binary snapshot format
+     * read by {@link #fromSnapshot(Path)}, replacing any existing file. Throws an
+     * IllegalArgumentException if the data is too large for one snapshot.
+     */
+    public void writeSnapshot(Path snapshot) {
+        NGramSnapshot.write(wordHistories, totalCounts, snapshot);
+    }
+
+    /**
+     * Returns the combined load statistics (bytes, lines, time) of the words and
+     * counts files this NGramMap was built from.
+     */
+    public LoadStats loadStats() {
+        return loadStats;
+    }
 
     /**
      * Provides the history of WORD between STARTYEAR and ENDYEAR, inclusive of both ends. The
@@ -139,14 +180,15 @@ public class NGramMap {
      * returns an empty TimeSeries.
      */
     public TimeSeries countHistory(String word, int startYear, int endYear) {
+        TimeSeries result = new TimeSeries();
         // Check whether words exist
-        if (!wordHistories.containsKey(word)) {
-            return new TimeSeries();
+        int id = wordHistories.id(word);
+        if (id == WordHistories.NOT_FOUND) {
+            return result;
         }
-        // Get original TimeSeries
-        TimeSeries originalTS = wordHistories.get(word);
-        // The copy of returned TimeSeries
-        return new TimeSeries(originalTS, startYear, endYear);
+        // Copy the word's column into the returned TimeSeries
+        wordHistories.copyInto(id, startYear, endYear, result);
+        return result;
     }
 
     /**
@@ -156,18 +198,66 @@ public class NGramMap {
      * is not in the data files, returns an empty TimeSeries.
      */
     public TimeSeries countHistory(String word) {
-        if (!wordHistories.containsKey(word)) {
-            return new TimeSeries();
-        }
-        TimeSeries originalTS = wordHistories.get(word);
-        return new TimeSeries(originalTS, TimeSeries.MIN_YEAR, TimeSeries.MAX_YEAR);
+        return countHistory(word, TimeSeries.MIN_YEAR, TimeSeries.MAX_YEAR);
     }
 
     /**
      * Returns a defensive copy of the total number of words recorded per year in all volumes.
      */
     public TimeSeries totalCountHistory() {
-        return new TimeSeries(totalCounts, TimeSeries.MIN_YEAR, TimeSeries.MAX_YEAR);
+        TimeSeries result = new TimeSeries();
+        for (int i = 0; i < YEAR_SPAN; i += 1) {
+            if (!Double.isNaN(totalCounts[i])) {
+                result.put(TimeSeries.MIN_YEAR + i, totalCounts[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of times WORD was recorded between STARTYEAR and ENDYEAR, inclusive of
+     * both ends, or 0 if the word is not in the data files. This is the sum of the values of
+     * countHistory(word, startYear, endYear), but it is computed in constant time from
+     * precomputed running sums and does not allocate.
+     */
+    public double totalCount(String word, int startYear, int endYear) {
+        int id = wordHistories.id(word);
+        if (id == WordHistories.NOT_FOUND) {
+            return 0;
+        }
+        return wordHistories.sum(id, startYear, endYear);
+    }
+
+    /**
+     * Returns totalCount(word, STARTYEAR, ENDYEAR) for the word with id WORDID in the
+     * dictionary this map is keyed on: an array lookup with no String hashing. Returns
+     * 0 for ids of words without n-gram data.
+     */
+    public double totalCount(int wordId, int startYear, int endYear) {
+        if (dictionary == null) {
+            throw new IllegalStateException("NGramMap is not keyed on a dictionary");
+        }
+        if (wordId < 0 || wordId >= wordHistories.size()) {
+            return 0;
+        }
+        return wordHistories.sum(wordId, startYear, endYear);
+    }
+
+    /**
+     * Returns the relative frequency of WORD over the whole period between STARTYEAR and ENDYEAR,
+     * inclusive of both ends: totalCount(word, startYear, endYear) divided by the number of words
+     * recorded in all volumes in those years. Returns 0 if the word is not in the data files or
+     * no words were recorded in the period. Runs in constant time.
+     */
+    public double totalWeight(String word, int startYear, int endYear) {
+        double count = totalCount(word, startYear, endYear);
+        int from = Math.max(startYear, TimeSeries.MIN_YEAR) - TimeSeries.MIN_YEAR;
+        int to = Math.min(endYear, TimeSeries.MAX_YEAR) - TimeSeries.MIN_YEAR;
+        if (count == 0 || from > to) {
+            return 0;
+        }
+        double total = totalCountPrefix[to] - (from > 0 ? totalCountPrefix[from - 1] : 0);
+        return total == 0 ? 0 : count / total;
     }
 
     /**
@@ -176,15 +266,29 @@ public class NGramMap {
      * TimeSeries.
      */
     public TimeSeries weightHistory(String word, int startYear, int endYear) {
-        if (!wordHistories.containsKey(word)) {
-            return new TimeSeries();
+        TimeSeries result = new TimeSeries();
+        int id = wordHistories.id(word);
+        if (id == WordHistories.NOT_FOUND) {
+            return result;
+        }
+        // Calculate relative frequency (word count / total count) straight from the columns
+        wordHistories.weightInto(id, startYear, endYear, totalCounts, result);
+        return result;
+    }
+
+    /**
+     * Clears TARGET and puts the same data into it as weightHistory(WORD, STARTYEAR, ENDYEAR),
+     * without building a TimeSeries. Returns TARGET, so that one series can be reused for many
+     * words.
+     */
+    public DenseTimeSeries weightHistoryInto(String word, int startYear, int endYear,
+                                             DenseTimeSeries target) {
+        target.clear();
+        int id = wordHistories.id(word);
+        if (id != WordHistories.NOT_FOUND) {
+            wordHistories.addWeightsInto(id, startYear, endYear, totalCounts, target);
         }
-        // Get the count history for the word within specified years
-        TimeSeries wordCounts = countHistory(word, startYear, endYear);
-        // Get the total word counts for all years within the range
-        TimeSeries totalCountHistory = new TimeSeries(totalCounts, startYear, endYear);
-        // Calculate and return relative frequency (word count / total count)
-        return wordCounts.dividedBy(totalCountHistory);
+        return target;
     }
 
     /**
@@ -202,10 +306,21 @@ public class NGramMap {
      * rather than throwing an exception.
      */
     public TimeSeries summedWeightHistory(Collection<String> words, int startYear, int endYear) {
-        TimeSeries summedWeights = new TimeSeries();
+        return sumWeights(words, startYear, endYear).toTimeSeries();
+    }
+
+    /**
+     * Returns the same data as summedWeightHistory(WORDS, STARTYEAR, ENDYEAR) as a
+     * DenseTimeSeries. Each word's weights are added straight from the columns into one
+     * accumulator, so no TimeSeries is built per word.
+     */
+    public DenseTimeSeries sumWeights(Collection<String> words, int startYear, int endYear) {
+        DenseTimeSeries summedWeights = new DenseTimeSeries();
         for (String word : words) {
-            TimeSeries currentWeight = weightHistory(word, startYear, endYear);
-            summedWeights = summedWeights.plus(currentWeight);
+            int id = wordHistories.id(word);
+            if (id != WordHistories.NOT_FOUND) {
+                wordHistories.addWeightsInto(id, startYear, endYear, totalCounts, summedWeights);
+            }
         }
         return summedWeights;
     }
@@ -0,0 +1,321 @@
+package ngrams;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Reads and writes the binary snapshot format of an NGramMap.
+ *
+ * A snapshot is served straight from a read-only memory mapping: the word
+ * index, the run index and the value column of the loaded WordHistories are
+ * views into the mapped file, so nothing is parsed at startup and several
+ * processes mapping the same snapshot share its pages in the OS page cache.
+ *
+ * All numbers are little-endian and every section starts 8-byte aligned:
+ * <pre>
+ *   int     MAGIC, FORMAT_VERSION
+ *   int     wordCount, valueCount, stringBytes, reserved
+ *   double  totals[MAX_YEAR - MIN_YEAR + 1]         NaN for years without a total
+ *   int     stringOffsets[wordCount + 1]            into the string table
+ *   byte    strings[stringBytes]                    UTF-8, sorted by unsigned bytes
+ *   int     firstYears[wordCount], offsets[wordCount], lengths[wordCount]
+ *   double  values[valueCount]
+ *   double  prefixes[valueCount]                   running sums of values per word
+ * </pre>
+ * Word ids in a snapshot are the ranks of the words in the sorted string table,
+ * which lets lookups binary search the mapped bytes.
+ */
+class NGramSnapshot {
+    /** "NGSN" in ASCII. */
+    static final int MAGIC = 0x4E47534E;
+    /** Bumped whenever the layout above changes; older files are rejected. */
+    static final int FORMAT_VERSION = 2;
+
+    private static final int HEADER_BYTES = 24;
+    private static final int YEAR_SPAN = TimeSeries.MAX_YEAR - TimeSeries.MIN_YEAR + 1;
+
+    /**
+     * Writes HISTORIES and TOTALS (indexed by year - MIN_YEAR) to FILE. The file is
+     * written next to FILE first and then moved into place, so readers never see
+     * a partial snapshot. Throws an IllegalArgumentException, before writing
+     * anything, if the snapshot would be too large for read to map.
+     */
+    static void write(WordHistories histories, double[] totals, Path file) {
+        int n = histories.size();
+        byte[][] utf8 = new byte[n][];
+        Integer[] order = new Integer[n];
+        for (int id = 0; id < n; id += 1) {
+            utf8[id] = histories.word(id).getBytes(StandardCharsets.UTF_8);
+            order[id] = id;
+        }
+        Arrays.sort(order, Comparator.comparing(id -> utf8[id], Arrays::compareUnsigned));
+
+        long stringBytes = 0;
+        long valueCount = 0;
+        for (int id = 0; id < n; id += 1) {
+            stringBytes += utf8[id].length;
+            valueCount += histories.length(id);
+        }
+        long size = snapshotBytes(n, stringBytes, valueCount);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A snapshot of " + n + " words and " + valueCount
+                    + " values would take " + size + " bytes, more than one mapping of at most "
+                    + Integer.MAX_VALUE + " bytes can hold");
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream raw = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(raw, 1 << 16))) {
+            LittleEndianWriter writer = new LittleEndianWriter(out);
+            writer.writeInt(MAGIC);
+            writer.writeInt(FORMAT_VERSION);
+            writer.writeInt(n);
+            writer.writeInt((int) valueCount);
+            writer.writeInt((int) stringBytes);
+            writer.writeInt(0);
+            for (double total : totals) {
+                writer.writeDouble(total);
+            }
+
+            int stringOffset = 0;
+            for (int rank = 0; rank < n; rank += 1) {
+                writer.writeInt(stringOffset);
+                stringOffset += utf8[order[rank]].length;
+            }
+            writer.writeInt(stringOffset);
+            writer.pad();
+            for (int rank = 0; rank < n; rank += 1) {
+                writer.writeBytes(utf8[order[rank]]);
+            }
+            writer.pad();
+
+            for (int rank = 0; rank < n; rank += 1) {
+                writer.writeInt(histories.firstYear(order[rank]));
+            }
+            int offset = 0;
+            for (int rank = 0; rank < n; rank += 1) {
+                writer.writeInt(offset);
+                offset += histories.length(order[rank]);
+            }
+            for (int rank = 0; rank < n; rank += 1) {
+                writer.writeInt(histories.length(order[rank]));
+            }
+            writer.pad();
+
+            for (int rank = 0; rank < n; rank += 1) {
+                int id = order[rank];
+                int start = histories.offset(id);
+                for (int i = 0; i < histories.length(id); i += 1) {
+                    writer.writeDouble(histories.value(start + i));
+                }
+            }
+            for (int rank = 0; rank < n; rank += 1) {
+                int id = order[rank];
+                int start = histories.offset(id);
+                for (int i = 0; i < histories.length(id); i += 1) {
+                    writer.writeDouble(histories.prefix(start + i));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write snapshot " + file, e);
+        }
+
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write snapshot " + file, e);
+        }
+    }
+
+    /** Maps the snapshot FILE read-only and returns an NGramMap served from it. */
+    static NGramMap read(Path file) {
+        long start = System.nanoTime();
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Snapshot larger than 2 GB: " + file);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read snapshot " + file, e);
+        }
+        ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not an NGramMap snapshot: " + file);
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version "
+                    + buffer.getInt(4) + " in " + file);
+        }
+        int n = buffer.getInt(8);
+        int valueCount = buffer.getInt(12);
+        int stringBytes = buffer.getInt(16);
+        if (n < 0 || valueCount < 0 || stringBytes < 0
+                || snapshotBytes(n, stringBytes, valueCount) > buffer.limit()) {
+            throw new IllegalArgumentException("Truncated or corrupt snapshot: " + file);
+        }
+        // Every section now lies within the mapping, so int positions cannot overflow
+
+        int position = HEADER_BYTES;
+        double[] totals = new double[YEAR_SPAN];
+        slice(buffer, position, YEAR_SPAN * Double.BYTES).asDoubleBuffer().get(totals);
+        position += YEAR_SPAN * Double.BYTES;
+
+        IntBuffer stringOffsets = slice(buffer, position, (n + 1) * Integer.BYTES).asIntBuffer();
+        position = align(position + (n + 1) * Integer.BYTES);
+        ByteBuffer strings = slice(buffer, position, stringBytes);
+        position = align(position + stringBytes);
+
+        IntBuffer firstYears = slice(buffer, position, n * Integer.BYTES).asIntBuffer();
+        position += n * Integer.BYTES;
+        IntBuffer offsets = slice(buffer, position, n * Integer.BYTES).asIntBuffer();
+        position += n * Integer.BYTES;
+        IntBuffer lengths = slice(buffer, position, n * Integer.BYTES).asIntBuffer();
+        position = align(position + n * Integer.BYTES);
+        DoubleBuffer values = slice(buffer, position, valueCount * Double.BYTES).asDoubleBuffer();
+        position += valueCount * Double.BYTES;
+        DoubleBuffer prefixes = slice(buffer, position, valueCount * Double.BYTES).asDoubleBuffer();
+
+        WordHistories histories = new WordHistories(new MappedWordIndex(stringOffsets, strings),
+                firstYears, offsets, lengths, values, prefixes);
+        LoadStats stats = new LoadStats(buffer.limit(), 0, System.nanoTime() - start);
+        return new NGramMap(histories, totals, stats);
+    }
+
+    /**
+     * Returns the size in bytes of a snapshot of N words whose strings take
+     * STRINGBYTES bytes and whose runs hold VALUECOUNT values, in the layout above.
+     */
+    static long snapshotBytes(long n, long stringBytes, long valueCount) {
+        long position = HEADER_BYTES + (long) YEAR_SPAN * Double.BYTES;
+        position = align(position + (n + 1) * Integer.BYTES);
+        position = align(position + stringBytes);
+        position = align(position + 3 * n * Integer.BYTES);
+        return position + 2 * valueCount * Double.BYTES;
+    }
+
+    /** Returns a little-endian view of LENGTH bytes of BUFFER starting at POSITION. */
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        return buffer.slice(position, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Rounds POSITION up to the next multiple of 8. */
+    private static int align(int position) {
+        return (position + 7) & ~7;
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    /** Writes little-endian numbers to a DataOutputStream and tracks the byte count. */
+    private static class LittleEndianWriter {
+        private final DataOutputStream out;
+        private long written;
+
+        LittleEndianWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeInt(int value) throws IOException {
+            out.writeInt(Integer.reverseBytes(value));
+            written += Integer.BYTES;
+        }
+
+        void writeDouble(double value) throws IOException {
+            out.writeLong(Long.reverseBytes(Double.doubleToRawLongBits(value)));
+            written += Double.BYTES;
+        }
+
+        void writeBytes(byte[] bytes) throws IOException {
+            out.write(bytes);
+            written += bytes.length;
+        }
+
+        /** Writes zero bytes up to the next 8-byte boundary. */
+        void pad() throws IOException {
+            while (written % 8 != 0) {
+                out.write(0);
+                written += 1;
+            }
+        }
+    }
+
+    /**
+     * A WordIndex over the sorted string table of a mapped snapshot. Lookups
+     * binary search the UTF-8 bytes in place; only word(id) creates a String.
+     */
+    private static class MappedWordIndex implements WordIndex {
+        private final IntBuffer stringOffsets;
+        private final ByteBuffer strings;
+
+        MappedWordIndex(IntBuffer stringOffsets, ByteBuffer strings) {
+            this.stringOffsets = stringOffsets;
+            this.strings = strings;
+        }
+
+        @Override
+        public int id(String word) {
+            byte[] key = word.getBytes(StandardCharsets.UTF_8);
+            int lo = 0;
+            int hi = size() - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = compareTo(mid, key);
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return NOT_FOUND;
+        }
+
+        /** Compares the word with the given ID to KEY as unsigned bytes. */
+        private int compareTo(int id, byte[] key) {
+            int start = stringOffsets.get(id);
+            int length = stringOffsets.get(id + 1) - start;
+            int common = Math.min(length, key.length);
+            for (int i = 0; i < common; i += 1) {
+                int cmp = Byte.compareUnsigned(strings.get(start + i), key[i]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return Integer.compare(length, key.length);
+        }
+
+        @Override
+        public String word(int id) {
+            int start = stringOffsets.get(id);
+            byte[] bytes = new byte[stringOffsets.get(id + 1) - start];
+            strings.get(start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int size() {
+            return stringOffsets.limit() - 1;
+        }
+    }
+}
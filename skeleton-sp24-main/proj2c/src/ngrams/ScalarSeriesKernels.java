@@ -0,0 +1,79 @@
+package ngrams;
+
+/** The plain-loop SeriesKernels, used when the vector kernels are not available. */
+final class ScalarSeriesKernels extends SeriesKernels {
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public void add(double[] target, double[] source, int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            target[i] += source[i];
+        }
+    }
+
+    @Override
+    public void divide(double[] target, double[] divisor, long[] present, int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            if (isSet(present, i)) {
+                target[i] /= divisor[i];
+            }
+        }
+    }
+
+    @Override
+    public void divide(double[] target, double divisor, int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            target[i] /= divisor;
+        }
+    }
+
+    @Override
+    public double sum(double[] values, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i += 1) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public boolean addQuotients(double[] counts, int countsOffset, double[] totals,
+                                double[] target, long[] present, int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            if (!Double.isNaN(counts[countsOffset + i]) && Double.isNaN(totals[i])) {
+                return false;
+            }
+        }
+        for (int i = from; i < to; i += 1) {
+            double count = counts[countsOffset + i];
+            if (!Double.isNaN(count)) {
+                target[i] += count / totals[i];
+                present[i >>> 6] |= 1L << i;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void movingAverage(double[] source, long[] present, int window,
+                              double[] target, int from, int to) {
+        double sum = 0;
+        int count = 0;
+        for (int i = from; i < to; i += 1) {
+            if (isSet(present, i)) {
+                sum += source[i];
+                count += 1;
+            }
+            int leaving = i - window;
+            if (leaving >= from && isSet(present, leaving)) {
+                sum -= source[leaving];
+                count -= 1;
+            }
+            target[i] = isSet(present, i) ? sum / count : 0.0;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ngrams;
+
+/**
+ * Arithmetic kernels over year-aligned double[] slices, the inner loops of the
+ * DenseTimeSeries operations and of NGramMap.sumWeights.
+ *
+ * Every kernel works on the indices [from, to) of its arrays, where index i holds
+ * year MIN_YEAR + i. Which years are present is given by a bitmap of longs, bit i
+ * of which is bit (i % 64) of word i / 64, as in DenseTimeSeries.
+ *
+ * Two implementations exist. The scalar one is plain loops, which the JIT unrolls
+ * and often auto-vectorizes. The vector one, VectorSeriesKernels, uses the
+ * jdk.incubator.vector API and lives in the separate incubator source root, since
+ * it only compiles and runs with --add-modules jdk.incubator.vector. {@link #get()}
+ * picks the vector kernels once at startup if they were compiled in and the module
+ * is present, and the scalar ones otherwise; the system property ngrams.kernels set
+ * to "scalar" forces the scalar kernels.
+ *
+ * Both give bit-identical results for every kernel but sum, whose additions the
+ * vector kernels group differently.
+ */
+public abstract class SeriesKernels {
+    private static final String VECTOR_KERNELS = "ngrams.VectorSeriesKernels";
+    private static final SeriesKernels SCALAR = new ScalarSeriesKernels();
+    private static final SeriesKernels CHOSEN = choose();
+
+    /** Returns the kernels chosen at startup. */
+    public static SeriesKernels get() {
+        return CHOSEN;
+    }
+
+    /** Returns the scalar kernels, which are always available. */
+    public static SeriesKernels scalar() {
+        return SCALAR;
+    }
+
+    private static SeriesKernels choose() {
+        if ("scalar".equals(System.getProperty("ngrams.kernels"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (SeriesKernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Not compiled in
+            return SCALAR;
+        }
+    }
+
+    /** Returns a short name of these kernels, such as "scalar". */
+    public abstract String name();
+
+    /** Adds SOURCE[i] to TARGET[i]. */
+    public abstract void add(double[] target, double[] source, int from, int to);
+
+    /**
+     * Divides TARGET[i] by DIVISOR[i] for the indices whose bit is set in PRESENT;
+     * the others are left unchanged.
+     */
+    public abstract void divide(double[] target, double[] divisor, long[] present, int from, int to);
+
+    /** Divides TARGET[i] by DIVISOR. */
+    public abstract void divide(double[] target, double divisor, int from, int to);
+
+    /** Returns the sum of VALUES[i]. */
+    public abstract double sum(double[] values, int from, int to);
+
+    /**
+     * Adds COUNTS[COUNTSOFFSET + i] / TOTALS[i] to TARGET[i] and sets bit i of PRESENT,
+     * for every i whose count is not NaN; NaN counts are holes and are skipped. Returns
+     * false, changing nothing, if TOTALS[i] is NaN for such an i.
+     */
+    public abstract boolean addQuotients(double[] counts, int countsOffset, double[] totals,
+                                         double[] target, long[] present, int from, int to);
+
+    /**
+     * Sets TARGET[i], for every i present in PRESENT, to the mean of SOURCE[j] over the
+     * present j in (i - WINDOW, i], and TARGET[i] to 0 for the others. Indices before
+     * FROM count as absent. TARGET must not be SOURCE.
+     */
+    public abstract void movingAverage(double[] source, long[] present, int window,
+                                       double[] target, int from, int to);
+
+    /** Returns whether bit I of PRESENT is set. */
+    static boolean isSet(long[] present, int i) {
+        return (present[i >>> 6] & (1L << i)) != 0;
+    }
+}
@@ -57,19 +57,13 @@ public class TimeSeries extends TreeMap<Integer, Double> {
      * should store the value from the TimeSeries that contains that year.
      */
     public TimeSeries plus(TimeSeries ts) {
-        // Create a new TimeSeries to store the result
+        // Create a new TimeSeries holding a copy of this TimeSeries
         TimeSeries result = new TimeSeries();
-
-        // Copy all data from current TimeSeries to result
         result.putAll(this);
 
-        // Iterate through each year in the parameter TimeSeries
-        for (Integer year : ts.keySet()) { // ts.keySet()：获取ts中所有的年份集合
-            if (this.containsKey(year)) {
-                result.put(year, this.get(year) + ts.get(year));
-            } else {
-                result.put(year, ts.get(year));
-            }
+        // Add each entry of the parameter TimeSeries with a single lookup per year
+        for (Map.Entry<Integer, Double> entry : ts.entrySet()) {
+            result.merge(entry.getKey(), entry.getValue(), Double::sum);
         }
         return result;
     }
@@ -86,13 +80,136 @@ public class TimeSeries extends TreeMap<Integer, Double> {
     public TimeSeries dividedBy(TimeSeries ts) {
         TimeSeries result = new TimeSeries();
 
-        for (Integer year : this.keySet()) {
-            if (!ts.containsKey(year)) {
+        for (Map.Entry<Integer, Double> entry : this.entrySet()) {
+            Double divisor = ts.get(entry.getKey());
+            if (divisor == null) {
                 throw new IllegalArgumentException();
             }
-            result.put(year, this.get(year) / ts.get(year));
+            result.put(entry.getKey(), entry.getValue() / divisor);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a new TimeSeries with the same years, where the value of each year is the
+     * mean of the values this TimeSeries has in the WINDOW years ending with it. Years
+     * without a value do not count towards the mean. Reads each entry once, keeping the
+     * entries of the current window in a ring.
+     */
+    public TimeSeries rollingMean(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive: " + window);
+        }
+        TimeSeries result = new TimeSeries();
+        // Holds the years in [year - window, year]
+        int[] ringYears = new int[Math.max(Math.min(window, size() - 1) + 1, 1)];
+        double[] ringValues = new double[ringYears.length];
+        int head = 0;
+        int count = 0;
+        double sum = 0;
+        for (Map.Entry<Integer, Double> entry : entrySet()) {
+            int year = entry.getKey();
+            // Years leave the window in the same order, and the sum is updated in the
+            // same order, as in DenseTimeSeries.movingAverage, so both give equal results
+            while (count > 0 && ringYears[head] < year - window) {
+                sum -= ringValues[head];
+                head = (head + 1) % ringYears.length;
+                count -= 1;
+            }
+            int tail = (head + count) % ringYears.length;
+            ringYears[tail] = year;
+            ringValues[tail] = entry.getValue();
+            sum += entry.getValue();
+            count += 1;
+            if (ringYears[head] == year - window) {
+                sum -= ringValues[head];
+                head = (head + 1) % ringYears.length;
+                count -= 1;
+            }
+            result.put(year, sum / count);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new TimeSeries with the same years, exponentially smoothed with the
+     * smoothing factor ALPHA, which must be in (0, 1]: the first year keeps its value,
+     * and each later year gets ALPHA times its value plus 1 - ALPHA times the smoothed
+     * value of the year before it in this TimeSeries.
+     */
+    public TimeSeries exponentialSmoothing(double alpha) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("Smoothing factor must be in (0, 1]: " + alpha);
+        }
+        TimeSeries result = new TimeSeries();
+        boolean first = true;
+        double smoothed = 0;
+        for (Map.Entry<Integer, Double> entry : entrySet()) {
+            smoothed = first ? entry.getValue() : alpha * entry.getValue() + (1 - alpha) * smoothed;
+            first = false;
+            result.put(entry.getKey(), smoothed);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the year-over-year change of this TimeSeries: for each year whose previous
+     * year also has a value, the value of that year minus the value of the year before.
+     * Years without a previous year are left out.
+     */
+    public TimeSeries yearOverYearDelta() {
+        TimeSeries result = new TimeSeries();
+        int previousYear = Integer.MIN_VALUE;
+        double previous = 0;
+        for (Map.Entry<Integer, Double> entry : entrySet()) {
+            int year = entry.getKey();
+            if (year - 1 == previousYear) {
+                result.put(year, entry.getValue() - previous);
+            }
+            previousYear = year;
+            previous = entry.getValue();
         }
+        return result;
+    }
 
+    /**
+     * Returns the year with the largest value, the earliest one if several have it, or
+     * -1 if this TimeSeries has no years. NaN values are never the largest.
+     */
+    public int argmaxYear() {
+        int best = -1;
+        double max = Double.NEGATIVE_INFINITY;
+        for (Map.Entry<Integer, Double> entry : entrySet()) {
+            if (entry.getValue() > max || (best == -1 && entry.getValue() == max)) {
+                best = entry.getKey();
+                max = entry.getValue();
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns a new TimeSeries with the same years, where each value is replaced by its
+     * z-score: its distance from the mean of all values, in population standard
+     * deviations. If all values are equal, every z-score is 0. The mean and deviation
+     * are computed in one pass with Welford's method.
+     */
+    public TimeSeries zScores() {
+        long n = 0;
+        double mean = 0;
+        double squares = 0;
+        for (double value : values()) {
+            n += 1;
+            double delta = value - mean;
+            mean += delta / n;
+            squares += delta * (value - mean);
+        }
+        double deviation = n == 0 ? 0 : Math.sqrt(squares / n);
+        TimeSeries result = new TimeSeries();
+        for (Map.Entry<Integer, Double> entry : entrySet()) {
+            result.put(entry.getKey(), deviation == 0 ? 0.0 : (entry.getValue() - mean) / deviation);
+        }
         return result;
     }
 
@@ -0,0 +1,193 @@
+package ngrams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A chain of temporal operators applied to each series of a history query, parsed
+ * from a spec such as "rollingMean:5,zScore". The operators run left to right:
+ *
+ *     rollingMean:W   mean over the W years ending with each year
+ *     smooth:ALPHA    exponential smoothing with factor ALPHA in (0, 1]
+ *     delta           year-over-year change
+ *     argmax          only the year with the largest value
+ *     zScore          distance from the mean in standard deviations
+ *
+ * Names are case-insensitive. On a DenseTimeSeries every step runs in place, or
+ * into one scratch series for rollingMean, so a chain builds no intermediate
+ * series; each step follows the TimeSeries method of the same name.
+ */
+public final class TimeSeriesTransform {
+    /** The transform that leaves a series unchanged. */
+    public static final TimeSeriesTransform IDENTITY = new TimeSeriesTransform(List.of());
+    /** Most operators in one chain. */
+    public static final int MAX_STEPS = 16;
+
+    private enum Operator {
+        ROLLING_MEAN("rollingMean", true),
+        SMOOTH("smooth", true),
+        DELTA("delta", false),
+        ARGMAX("argmax", false),
+        Z_SCORE("zScore", false);
+
+        private final String label;
+        private final boolean hasArgument;
+
+        Operator(String label, boolean hasArgument) {
+            this.label = label;
+            this.hasArgument = hasArgument;
+        }
+    }
+
+    private record Step(Operator operator, double argument) {
+        @Override
+        public String toString() {
+            if (!operator.hasArgument) {
+                return operator.label;
+            }
+            return operator.label + ":" + (operator == Operator.ROLLING_MEAN
+                    ? String.valueOf((int) argument) : String.valueOf(argument));
+        }
+    }
+
+    private final List<Step> steps;
+
+    private TimeSeriesTransform(List<Step> steps) {
+        this.steps = steps;
+    }
+
+    /**
+     * Returns the transform described by SPEC, or IDENTITY if SPEC is null or blank.
+     * Throws an IllegalArgumentException if SPEC is not a valid chain.
+     */
+    public static TimeSeriesTransform parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            return IDENTITY;
+        }
+        String[] parts = spec.split(",", -1);
+        if (parts.length > MAX_STEPS) {
+            throw new IllegalArgumentException("At most " + MAX_STEPS + " operators per transform");
+        }
+        List<Step> steps = new ArrayList<>(parts.length);
+        for (String part : parts) {
+            steps.add(parseStep(part.trim()));
+        }
+        return new TimeSeriesTransform(List.copyOf(steps));
+    }
+
+    private static Step parseStep(String part) {
+        int colon = part.indexOf(':');
+        String name = colon == -1 ? part : part.substring(0, colon).trim();
+        String argument = colon == -1 ? null : part.substring(colon + 1).trim();
+        for (Operator operator : Operator.values()) {
+            if (!operator.label.toLowerCase(Locale.ROOT).equals(name.toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+            if (operator.hasArgument != (argument != null)) {
+                throw new IllegalArgumentException(operator.hasArgument
+                        ? "Operator " + operator.label + " needs an argument"
+                        : "Operator " + operator.label + " takes no argument");
+            }
+            try {
+                if (operator == Operator.ROLLING_MEAN) {
+                    int window = Integer.parseInt(argument);
+                    if (window < 1) {
+                        throw new IllegalArgumentException("Window must be positive: " + window);
+                    }
+                    return new Step(operator, window);
+                }
+                if (operator == Operator.SMOOTH) {
+                    double alpha = Double.parseDouble(argument);
+                    if (!(alpha > 0 && alpha <= 1)) {
+                        throw new IllegalArgumentException("Smoothing factor must be in (0, 1]: " + alpha);
+                    }
+                    return new Step(operator, alpha);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid argument for " + operator.label + ": " + argument);
+            }
+            return new Step(operator, 0);
+        }
+        throw new IllegalArgumentException("Unknown operator: " + name);
+    }
+
+    /** Returns whether this transform leaves every series unchanged. */
+    public boolean isIdentity() {
+        return steps.isEmpty();
+    }
+
+    /**
+     * Applies this transform to SERIES and returns the series that holds the result:
+     * SERIES itself or SCRATCH, whose previous contents are lost either way.
+     */
+    public DenseTimeSeries apply(DenseTimeSeries series, DenseTimeSeries scratch) {
+        for (Step step : steps) {
+            switch (step.operator) {
+                case ROLLING_MEAN -> {
+                    DenseTimeSeries averaged = series.movingAverageInto((int) step.argument, scratch);
+                    scratch = series;
+                    series = averaged;
+                }
+                case SMOOTH -> series.exponentialSmoothingInPlace(step.argument);
+                case DELTA -> series.yearOverYearDeltaInPlace();
+                case ARGMAX -> {
+                    int year = series.argmaxYear();
+                    double value = series.get(year);
+                    series.clear();
+                    if (year != -1) {
+                        series.put(year, value);
+                    }
+                }
+                case Z_SCORE -> series.zScoresInPlace();
+            }
+        }
+        return series;
+    }
+
+    /** Returns a new TimeSeries with this transform applied to SERIES. */
+    public TimeSeries apply(TimeSeries series) {
+        TimeSeries result = series;
+        for (Step step : steps) {
+            result = switch (step.operator) {
+                case ROLLING_MEAN -> result.rollingMean((int) step.argument);
+                case SMOOTH -> result.exponentialSmoothing(step.argument);
+                case DELTA -> result.yearOverYearDelta();
+                case ARGMAX -> {
+                    TimeSeries peak = new TimeSeries();
+                    int year = result.argmaxYear();
+                    if (year != -1) {
+                        peak.put(year, result.get(year));
+                    }
+                    yield peak;
+                }
+                case Z_SCORE -> result.zScores();
+            };
+        }
+        if (result == series) {
+            result = new TimeSeries();
+            result.putAll(series);
+        }
+        return result;
+    }
+
+    /** Returns the spec of this transform in canonical form, which parse accepts. */
+    @Override
+    public String toString() {
+        List<String> parts = new ArrayList<>(steps.size());
+        for (Step step : steps) {
+            parts.add(step.toString());
+        }
+        return String.join(",", parts);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof TimeSeriesTransform other && steps.equals(other.steps);
+    }
+
+    @Override
+    public int hashCode() {
+        return steps.hashCode();
+    }
+}
@@ -0,0 +1,77 @@
+package ngrams;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A process-wide dictionary that gives every word of the loaded dataset one dense
+ * int id and one canonical String.
+ *
+ * The dictionary is filled while the data is loaded: add returns the id of a word,
+ * assigning the next free id to a new word. Once everything is loaded, freeze()
+ * makes it immutable, and from then on it may be shared by any number of threads.
+ * An NGramMap and a WordNet keyed on the same dictionary use the same id for a
+ * word, so joining their data is an array lookup instead of a String hash.
+ */
+public final class WordDictionary implements WordIndex {
+    /** Returned by {@link #id(String)} for unknown words. */
+    public static final int NOT_FOUND = WordIndex.NOT_FOUND;
+
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private String[] words = new String[16];
+    private int size;
+    private boolean frozen;
+
+    /**
+     * Returns the id of WORD, adding it with the next free id if it is new. Throws
+     * an IllegalStateException once the dictionary is frozen.
+     */
+    public int add(String word) {
+        Integer id = ids.get(word);
+        if (id != null) {
+            return id;
+        }
+        if (frozen) {
+            throw new IllegalStateException("Dictionary is frozen");
+        }
+        if (size == words.length) {
+            words = Arrays.copyOf(words, size * 2);
+        }
+        words[size] = word;
+        ids.put(word, size);
+        return size++;
+    }
+
+    /** Returns the id of WORD, or NOT_FOUND if it is not in this dictionary. */
+    @Override
+    public int id(String word) {
+        Integer id = ids.get(word);
+        return id == null ? NOT_FOUND : id;
+    }
+
+    /** Returns the canonical String of the word with the given ID. */
+    @Override
+    public String word(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("No word with id " + id);
+        }
+        return words[id];
+    }
+
+    /** Returns the number of words in this dictionary. */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Makes this dictionary immutable. */
+    public void freeze() {
+        frozen = true;
+        words = Arrays.copyOf(words, size);
+    }
+
+    /** Returns whether this dictionary has been frozen. */
+    public boolean isFrozen() {
+        return frozen;
+    }
+}
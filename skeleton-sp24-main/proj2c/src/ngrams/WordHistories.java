@@ -0,0 +1,360 @@
+package ngrams;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Columnar storage for the count history of every word in an NGramMap.
+ *
+ * Each word is given a dense int id by a {@link WordIndex}. The counts of word i
+ * live in one shared column of doubles as the run values[offsets[i] .. offsets[i]
+ * + lengths[i]), where the j-th entry of the run is the count for year
+ * firstYears[i] + j. A run only spans the years between the first and the last
+ * year recorded for its word; years inside the run that have no data are stored
+ * as NaN.
+ *
+ * Next to the value column there is a prefix column of the same shape whose
+ * j-th entry of run i is the sum of the first j + 1 counts of word i (holes
+ * count as 0). Summing a word's counts over any range of years is then a
+ * difference of two prefix entries.
+ *
+ * Compared to one TreeMap per word this needs no boxed Integer/Double and no
+ * tree entry per data point, and a range query is a scan over adjacent memory.
+ * The columns are buffers so that they can either wrap heap arrays (see
+ * {@link Builder}) or point straight into a memory-mapped snapshot file (see
+ * {@link NGramSnapshot}). Instances are immutable.
+ */
+class WordHistories {
+    /** Returned by {@link #id(String)} for words that have no history. */
+    static final int NOT_FOUND = WordIndex.NOT_FOUND;
+
+    private final WordIndex index;
+    private final IntBuffer firstYears;
+    private final IntBuffer offsets;
+    private final IntBuffer lengths;
+    private final DoubleBuffer values;
+    private final DoubleBuffer prefixes;
+
+    WordHistories(WordIndex index, IntBuffer firstYears, IntBuffer offsets, IntBuffer lengths,
+                  DoubleBuffer values, DoubleBuffer prefixes) {
+        this.index = index;
+        this.firstYears = firstYears;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.values = values;
+        this.prefixes = prefixes;
+    }
+
+    /**
+     * Returns a WordHistories with the same columns whose words are looked up in
+     * DICTIONARY. Word i of this WordHistories must have id i in DICTIONARY; words
+     * the dictionary gains later have ids of size() and up and no history.
+     */
+    WordHistories withDictionary(WordDictionary dictionary) {
+        int rows = size();
+        WordIndex keyed = new WordIndex() {
+            @Override
+            public int id(String word) {
+                int id = dictionary.id(word);
+                return id < rows ? id : NOT_FOUND;
+            }
+
+            @Override
+            public String word(int id) {
+                return dictionary.word(id);
+            }
+
+            @Override
+            public int size() {
+                return rows;
+            }
+        };
+        return new WordHistories(keyed, firstYears, offsets, lengths, values, prefixes);
+    }
+
+    /** Returns the id of WORD, or NOT_FOUND if WORD has no history. */
+    int id(String word) {
+        return index.id(word);
+    }
+
+    /** Returns the word with the given ID. */
+    String word(int id) {
+        return index.word(id);
+    }
+
+    /** Returns the number of words stored. */
+    int size() {
+        return index.size();
+    }
+
+    /** Returns the first year of the run of word ID. */
+    int firstYear(int id) {
+        return firstYears.get(id);
+    }
+
+    /** Returns the start of the run of word ID in the value column. */
+    int offset(int id) {
+        return offsets.get(id);
+    }
+
+    /** Returns the number of years spanned by the run of word ID. */
+    int length(int id) {
+        return lengths.get(id);
+    }
+
+    /** Returns the value column entry at INDEX (NaN for a year without data). */
+    double value(int index) {
+        return values.get(index);
+    }
+
+    /** Returns the prefix column entry at INDEX. */
+    double prefix(int index) {
+        return prefixes.get(index);
+    }
+
+    /** Returns the total number of entries in the value column. */
+    int valueCount() {
+        return values.limit();
+    }
+
+    /** Returns the count of word ID in YEAR, or NaN if there is none. */
+    double count(int id, int year) {
+        int index = year - firstYears.get(id);
+        if (index < 0 || index >= lengths.get(id)) {
+            return Double.NaN;
+        }
+        return values.get(offsets.get(id) + index);
+    }
+
+    /**
+     * Returns the sum of the counts of word ID between STARTYEAR and ENDYEAR
+     * (inclusive), in constant time.
+     */
+    double sum(int id, int startYear, int endYear) {
+        int first = firstYears.get(id);
+        int from = Math.max(startYear, first) - first;
+        int to = Math.min(endYear, first + lengths.get(id) - 1) - first;
+        if (from > to) {
+            return 0;
+        }
+        int offset = offsets.get(id);
+        double sum = prefixes.get(offset + to);
+        if (from > 0) {
+            sum -= prefixes.get(offset + from - 1);
+        }
+        return sum;
+    }
+
+    /**
+     * Puts every count of word ID between STARTYEAR and ENDYEAR (inclusive)
+     * into TARGET.
+     */
+    void copyInto(int id, int startYear, int endYear, TimeSeries target) {
+        int first = firstYears.get(id);
+        int from = Math.max(startYear, first);
+        int to = Math.min(endYear, first + lengths.get(id) - 1);
+        int base = offsets.get(id) - first;
+        for (int year = from; year <= to; year += 1) {
+            double value = values.get(base + year);
+            if (!Double.isNaN(value)) {
+                target.put(year, value);
+            }
+        }
+    }
+
+    /**
+     * Puts the count of word ID divided by TOTALS[year - MIN_YEAR] into TARGET for
+     * every year between STARTYEAR and ENDYEAR (inclusive) that word ID has data for.
+     * Throws an IllegalArgumentException if TOTALS has no value (NaN) for such a year,
+     * just like {@link TimeSeries#dividedBy(TimeSeries)}.
+     */
+    void weightInto(int id, int startYear, int endYear, double[] totals, TimeSeries target) {
+        int first = firstYears.get(id);
+        int from = Math.max(startYear, first);
+        int to = Math.min(endYear, first + lengths.get(id) - 1);
+        int base = offsets.get(id) - first;
+        for (int year = from; year <= to; year += 1) {
+            double value = values.get(base + year);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            double total = totals[year - TimeSeries.MIN_YEAR];
+            if (Double.isNaN(total)) {
+                throw new IllegalArgumentException();
+            }
+            target.put(year, value / total);
+        }
+    }
+
+    /**
+     * Adds the weight history of word ID between STARTYEAR and ENDYEAR (inclusive)
+     * to TARGET, where TOTALS is indexed by year - MIN_YEAR. This fuses
+     * {@link #weightInto} with DenseTimeSeries.plusInPlace so that no intermediate
+     * series is built, and throws the same IllegalArgumentException for a year
+     * without a total, leaving TARGET unchanged. The division and addition run in
+     * one SeriesKernels.addQuotients over the word's run.
+     */
+    void addWeightsInto(int id, int startYear, int endYear, double[] totals,
+                        DenseTimeSeries target) {
+        int first = firstYears.get(id);
+        int from = Math.max(Math.max(startYear, first), TimeSeries.MIN_YEAR);
+        int to = Math.min(Math.min(endYear, first + lengths.get(id) - 1), TimeSeries.MAX_YEAR);
+        if (from > to) {
+            return;
+        }
+        int base = offsets.get(id) - first;
+        int fromIndex = from - TimeSeries.MIN_YEAR;
+        int toIndex = to - TimeSeries.MIN_YEAR + 1;
+        double[] counts;
+        int countsOffset;
+        if (values.hasArray()) {
+            // Year index i of the word is at values[base + MIN_YEAR + i]
+            counts = values.array();
+            countsOffset = values.arrayOffset() + base + TimeSeries.MIN_YEAR;
+        } else {
+            // A mapped snapshot: copy the run out so that the kernel sees an array
+            counts = new double[toIndex - fromIndex];
+            values.get(base + from, counts);
+            countsOffset = -fromIndex;
+        }
+        if (!SeriesKernels.get().addQuotients(counts, countsOffset, totals,
+                target.values(), target.present(), fromIndex, toIndex)) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Collects (word, year, count) triples in flat primitive arrays and packs
+     * them into a WordHistories once loading is done. Later triples for the same
+     * word and year replace earlier ones.
+     */
+    static class Builder {
+        /** Most values, and most points, one column can hold: the largest array Java allocates. */
+        static final int MAX_VALUES = Integer.MAX_VALUE - 8;
+
+        private final HashMap<String, Integer> ids = new HashMap<>();
+        private String[] words = new String[16];
+        private int[] pointIds = new int[64];
+        private int[] pointYears = new int[64];
+        private double[] pointCounts = new double[64];
+        private int points;
+
+        /** Records that WORD appeared COUNT times in YEAR. */
+        void add(String word, int year, double count) {
+            add(intern(word), year, count);
+        }
+
+        /** Returns the id of WORD in this builder, assigning a new one if needed. */
+        int intern(String word) {
+            Integer id = ids.get(word);
+            if (id == null) {
+                id = ids.size();
+                if (id == words.length) {
+                    words = Arrays.copyOf(words, id * 2);
+                }
+                words[id] = word;
+                ids.put(word, id);
+            }
+            return id;
+        }
+
+        /** Records that the word with builder id ID appeared COUNT times in YEAR. */
+        void add(int id, int year, double count) {
+            if (points == pointIds.length) {
+                if (points == MAX_VALUES) {
+                    throw new IllegalStateException("More than " + MAX_VALUES + " counts to load");
+                }
+                int capacity = (int) Math.min(2L * points, MAX_VALUES);
+                pointIds = Arrays.copyOf(pointIds, capacity);
+                pointYears = Arrays.copyOf(pointYears, capacity);
+                pointCounts = Arrays.copyOf(pointCounts, capacity);
+            }
+            pointIds[points] = id;
+            pointYears[points] = year;
+            pointCounts[points] = count;
+            points += 1;
+        }
+
+        /**
+         * Appends every count of HISTORIES to this builder, word by word in id order,
+         * so that the words keep their ids if this builder was empty.
+         */
+        void addAll(WordHistories histories) {
+            for (int id = 0; id < histories.size(); id += 1) {
+                int builderId = intern(histories.word(id));
+                int firstYear = histories.firstYear(id);
+                int offset = histories.offset(id);
+                for (int i = 0; i < histories.length(id); i += 1) {
+                    double value = histories.value(offset + i);
+                    if (!Double.isNaN(value)) {
+                        add(builderId, firstYear + i, value);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Appends every triple of OTHER to this builder, as if they had been added
+         * here after the triples already present.
+         */
+        void addAll(Builder other) {
+            int[] remap = new int[other.ids.size()];
+            for (int id = 0; id < remap.length; id += 1) {
+                remap[id] = intern(other.words[id]);
+            }
+            for (int p = 0; p < other.points; p += 1) {
+                add(remap[other.pointIds[p]], other.pointYears[p], other.pointCounts[p]);
+            }
+        }
+
+        /** Packs everything added so far into an immutable WordHistories. */
+        WordHistories build() {
+            int n = ids.size();
+            int[] firstYears = new int[n];
+            int[] lastYears = new int[n];
+            Arrays.fill(firstYears, Integer.MAX_VALUE);
+            Arrays.fill(lastYears, Integer.MIN_VALUE);
+            for (int p = 0; p < points; p += 1) {
+                int id = pointIds[p];
+                firstYears[id] = Math.min(firstYears[id], pointYears[p]);
+                lastYears[id] = Math.max(lastYears[id], pointYears[p]);
+            }
+
+            int[] offsets = new int[n];
+            int[] lengths = new int[n];
+            int total = 0;
+            for (int id = 0; id < n; id += 1) {
+                offsets[id] = total;
+                lengths[id] = lastYears[id] - firstYears[id] + 1;
+                if (lengths[id] > MAX_VALUES - total) {
+                    throw new IllegalStateException("The word histories span more than " + MAX_VALUES
+                            + " years in total, more than one column can hold");
+                }
+                total += lengths[id];
+            }
+
+            double[] values = new double[total];
+            Arrays.fill(values, Double.NaN);
+            for (int p = 0; p < points; p += 1) {
+                int id = pointIds[p];
+                values[offsets[id] + pointYears[p] - firstYears[id]] = pointCounts[p];
+            }
+
+            double[] prefixes = new double[total];
+            for (int id = 0; id < n; id += 1) {
+                double sum = 0;
+                for (int i = offsets[id]; i < offsets[id] + lengths[id]; i += 1) {
+                    if (!Double.isNaN(values[i])) {
+                        sum += values[i];
+                    }
+                    prefixes[i] = sum;
+                }
+            }
+            return new WordHistories(new HashWordIndex(ids, Arrays.copyOf(words, n)),
+                    IntBuffer.wrap(firstYears), IntBuffer.wrap(offsets), IntBuffer.wrap(lengths),
+                    DoubleBuffer.wrap(values), DoubleBuffer.wrap(prefixes));
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package ngrams;
+
+/**
+ * Maps the words of an NGramMap to dense int ids 0 .. size() - 1 and back.
+ */
+interface WordIndex {
+    /** Returned by {@link #id(String)} for unknown words. */
+    int NOT_FOUND = -1;
+
+    /** Returns the id of WORD, or NOT_FOUND if it is not in this index. */
+    int id(String word);
+
+    /** Returns the word with the given ID. */
+    String word(int id);
+
+    /** Returns the number of words in this index. */
+    int size();
+}
@@ -0,0 +1,249 @@
+package plotting;
+
+import ngrams.TimeSeries;
+import org.knowm.xchart.XYChart;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Renders time series charts to PNG on a pool of rendering threads.
+ *
+ * Each rendering thread draws into a reusable 800x600 BufferedImage and encodes
+ * it with a reusable PNG writer and output buffer, at a compression level that
+ * trades a slightly larger image for a much faster encode. Rendered PNGs are kept
+ * in a size-bounded cache keyed by (words, startYear, endYear, variant), so a repeated
+ * chart is neither drawn nor encoded again; concurrent requests for the same
+ * chart share one rendering.
+ *
+ * The time series behind a chart must depend only on its key.
+ */
+public class ChartRenderer implements AutoCloseable {
+    public static final int WIDTH = 800;
+    public static final int HEIGHT = 600;
+    /**
+     * PNG compression quality passed to the ImageIO writer: 0 is the smallest and
+     * slowest, 1 is no compression. ImageIO's default is 0.5.
+     */
+    public static final float DEFAULT_COMPRESSION_QUALITY = 0.75f;
+
+    private final ExecutorService renderPool;
+    private final BlockingQueue<Canvas> canvases;
+    private final float compressionQuality;
+    private final int cacheCapacity;
+    /** Finished or running renders in access order; guarded by itself. */
+    private final LinkedHashMap<Key, CompletableFuture<byte[]>> cache;
+
+    /** Identifies a chart. */
+    private record Key(List<String> words, int startYear, int endYear, String variant) { }
+
+    /**
+     * Creates a renderer with THREADS rendering threads that caches up to
+     * CACHECAPACITY charts, encoded with COMPRESSIONQUALITY.
+     */
+    public ChartRenderer(int threads, int cacheCapacity, float compressionQuality) {
+        if (threads <= 0 || cacheCapacity < 0 || compressionQuality < 0 || compressionQuality > 1) {
+            throw new IllegalArgumentException("Invalid renderer settings");
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.renderPool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "ngordnet-render-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.canvases = new ArrayBlockingQueue<>(threads);
+        this.compressionQuality = compressionQuality;
+        this.cacheCapacity = cacheCapacity;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompletableFuture<byte[]>> eldest) {
+                return size() > ChartRenderer.this.cacheCapacity;
+            }
+        };
+    }
+
+    /** Returns a renderer with one rendering thread per available processor. */
+    public static ChartRenderer forAvailableProcessors(int cacheCapacity) {
+        return new ChartRenderer(Runtime.getRuntime().availableProcessors(), cacheCapacity,
+                DEFAULT_COMPRESSION_QUALITY);
+    }
+
+    /**
+     * Returns a future PNG of the chart of WORDS between STARTYEAR and ENDYEAR. SERIES
+     * is only called, on a rendering thread, if the chart is not cached; it must return
+     * one TimeSeries per word. The returned array must not be modified.
+     */
+    public CompletableFuture<byte[]> renderPng(List<String> words, int startYear, int endYear,
+                                               Supplier<List<TimeSeries>> series) {
+        return renderPng(words, startYear, endYear, null, series);
+    }
+
+    /**
+     * Like renderPng(WORDS, STARTYEAR, ENDYEAR, SERIES), for a chart whose series also
+     * depend on VARIANT, such as a transform applied to them. Charts of different
+     * variants are cached apart; a null VARIANT is the plain chart.
+     */
+    public CompletableFuture<byte[]> renderPng(List<String> words, int startYear, int endYear,
+                                               String variant, Supplier<List<TimeSeries>> series) {
+        Key key = new Key(List.copyOf(words), startYear, endYear, variant);
+        CompletableFuture<byte[]> future;
+        synchronized (cache) {
+            future = cache.get(key);
+            if (future != null) {
+                return future;
+            }
+            future = new CompletableFuture<>();
+            if (cacheCapacity > 0) {
+                cache.put(key, future);
+            }
+        }
+
+        CompletableFuture<byte[]> result = future;
+        try {
+            renderPool.execute(() -> {
+                try {
+                    result.complete(render(key.words(), series.get()));
+                } catch (RuntimeException | Error e) {
+                    fail(key, result, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            fail(key, result, e);
+        }
+        return result;
+    }
+
+    /** Completes RESULT with E and removes it from the cache: failed renders are not cached. */
+    private void fail(Key key, CompletableFuture<byte[]> result, Throwable e) {
+        synchronized (cache) {
+            cache.remove(key, result);
+        }
+        result.completeExceptionally(e);
+    }
+
+    /** Draws and encodes one chart on the calling rendering thread. */
+    private byte[] render(List<String> words, List<TimeSeries> lts) {
+        XYChart chart = Plotter.generateTimeSeriesChart(words, lts);
+        Canvas canvas = canvases.poll();
+        if (canvas == null) {
+            canvas = new Canvas();
+        }
+        try {
+            return canvas.draw(chart, compressionQuality);
+        } finally {
+            canvases.offer(canvas);
+        }
+    }
+
+    /**
+     * Forgets every cached chart, for when the data behind the charts has changed.
+     * Renders already running still complete for the callers waiting on them.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /** Writes PNG Base64-encoded to OUT without building the encoded String. */
+    public static void writeBase64(byte[] png, OutputStream out) throws IOException {
+        OutputStream base64 = Base64.getEncoder().wrap(new NonClosingOutputStream(out));
+        base64.write(png);
+        // Closing the encoder writes the final padding; OUT itself stays open
+        base64.close();
+    }
+
+    /** Returns PNG Base64-encoded, as Plotter.encodeChartAsString does. */
+    public static String toBase64(byte[] png) {
+        return Base64.getEncoder().encodeToString(png);
+    }
+
+    /** Stops the rendering threads once the queued renders are done. */
+    @Override
+    public void close() {
+        renderPool.shutdown();
+    }
+
+    /** The reusable image, PNG writer and output buffer of one rendering thread. */
+    private static class Canvas {
+        private final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        private final ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 18);
+
+        byte[] draw(XYChart chart, float compressionQuality) {
+            // The chart paints its whole background, so nothing of the last chart is left
+            Graphics2D graphics = image.createGraphics();
+            try {
+                chart.paint(graphics, WIDTH, HEIGHT);
+            } finally {
+                graphics.dispose();
+            }
+
+            buffer.reset();
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(compressionQuality);
+            // A memory-cached stream avoids the temporary file ImageIO.write may use
+            try (ImageOutputStream output = new MemoryCacheImageOutputStream(buffer)) {
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                writer.reset();
+            }
+            return buffer.toByteArray();
+        }
+    }
+
+    /** Passes writes through to the wrapped stream but ignores close(). */
+    private static class NonClosingOutputStream extends OutputStream {
+        private final OutputStream out;
+
+        NonClosingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import browser.NgordnetOutputFormat;
+import browser.NgordnetQuery;
+import browser.NgordnetQueryType;
+import main.AutocompleteHandler;
+import main.AutocompleteIndex;
+import main.AutocompleteIndex.Completion;
+import main.LiveDataset;
+import main.NgordnetDataset;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Tests for prefix completion ranked by total count. */
+public class AutocompleteIndexTest {
+    @TempDir
+    Path dir;
+
+    private NgordnetDataset load(List<String> wordLines, List<String> synsetLines) throws IOException {
+        Path synsets = dir.resolve("synsets.txt");
+        Path hyponyms = dir.resolve("hyponyms.txt");
+        Path words = dir.resolve("words.csv");
+        Path counts = dir.resolve("counts.csv");
+        Files.write(synsets, synsetLines);
+        Files.write(hyponyms, List.of());
+        Files.write(words, wordLines);
+        Files.write(counts, List.of("2000,100,1,1"));
+        return NgordnetDataset.load(words.toString(), counts.toString(), synsets.toString(), hyponyms.toString());
+    }
+
+    private static List<String> words(List<Completion> completions) {
+        return completions.stream().map(Completion::word).toList();
+    }
+
+    @Test
+    public void testCompletionsByCount() throws IOException {
+        NgordnetDataset dataset = load(
+                List.of("cake\t2000\t9\t1", "cake\t2001\t3\t1", "car\t2000\t20\t1", "cat\t2000\t12\t1",
+                        "dog\t2000\t50\t1", "café\t2000\t12\t1"),
+                List.of("0,cake cakewalk,a sweet", "1,caboose,a rail car"));
+        AutocompleteIndex index = AutocompleteIndex.build(dataset);
+
+        assertThat(index.size()).isEqualTo(7);
+        assertThat(index.complete("ca", 10)).containsExactly(
+                new Completion("car", 20), new Completion("café", 12), new Completion("cake", 12),
+                new Completion("cat", 12), new Completion("caboose", 0), new Completion("cakewalk", 0))
+                .inOrder();
+        assertThat(words(index.complete("ca", 2))).containsExactly("car", "café").inOrder();
+        assertThat(words(index.complete("caf", 5))).containsExactly("café");
+        assertThat(words(index.complete("", 1))).containsExactly("dog");
+        assertThat(index.complete("cakes", 5)).isEmpty();
+        assertThat(index.complete("z", 5)).isEmpty();
+        assertThat(index.complete("ca", 0)).isEmpty();
+    }
+
+    @Test
+    public void testMappedFileMatchesBuiltIndex() throws IOException {
+        Random random = new Random(61);
+        List<String> lines = new ArrayList<>();
+        Map<String, Map<Integer, Double>> counts = new HashMap<>();
+        for (int i = 0; i < 3000; i += 1) {
+            StringBuilder word = new StringBuilder();
+            for (int j = random.nextInt(6) + 1; j > 0; j -= 1) {
+                word.append((char) ('a' + random.nextInt(4)));
+            }
+            int year = 1900 + random.nextInt(100);
+            int count = random.nextInt(50);
+            lines.add(word + "\t" + year + "\t" + count + "\t1");
+            // A later line for the same word and year replaces the count
+            counts.computeIfAbsent(word.toString(), w -> new HashMap<>()).put(year, (double) count);
+        }
+        // The words file must list each word's lines together
+        lines.sort(Comparator.comparing(line -> line.substring(0, line.indexOf('\t'))));
+        AutocompleteIndex built = AutocompleteIndex.build(load(lines, List.of("0,zzz,filler")));
+        Path file = dir.resolve("autocomplete.index");
+        built.write(file);
+        AutocompleteIndex mapped = AutocompleteIndex.read(file);
+
+        for (String prefix : List.of("", "a", "ab", "dcb", "bbbb", "x")) {
+            List<Completion> expected = counts.entrySet().stream()
+                    .filter(e -> e.getKey().startsWith(prefix))
+                    .map(e -> new Completion(e.getKey(),
+                            e.getValue().values().stream().mapToDouble(Double::doubleValue).sum()))
+                    .sorted(Comparator.comparingDouble(Completion::count).reversed()
+                            .thenComparing(c -> c.word().getBytes(StandardCharsets.UTF_8), Arrays::compareUnsigned))
+                    .limit(25)
+                    .toList();
+            assertThat(built.complete(prefix, 25)).isEqualTo(expected);
+            assertThat(mapped.complete(prefix, 25)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testHandlerFormats() throws IOException {
+        NgordnetDataset dataset = load(List.of("car\t2000\t20\t1", "cat\t2000\t12\t1"), List.of("0,cat,an animal"));
+        AutocompleteHandler handler = new AutocompleteHandler(AutocompleteIndex.build(dataset));
+
+        assertThat(handler.handle(new NgordnetQuery(List.of("ca"), 1900, 2020, 0, NgordnetQueryType.HYPONYMS)))
+                .isEqualTo("[car, cat]");
+        assertThat(handler.handle(new NgordnetQuery(List.of("ca"), 1900, 2020, 1, NgordnetQueryType.HYPONYMS,
+                NgordnetOutputFormat.JSON))).isEqualTo("[{\"word\":\"car\",\"count\":20.0}]");
+        assertThat(handler.handle(new NgordnetQuery(List.of("ca"), 1900, 2020, 0, NgordnetQueryType.HYPONYMS,
+                NgordnetOutputFormat.CSV))).isEqualTo("word,count\ncar,20.0\ncat,12.0\n");
+    }
+
+    /** A new generation replaces the index even when the index file cannot be written. */
+    @Test
+    public void testHandlerRebuildsOnPublish() throws Exception {
+        LiveDataset live = new LiveDataset(load(List.of("car\t2000\t20\t1"), List.of("0,car,a vehicle")));
+        AutocompleteHandler handler = new AutocompleteHandler(live, AutocompleteIndex.build(live.dataset()),
+                dir.resolve("missing").resolve("autocomplete.idx"));
+        NgordnetQuery query = new NgordnetQuery(List.of("ca"), 1900, 2020, 0, NgordnetQueryType.HYPONYMS);
+        assertThat(handler.handle(query)).isEqualTo("[car]");
+
+        live.publish(load(List.of("cat\t2000\t12\t1"), List.of("0,cat,an animal")));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!handler.handle(query).equals("[cat]") && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(handler.handle(query)).isEqualTo("[cat]");
+    }
+}
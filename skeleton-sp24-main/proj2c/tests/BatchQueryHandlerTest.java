@@ -0,0 +1,191 @@
+import browser.BatchQueryHandler;
+import browser.NgordnetQuery;
+import browser.NgordnetQueryHandler;
+import browser.QueryExecutor;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for the NDJSON answers of BatchQueryHandler. */
+public class BatchQueryHandlerTest {
+
+    /** Answers with the words of the query, and counts how often it was asked. */
+    private static class EchoHandler extends NgordnetQueryHandler {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String handle(NgordnetQuery q) {
+            calls.incrementAndGet();
+            if (q.k() < 0) {
+                throw new IllegalArgumentException("Negative k");
+            }
+            return String.valueOf(q.words());
+        }
+    }
+
+    @Test
+    public void testIdenticalQueriesRunOnce() throws Exception {
+        EchoHandler echo = new EchoHandler();
+        Map<String, JsonObject> lines = run(new BatchQueryHandler(Map.of("hyponyms", echo), null), """
+                [{"id": "a", "route": "hyponyms", "words": ["food"]},
+                 {"id": "b", "route": "hyponyms", "words": ["food"]},
+                 {"id": "c", "route": "hyponyms", "words": ["food"], "k": 5}]""");
+        assertThat(echo.calls.get()).isEqualTo(2);
+        assertThat(lines.keySet()).containsExactly("a", "b", "c");
+        for (JsonObject line : lines.values()) {
+            assertThat(line.get("status").getAsInt()).isEqualTo(200);
+            assertThat(line.get("result").getAsString()).isEqualTo("[food]");
+        }
+    }
+
+    @Test
+    public void testInvalidQueriesAndUnknownRoutes() throws Exception {
+        Map<String, JsonObject> lines = run(new BatchQueryHandler(Map.of("hyponyms", new EchoHandler()), null), """
+                [{"id": "nowords", "route": "hyponyms"},
+                 {"id": "badk", "route": "hyponyms", "words": ["food"], "k": -1},
+                 {"id": "noroute", "route": "nosuchroute", "words": ["food"]},
+                 null]""");
+        assertThat(lines.get("nowords").get("status").getAsInt()).isEqualTo(400);
+        assertThat(lines.get("badk").get("status").getAsInt()).isEqualTo(400);
+        assertThat(lines.get("badk").get("error").getAsString()).isEqualTo("Negative k");
+        assertThat(lines.get("noroute").get("status").getAsInt()).isEqualTo(404);
+        // A query without an id is named by its position
+        assertThat(lines.get("3").get("status").getAsInt()).isEqualTo(400);
+
+        BatchQueryHandler batch = new BatchQueryHandler(Map.of(), null);
+        assertThrows(IllegalArgumentException.class, () -> batch.handle("{", new StringWriter()));
+        assertThrows(IllegalArgumentException.class, () -> batch.handle("", new StringWriter()));
+    }
+
+    @Test
+    public void testRejectedWhenOtherQueriesFillTheLimits() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+        try (QueryExecutor executor = new QueryExecutor(1, 1, 0)) {
+            // Another request holds the only query admitted at once
+            requests.submit(() -> executor.execute("hyponyms", () -> {
+                release.await();
+                return "done";
+            }));
+            waitFor(() -> executor.inFlight() == 1);
+            Map<String, JsonObject> lines = run(new BatchQueryHandler(Map.of("hyponyms", new EchoHandler()),
+                    executor), "[{\"id\": \"a\", \"route\": \"hyponyms\", \"words\": [\"food\"]}]");
+            assertThat(lines.get("a").get("status").getAsInt()).isEqualTo(503);
+            release.countDown();
+        } finally {
+            requests.shutdown();
+            assertThat(requests.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    /** A batch much larger than the route's queue waits for its slots instead of being rejected. */
+    @Test
+    public void testBatchLargerThanQueueLimit() throws Exception {
+        EchoHandler echo = new EchoHandler() {
+            @Override
+            public String handle(NgordnetQuery q) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return super.handle(q);
+            }
+        };
+        int queries = 300;
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < queries; i += 1) {
+            body.append(i == 0 ? "" : ",").append("{\"id\": \"").append(i)
+                    .append("\", \"route\": \"hyponyms\", \"words\": [\"word").append(i).append("\"]}");
+        }
+        body.append("]");
+        try (QueryExecutor executor = new QueryExecutor(2, 256, 4)) {
+            Map<String, JsonObject> lines = run(new BatchQueryHandler(Map.of("hyponyms", echo), executor),
+                    body.toString());
+            assertThat(lines).hasSize(queries);
+            for (int i = 0; i < queries; i += 1) {
+                JsonObject line = lines.get(String.valueOf(i));
+                assertThat(line.get("status").getAsInt()).isEqualTo(200);
+                assertThat(line.get("result").getAsString()).isEqualTo("[word" + i + "]");
+            }
+            assertThat(executor.routeStats().get("hyponyms").rejected()).isEqualTo(0);
+        }
+        assertThat(echo.calls.get()).isEqualTo(queries);
+    }
+
+    /** When the client goes away, the queries still running are cancelled and free their slots. */
+    @Test
+    public void testClientGoneCancelsQueries() throws Exception {
+        NgordnetQueryHandler slow = new NgordnetQueryHandler() {
+            @Override
+            public String handle(NgordnetQuery q) {
+                if (!q.words().contains("fast")) {
+                    try {
+                        Thread.sleep(TimeUnit.SECONDS.toMillis(60));
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return "done";
+            }
+        };
+        Writer gone = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("Client went away");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try (QueryExecutor executor = new QueryExecutor(4, 10, 10)) {
+            BatchQueryHandler batch = new BatchQueryHandler(Map.of("hyponyms", slow), executor);
+            assertThrows(IOException.class, () -> batch.handle("""
+                    [{"id": "a", "route": "hyponyms", "words": ["fast"]},
+                     {"id": "b", "route": "hyponyms", "words": ["slow"]},
+                     {"id": "c", "route": "hyponyms", "words": ["slower"]}]""", gone));
+            waitFor(() -> executor.inFlight() == 0);
+            assertThat(executor.routeStats().get("hyponyms").completed()).isEqualTo(3);
+        }
+    }
+
+    /** Answers BODY with BATCH and returns the lines of the response, keyed by id. */
+    private static Map<String, JsonObject> run(BatchQueryHandler batch, String body) throws Exception {
+        StringWriter out = new StringWriter();
+        batch.handle(body, out);
+        Map<String, JsonObject> lines = new HashMap<>();
+        for (String line : List.of(out.toString().split("\n"))) {
+            JsonObject answer = JsonParser.parseString(line).getAsJsonObject();
+            assertThat(lines.put(answer.get("id").getAsString(), answer)).isNull();
+        }
+        return lines;
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
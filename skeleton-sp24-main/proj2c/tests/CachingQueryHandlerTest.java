@@ -0,0 +1,121 @@
+import browser.CachingQueryHandler;
+import browser.NgordnetQuery;
+import browser.NgordnetQueryHandler;
+import browser.NgordnetQueryType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for the result cache in front of query handlers. */
+public class CachingQueryHandlerTest {
+
+    /** Returns the words of a query joined together and counts how often it ran. */
+    private static class CountingHandler extends NgordnetQueryHandler {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release;
+
+        CountingHandler(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public String handle(NgordnetQuery q) {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            if (q.words().contains("fail")) {
+                throw new IllegalStateException("fail");
+            }
+            return String.join("+", q.words());
+        }
+    }
+
+    private static NgordnetQuery query(String... words) {
+        return new NgordnetQuery(new ArrayList<>(List.of(words)), 1900, 2020, 0,
+                NgordnetQueryType.HYPONYMS);
+    }
+
+    @Test
+    public void testHitsMissesAndEvictions() {
+        CountingHandler counting = new CountingHandler(new CountDownLatch(0));
+        CachingQueryHandler handler = new CachingQueryHandler("test", counting, 2);
+
+        assertThat(handler.handle(query("food"))).isEqualTo("food");
+        assertThat(handler.handle(query("food"))).isEqualTo("food");
+        assertThat(handler.handle(query("cake"))).isEqualTo("cake");
+        // "food" was used more recently than "cake", so "cake" is evicted
+        handler.handle(query("food"));
+        handler.handle(query("dog"));
+        handler.handle(query("cake"));
+
+        assertThat(counting.calls.get()).isEqualTo(4);
+        CachingQueryHandler.Stats stats = handler.stats();
+        assertThat(stats.hits()).isEqualTo(2);
+        assertThat(stats.misses()).isEqualTo(4);
+        assertThat(stats.evictions()).isEqualTo(2);
+        assertThat(stats.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testKeyIsCopied() {
+        CountingHandler counting = new CountingHandler(new CountDownLatch(0));
+        CachingQueryHandler handler = new CachingQueryHandler("test", counting, 10);
+
+        NgordnetQuery q = query("food");
+        handler.handle(q);
+        q.words().set(0, "cake");
+        assertThat(handler.handle(query("food"))).isEqualTo("food");
+        assertThat(handler.handle(q)).isEqualTo("cake");
+        assertThat(counting.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testFailuresAreNotCached() {
+        CountingHandler counting = new CountingHandler(new CountDownLatch(0));
+        CachingQueryHandler handler = new CachingQueryHandler("test", counting, 10);
+
+        assertThrows(IllegalStateException.class, () -> handler.handle(query("fail")));
+        assertThrows(IllegalStateException.class, () -> handler.handle(query("fail")));
+        assertThat(counting.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountingHandler counting = new CountingHandler(release);
+        CachingQueryHandler handler = new CachingQueryHandler("test", counting, 10);
+
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i += 1) {
+                results.add(pool.submit(() -> handler.handle(query("food", "cake"))));
+            }
+            // Give every thread time to reach the cache before the computation finishes
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertThat(result.get()).isEqualTo("food+cake");
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertThat(counting.calls.get()).isEqualTo(1);
+        assertThat(handler.stats().misses()).isEqualTo(1);
+        assertThat(handler.stats().hits()).isEqualTo(threads - 1);
+    }
+}
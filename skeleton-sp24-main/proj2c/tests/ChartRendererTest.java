@@ -0,0 +1,114 @@
+import browser.JsonStrings;
+import com.google.gson.Gson;
+import ngrams.TimeSeries;
+import org.junit.jupiter.api.Test;
+import plotting.ChartRenderer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Tests for the pooled, cached chart rendering used by HistoryHandler. */
+public class ChartRendererTest {
+
+    private static TimeSeries series(int startYear, double... values) {
+        TimeSeries ts = new TimeSeries();
+        for (int i = 0; i < values.length; i += 1) {
+            ts.put(startYear + i, values[i]);
+        }
+        return ts;
+    }
+
+    @Test
+    public void testRendersPng() throws Exception {
+        try (ChartRenderer renderer = new ChartRenderer(2, 8, ChartRenderer.DEFAULT_COMPRESSION_QUALITY)) {
+            byte[] png = renderer.renderPng(List.of("cat", "dog"), 2000, 2003,
+                    () -> List.of(series(2000, 1, 2, 3), series(2000, 3, 2, 1))).get();
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+            assertThat(image.getWidth()).isEqualTo(ChartRenderer.WIDTH);
+            assertThat(image.getHeight()).isEqualTo(ChartRenderer.HEIGHT);
+        }
+    }
+
+    @Test
+    public void testCachesByWordsAndYears() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        try (ChartRenderer renderer = new ChartRenderer(2, 8, ChartRenderer.DEFAULT_COMPRESSION_QUALITY)) {
+            byte[] first = renderer.renderPng(List.of("cat"), 2000, 2002, () -> {
+                calls.incrementAndGet();
+                return List.of(series(2000, 1, 2));
+            }).get();
+            byte[] second = renderer.renderPng(List.of("cat"), 2000, 2002, () -> {
+                calls.incrementAndGet();
+                return List.of(series(2000, 1, 2));
+            }).get();
+            assertThat(second).isSameInstanceAs(first);
+            assertThat(calls.get()).isEqualTo(1);
+
+            // A different year range is a different chart
+            renderer.renderPng(List.of("cat"), 2000, 2001, () -> {
+                calls.incrementAndGet();
+                return List.of(series(2000, 1));
+            }).get();
+            assertThat(calls.get()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void testDoesNotCacheFailures() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        try (ChartRenderer renderer = new ChartRenderer(1, 8, ChartRenderer.DEFAULT_COMPRESSION_QUALITY)) {
+            assertThat(renderer.renderPng(List.of("cat"), 2000, 2002, () -> {
+                calls.incrementAndGet();
+                throw new IllegalArgumentException("no data");
+            }).handle((png, e) -> e).get()).isNotNull();
+            renderer.renderPng(List.of("cat"), 2000, 2002, () -> {
+                calls.incrementAndGet();
+                return List.of(series(2000, 1, 2));
+            }).get();
+            assertThat(calls.get()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void testStreamedBase64MatchesGson() throws Exception {
+        byte[] png;
+        try (ChartRenderer renderer = new ChartRenderer(1, 0, ChartRenderer.DEFAULT_COMPRESSION_QUALITY)) {
+            png = renderer.renderPng(List.of("cat"), 2000, 2003,
+                    () -> List.of(series(2000, 5, 1, 4))).get();
+        }
+        String base64 = ChartRenderer.toBase64(png);
+
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        ChartRenderer.writeBase64(png, raw);
+        assertThat(raw.toString(StandardCharsets.US_ASCII)).isEqualTo(base64);
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        json.write('"');
+        OutputStream escaping = JsonStrings.escapingAscii(json);
+        ChartRenderer.writeBase64(png, escaping);
+        json.write('"');
+        assertThat(json.toString(StandardCharsets.US_ASCII)).isEqualTo(new Gson().toJson(base64));
+    }
+
+    @Test
+    public void testEscapesAsciiLikeGson() throws Exception {
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i += 1) {
+            ascii[i] = (byte) i;
+        }
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        json.write('"');
+        JsonStrings.escapingAscii(json).write(ascii);
+        json.write('"');
+        assertThat(json.toString(StandardCharsets.US_ASCII))
+                .isEqualTo(new Gson().toJson(new String(ascii, StandardCharsets.US_ASCII)));
+    }
+}
@@ -0,0 +1,119 @@
+import browser.CachingQueryHandler;
+import browser.NgordnetQuery;
+import browser.NgordnetQueryType;
+import main.DatasetWatcher;
+import main.HistoryTextHandler;
+import main.HyponymsHandler;
+import main.LiveDataset;
+import main.NgordnetDataset;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Tests for swapping in a new generation of data while handlers keep serving. */
+public class DatasetReloadTest {
+    @TempDir
+    Path dir;
+
+    private Path synsets;
+    private Path hyponyms;
+    private Path words;
+    private Path counts;
+
+    private LiveDataset load() throws IOException {
+        synsets = dir.resolve("synsets.txt");
+        hyponyms = dir.resolve("hyponyms.txt");
+        words = dir.resolve("words.csv");
+        counts = dir.resolve("counts.csv");
+        Files.write(synsets, List.of("0,food,what you eat", "1,cake,a sweet", "2,pie,another sweet"));
+        Files.write(hyponyms, List.of("0,1,2"));
+        Files.write(words, List.of("food\t2000\t5\t1", "cake\t2000\t9\t1", "pie\t2000\t2\t1"));
+        Files.write(counts, List.of("2000,100,1,1"));
+        return new LiveDataset(NgordnetDataset.load(words.toString(), counts.toString(),
+                synsets.toString(), hyponyms.toString()));
+    }
+
+    private DatasetWatcher watch(LiveDataset live) throws IOException {
+        return new DatasetWatcher(live, words.toString(), counts.toString(), synsets.toString(),
+                hyponyms.toString(), Duration.ofMillis(50));
+    }
+
+    @Test
+    public void testReloadSwapsGenerations() throws IOException {
+        LiveDataset live = load();
+        HyponymsHandler handler = new HyponymsHandler(live);
+        NgordnetQuery top = new NgordnetQuery(List.of("food"), 2000, 2000, 1, NgordnetQueryType.HYPONYMS);
+        assertThat(handler.handle(top)).isEqualTo("[cake]");
+        NgordnetDataset old = live.dataset();
+
+        Files.write(synsets, List.of("3,tart,a small pie"), StandardOpenOption.APPEND);
+        Files.write(hyponyms, List.of("2,3"), StandardOpenOption.APPEND);
+        Files.write(words, List.of("tart\t2000\t50\t1"), StandardOpenOption.APPEND);
+        try (DatasetWatcher watcher = watch(live)) {
+            assertThat(watcher.reloadNow()).isEqualTo(2);
+        }
+
+        assertThat(live.version()).isEqualTo(2);
+        assertThat(handler.handle(top)).isEqualTo("[tart]");
+        // A query still holding the old generation sees the old data
+        assertThat(old.wordNet().getHyponyms("food")).containsExactly("food", "cake", "pie");
+        assertThat(old.ngramMap().totalCount("tart", 2000, 2000)).isEqualTo(0.0);
+    }
+
+    @Test
+    public void testFailedReloadKeepsGeneration() throws IOException {
+        LiveDataset live = load();
+        Files.write(hyponyms, List.of("0,not_a_number"), StandardOpenOption.APPEND);
+        try (DatasetWatcher watcher = watch(live)) {
+            assertThat(watcher.reloadNow()).isEqualTo(1);
+        }
+        assertThat(live.dataset().wordNet().getHyponyms("food")).containsExactly("food", "cake", "pie");
+    }
+
+    @Test
+    public void testPublishClearsCaches() throws IOException {
+        LiveDataset live = load();
+        CachingQueryHandler cached = new CachingQueryHandler("hyponyms", new HyponymsHandler(live), 16);
+        live.onPublish(generation -> cached.clear());
+        HistoryTextHandler text = new HistoryTextHandler(live);
+        NgordnetQuery all = new NgordnetQuery(List.of("food"), 2000, 2000, 0, NgordnetQueryType.HYPONYMS);
+        NgordnetQuery history = new NgordnetQuery(List.of("tart"), 2000, 2000, 0, NgordnetQueryType.HYPONYMS);
+        assertThat(cached.handle(all)).isEqualTo("[cake, food, pie]");
+        assertThat(text.handle(history)).isEqualTo("tart: {}\n");
+
+        Files.write(synsets, List.of("3,tart,a small pie"), StandardOpenOption.APPEND);
+        Files.write(hyponyms, List.of("2,3"), StandardOpenOption.APPEND);
+        Files.write(words, List.of("tart\t2000\t50\t1"), StandardOpenOption.APPEND);
+        try (DatasetWatcher watcher = watch(live)) {
+            watcher.reloadNow();
+        }
+        assertThat(cached.handle(all)).isEqualTo("[cake, food, pie, tart]");
+        assertThat(text.handle(history)).isEqualTo("tart: {2000=0.5}\n");
+    }
+
+    @Test
+    public void testWatcherReloadsChangedFiles() throws Exception {
+        LiveDataset live = load();
+        // The watcher reloads on its own; the test only has to stop it
+        DatasetWatcher watcher = watch(live);
+        try {
+            Files.write(words, List.of("tart\t2000\t50\t1"), StandardOpenOption.APPEND);
+            long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+            while (live.version() == 1 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+        } finally {
+            watcher.close();
+        }
+        assertThat(live.version()).isEqualTo(2);
+        assertThat(live.dataset().ngramMap().totalCount("tart", 2000, 2000)).isEqualTo(50.0);
+    }
+}
@@ -0,0 +1,137 @@
+import ngrams.DenseTimeSeries;
+import ngrams.NGramMap;
+import ngrams.TimeSeries;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Checks that DenseTimeSeries gives the same results as TimeSeries. */
+public class DenseTimeSeriesTest {
+    public static final String WORDS_FILE = "data/ngrams/very_short.csv";
+    public static final String TOTAL_COUNTS_FILE = "data/ngrams/total_counts.csv";
+
+    @Test
+    public void testPlusInPlace() {
+        TimeSeries catPopulation = new TimeSeries();
+        catPopulation.put(1991, 0.0);
+        catPopulation.put(1992, 100.0);
+        catPopulation.put(1994, 200.0);
+
+        TimeSeries dogPopulation = new TimeSeries();
+        dogPopulation.put(1994, 400.0);
+        dogPopulation.put(1995, 500.0);
+
+        DenseTimeSeries total = new DenseTimeSeries(catPopulation)
+                .plusInPlace(new DenseTimeSeries(dogPopulation));
+        assertThat(total.toTimeSeries()).isEqualTo(catPopulation.plus(dogPopulation));
+        assertThat(total.size()).isEqualTo(4);
+        assertThat(total.containsYear(1993)).isFalse();
+        assertThat(total.get(1994)).isEqualTo(600.0);
+    }
+
+    @Test
+    public void testDivideInPlace() {
+        TimeSeries counts = new TimeSeries();
+        counts.put(2000, 10.0);
+        counts.put(2001, 30.0);
+
+        TimeSeries totals = new TimeSeries();
+        totals.put(1999, 7.0);
+        totals.put(2000, 20.0);
+        totals.put(2001, 60.0);
+
+        DenseTimeSeries quotient = new DenseTimeSeries(counts)
+                .divideInPlace(new DenseTimeSeries(totals));
+        assertThat(quotient.toTimeSeries()).isEqualTo(counts.dividedBy(totals));
+
+        // A year missing from the divisor is an error and leaves the series unchanged
+        totals.remove(2001);
+        DenseTimeSeries unchanged = new DenseTimeSeries(counts);
+        assertThrows(IllegalArgumentException.class,
+                () -> unchanged.divideInPlace(new DenseTimeSeries(totals)));
+        assertThat(unchanged.toTimeSeries()).isEqualTo(counts);
+    }
+
+    @Test
+    public void testEmptyAndClear() {
+        DenseTimeSeries series = new DenseTimeSeries();
+        assertThat(series.isEmpty()).isTrue();
+        series.add(TimeSeries.MAX_YEAR, 1.0);
+        series.add(TimeSeries.MAX_YEAR, 2.0);
+        assertThat(series.get(TimeSeries.MAX_YEAR)).isEqualTo(3.0);
+        series.clear();
+        assertThat(series.isEmpty()).isTrue();
+        assertThrows(IllegalArgumentException.class, () -> series.put(TimeSeries.MIN_YEAR - 1, 1.0));
+    }
+
+    @Test
+    public void testSumWeights() {
+        NGramMap ngm = new NGramMap(WORDS_FILE, TOTAL_COUNTS_FILE);
+        List<String> words = List.of("airport", "request", "unknownword", "wandered");
+
+        TimeSeries expected = new TimeSeries();
+        for (String word : words) {
+            expected = expected.plus(ngm.weightHistory(word, 2006, 2008));
+        }
+        assertThat(ngm.sumWeights(words, 2006, 2008).toTimeSeries()).isEqualTo(expected);
+        assertThat(ngm.summedWeightHistory(words, 2006, 2008)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testNextYear() {
+        DenseTimeSeries series = new DenseTimeSeries();
+        assertThat(series.nextYear(TimeSeries.MIN_YEAR)).isEqualTo(-1);
+        // Years on both sides of a 64-bit word boundary, and the last year
+        series.put(TimeSeries.MIN_YEAR, 1.0);
+        series.put(1463, 2.0);
+        series.put(1464, 3.0);
+        series.put(TimeSeries.MAX_YEAR, 4.0);
+        List<Integer> years = new ArrayList<>();
+        for (int year = series.nextYear(0); year != -1; year = series.nextYear(year + 1)) {
+            years.add(year);
+        }
+        assertThat(years).containsExactly(TimeSeries.MIN_YEAR, 1463, 1464, TimeSeries.MAX_YEAR).inOrder();
+        assertThat(series.nextYear(1465)).isEqualTo(TimeSeries.MAX_YEAR);
+        assertThat(series.nextYear(TimeSeries.MAX_YEAR + 1)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testNormalizeInPlace() {
+        DenseTimeSeries series = new DenseTimeSeries();
+        series.put(2000, 1.0);
+        series.put(2001, 3.0);
+        series.normalizeInPlace();
+        assertThat(series.get(2000)).isEqualTo(0.25);
+        assertThat(series.get(2001)).isEqualTo(0.75);
+        assertThat(series.size()).isEqualTo(2);
+
+        // Nothing to divide by
+        DenseTimeSeries zeros = new DenseTimeSeries();
+        zeros.put(2000, 0.0);
+        assertThat(zeros.normalizeInPlace().get(2000)).isEqualTo(0.0);
+    }
+
+    @Test
+    public void testMovingAverage() {
+        DenseTimeSeries series = new DenseTimeSeries();
+        series.put(2000, 1.0);
+        series.put(2001, 2.0);
+        series.put(2002, 6.0);
+        series.put(2005, 4.0);
+
+        DenseTimeSeries averages = series.movingAverage(3);
+        assertThat(averages.size()).isEqualTo(4);
+        assertThat(averages.get(2000)).isEqualTo(1.0);
+        assertThat(averages.get(2001)).isEqualTo(1.5);
+        assertThat(averages.get(2002)).isEqualTo(3.0);
+        // 2003 and 2004 have no value, so only 2005 itself is in its window
+        assertThat(averages.containsYear(2003)).isFalse();
+        assertThat(averages.get(2005)).isEqualTo(4.0);
+        assertThat(series.movingAverage(1).toTimeSeries()).isEqualTo(series.toTimeSeries());
+        assertThrows(IllegalArgumentException.class, () -> series.movingAverage(0));
+    }
+}
@@ -0,0 +1,90 @@
+import main.Graph;
+import main.GraphTraversal;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Tests for the iterative graph traversals. */
+public class GraphTraversalTest {
+
+    /** 0 -> 1 -> 3, 0 -> 2 -> 3, 3 -> 4, and 5 on its own. */
+    private static Graph diamond() {
+        Graph graph = new Graph();
+        for (int v = 0; v <= 5; v += 1) {
+            graph.addNode(v);
+        }
+        graph.addEdge(0, 1);
+        graph.addEdge(0, 2);
+        graph.addEdge(1, 3);
+        graph.addEdge(2, 3);
+        graph.addEdge(3, 4);
+        graph.freeze();
+        return graph;
+    }
+
+    @Test
+    public void testDepthAndBreadthFirst() {
+        GraphTraversal traversal = new GraphTraversal(diamond());
+        List<Integer> order = new ArrayList<>();
+
+        traversal.begin();
+        traversal.depthFirst(0, GraphTraversal.Direction.HYPONYMS, v -> order.add(v));
+        assertThat(order).containsExactly(0, 1, 3, 4, 2).inOrder();
+
+        order.clear();
+        traversal.begin();
+        traversal.breadthFirst(0, GraphTraversal.Direction.HYPONYMS, v -> order.add(v));
+        assertThat(order).containsExactly(0, 1, 2, 3, 4).inOrder();
+
+        order.clear();
+        traversal.begin();
+        traversal.depthFirst(4, GraphTraversal.Direction.HYPERNYMS, v -> order.add(v));
+        assertThat(order).containsExactly(4, 3, 1, 0, 2);
+    }
+
+    @Test
+    public void testEarlyStopAndSharedRound() {
+        GraphTraversal traversal = new GraphTraversal(diamond());
+        List<Integer> order = new ArrayList<>();
+
+        traversal.begin();
+        boolean finished = traversal.breadthFirst(0, GraphTraversal.Direction.HYPONYMS, v -> {
+            order.add(v);
+            return v != 2;
+        });
+        assertThat(finished).isFalse();
+        assertThat(order).containsExactly(0, 1, 2).inOrder();
+
+        // Starts in the same round skip nodes that were already visited
+        order.clear();
+        traversal.begin();
+        traversal.depthFirst(3, GraphTraversal.Direction.HYPONYMS, v -> order.add(v));
+        traversal.depthFirst(1, GraphTraversal.Direction.HYPONYMS, v -> order.add(v));
+        assertThat(order).containsExactly(3, 4, 1).inOrder();
+    }
+
+    @Test
+    public void testLongChain() {
+        int length = 500_000;
+        Graph chain = new Graph();
+        for (int v = 0; v < length; v += 1) {
+            chain.addNode(v);
+        }
+        for (int v = 1; v < length; v += 1) {
+            chain.addEdge(v - 1, v);
+        }
+        chain.freeze();
+
+        GraphTraversal traversal = new GraphTraversal(chain);
+        int[] count = new int[1];
+        traversal.begin();
+        traversal.depthFirst(0, GraphTraversal.Direction.HYPONYMS, v -> {
+            count[0] += 1;
+            return true;
+        });
+        assertThat(count[0]).isEqualTo(length);
+    }
+}
@@ -0,0 +1,107 @@
+import browser.NgordnetOutputFormat;
+import browser.NgordnetQuery;
+import browser.NgordnetQueryHandler;
+import browser.NgordnetQueryType;
+import com.google.gson.Gson;
+import main.HistoryTextHandler;
+import ngrams.NGramMap;
+import ngrams.TimeSeriesTransform;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for the streaming output of HistoryTextHandler. */
+public class HistoryTextHandlerTest {
+    public static final String WORDS_FILE = "data/ngrams/very_short.csv";
+    public static final String TOTAL_COUNTS_FILE = "data/ngrams/total_counts.csv";
+
+    private static NgordnetQuery query(List<String> words, int startYear, int endYear,
+                                       NgordnetOutputFormat format) {
+        return new NgordnetQuery(words, startYear, endYear, 0, NgordnetQueryType.HYPONYMS, format);
+    }
+
+    private static String streamed(NgordnetQueryHandler handler, NgordnetQuery q) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        handler.stream(q).writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testTextMatchesTimeSeriesToString() throws Exception {
+        NGramMap ngm = new NGramMap(WORDS_FILE, TOTAL_COUNTS_FILE);
+        HistoryTextHandler handler = new HistoryTextHandler(ngm);
+        List<String> words = List.of("airport", "request", "unknownword", "wandered");
+        for (int[] range : new int[][] {{1400, 2100}, {2006, 2007}, {2008, 2008}, {1400, 1500}}) {
+            String expected = "";
+            for (String word : words) {
+                expected += word + ": " + ngm.weightHistory(word, range[0], range[1]).toString() + "\n";
+            }
+            NgordnetQuery q = new NgordnetQuery(words, range[0], range[1], 0, NgordnetQueryType.HYPONYMS);
+            assertThat(handler.handle(q)).isEqualTo(expected);
+            // Streamed, it is the same JSON string the server sent before
+            assertThat(streamed(handler, q)).isEqualTo(new Gson().toJson(expected));
+            assertThat(handler.stream(q).contentType()).isNull();
+        }
+    }
+
+    @Test
+    public void testCsv() throws Exception {
+        NGramMap ngm = new NGramMap(WORDS_FILE, TOTAL_COUNTS_FILE);
+        HistoryTextHandler handler = new HistoryTextHandler(ngm);
+        NgordnetQuery q = query(List.of("airport", "unknownword"), 2000, 2020, NgordnetOutputFormat.CSV);
+        String expected = "word,year,weight\n"
+                + "airport,2007," + ngm.weightHistory("airport").get(2007) + "\n"
+                + "airport,2008," + ngm.weightHistory("airport").get(2008) + "\n";
+        assertThat(streamed(handler, q)).isEqualTo(expected);
+        assertThat(handler.stream(q).contentType()).startsWith("text/csv");
+    }
+
+    @Test
+    public void testJson() throws Exception {
+        NGramMap ngm = new NGramMap(WORDS_FILE, TOTAL_COUNTS_FILE);
+        HistoryTextHandler handler = new HistoryTextHandler(ngm);
+        NgordnetQuery q = query(List.of("airport", "a<b"), 2000, 2020, NgordnetOutputFormat.JSON);
+        String json = streamed(handler, q);
+        assertThat(json).isEqualTo("[{\"word\":\"airport\",\"years\":[2007,2008],\"weights\":["
+                + ngm.weightHistory("airport").get(2007) + ","
+                + ngm.weightHistory("airport").get(2008) + "]},"
+                + "{\"word\":\"a\\u003cb\",\"years\":[],\"weights\":[]}]");
+
+        Entry[] entries = new Gson().fromJson(json, Entry[].class);
+        assertThat(entries[0].word).isEqualTo("airport");
+        assertThat(entries[0].years).asList().containsExactly(2007, 2008).inOrder();
+        assertThat(entries[1].word).isEqualTo("a<b");
+        assertThat(handler.stream(q).contentType()).startsWith("application/json");
+    }
+
+    @Test
+    public void testTransform() throws Exception {
+        NGramMap ngm = new NGramMap(WORDS_FILE, TOTAL_COUNTS_FILE);
+        HistoryTextHandler handler = new HistoryTextHandler(ngm);
+        List<String> words = List.of("airport", "request", "unknownword");
+        TimeSeriesTransform transform = TimeSeriesTransform.parse("rollingMean:2,delta");
+        String expected = "";
+        for (String word : words) {
+            expected += word + ": " + transform.apply(ngm.weightHistory(word, 2000, 2020)) + "\n";
+        }
+        NgordnetQuery q = new NgordnetQuery(words, 2000, 2020, 0, NgordnetQueryType.HYPONYMS,
+                NgordnetOutputFormat.TEXT, "rollingMean:2,delta");
+        assertThat(handler.handle(q)).isEqualTo(expected);
+        assertThat(streamed(handler, q)).isEqualTo(new Gson().toJson(expected));
+
+        NgordnetQuery invalid = new NgordnetQuery(words, 2000, 2020, 0, NgordnetQueryType.HYPONYMS,
+                NgordnetOutputFormat.CSV, "nosuch");
+        assertThrows(IllegalArgumentException.class, () -> handler.stream(invalid));
+    }
+
+    private static class Entry {
+        String word;
+        int[] years;
+        double[] weights;
+    }
+}
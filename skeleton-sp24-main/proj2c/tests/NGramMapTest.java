@@ -0,0 +1,144 @@
+import ngrams.NGramMap;
+import ngrams.TimeSeries;
+import ngrams.WordDictionary;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Tests for the columnar NGramMap. */
+public class NGramMapTest {
+    public static final String WORDS_FILE = "data/ngrams/very_short.csv";
+    public static final String TOTAL_COUNTS_FILE = "data/ngrams/total_counts.csv";
+
+    @Test
+    public void testCountHistory() {
+        NGramMap ngm = new NGramMap(WORDS_FILE, TOTAL_COUNTS_FILE);
+
+        // The first line of the file is data, not a header
+        TimeSeries airport = ngm.countHistory("airport");
+        assertThat(airport.years()).isEqualTo(List.of(2007, 2008));
+        assertThat(airport.data()).isEqualTo(List.of(175702.0, 173294.0));
+
+        TimeSeries request = ngm.countHistory("request", 2006, 2007);
+        assertThat(request.years()).isEqualTo(List.of(2006, 2007));
+        assertThat(request.data()).isEqualTo(List.of(677820.0, 697645.0));
+
+        assertThat(ngm.countHistory("request", 1400, 1500)).isEmpty();
+        assertThat(ngm.countHistory("unknownword")).isEmpty();
+    }
+
+    @Test
+    public void testDefensiveCopy() {
+        NGramMap ngm = new NGramMap(WORDS_FILE, TOTAL_COUNTS_FILE);
+        ngm.countHistory("wandered").put(2005, 0.0);
+        assertThat(ngm.countHistory("wandered").get(2005)).isEqualTo(83769.0);
+    }
+
+    @Test
+    public void testWeightHistory() {
+        NGramMap ngm = new NGramMap(WORDS_FILE, TOTAL_COUNTS_FILE);
+        TimeSeries totals = ngm.totalCountHistory();
+        TimeSeries weights = ngm.weightHistory("wandered", 2006, 2008);
+
+        assertThat(weights.years()).isEqualTo(List.of(2006, 2007, 2008));
+        assertThat(weights.get(2007)).isWithin(1E-10).of(108634.0 / totals.get(2007));
+        assertThat(ngm.weightHistory("unknownword")).isEmpty();
+    }
+
+    @Test
+    public void testTotalCountAndWeight() {
+        NGramMap ngm = new NGramMap(WORDS_FILE, TOTAL_COUNTS_FILE);
+        assertThat(ngm.totalCount("request", 2006, 2007)).isEqualTo(677820.0 + 697645.0);
+        assertThat(ngm.totalCount("request", 1400, 2100)).isEqualTo(2816909.0);
+        assertThat(ngm.totalCount("request", 2009, 2020)).isEqualTo(0.0);
+        assertThat(ngm.totalCount("unknownword", 1400, 2100)).isEqualTo(0.0);
+
+        TimeSeries totals = ngm.totalCountHistory();
+        double expected = (173294.0) / (totals.get(2008) + totals.get(2009));
+        assertThat(ngm.totalWeight("airport", 2008, 2009)).isWithin(1E-15).of(expected);
+        assertThat(ngm.totalWeight("unknownword", 2008, 2009)).isEqualTo(0.0);
+    }
+
+    @Test
+    public void testSnapshotRoundTrip(@TempDir Path dir) {
+        NGramMap ngm = new NGramMap(WORDS_FILE, TOTAL_COUNTS_FILE);
+        Path snapshot = dir.resolve("very_short.snapshot");
+        ngm.writeSnapshot(snapshot);
+        NGramMap mapped = NGramMap.fromSnapshot(snapshot);
+
+        for (String word : List.of("airport", "request", "wandered", "unknownword")) {
+            assertThat(mapped.countHistory(word)).isEqualTo(ngm.countHistory(word));
+            assertThat(mapped.weightHistory(word, 2006, 2007))
+                    .isEqualTo(ngm.weightHistory(word, 2006, 2007));
+        }
+        assertThat(mapped.totalCountHistory()).isEqualTo(ngm.totalCountHistory());
+        assertThat(mapped.totalCount("request", 2006, 2008))
+                .isEqualTo(ngm.totalCount("request", 2006, 2008));
+    }
+
+    @Test
+    public void testDictionaryKeyed(@TempDir Path dir) {
+        NGramMap ngm = new NGramMap(WORDS_FILE, TOTAL_COUNTS_FILE);
+        Path snapshot = dir.resolve("very_short.snapshot");
+        ngm.writeSnapshot(snapshot);
+
+        for (NGramMap source : List.of(ngm, NGramMap.fromSnapshot(snapshot))) {
+            WordDictionary dictionary = new WordDictionary();
+            NGramMap keyed = source.withDictionary(dictionary);
+            int rows = dictionary.size();
+            int extra = dictionary.add("unknownword");
+            dictionary.freeze();
+
+            assertThat(keyed.dictionary()).isSameInstanceAs(dictionary);
+            assertThat(extra).isEqualTo(rows);
+            for (String word : List.of("airport", "request", "wandered")) {
+                int id = dictionary.id(word);
+                assertThat(keyed.totalCount(id, 2006, 2008)).isEqualTo(ngm.totalCount(word, 2006, 2008));
+                assertThat(keyed.countHistory(word)).isEqualTo(ngm.countHistory(word));
+            }
+            assertThat(keyed.totalCount(extra, 1400, 2100)).isEqualTo(0.0);
+            assertThat(keyed.countHistory("unknownword")).isEmpty();
+        }
+    }
+
+    @Test
+    public void testRefreshedAppendedLines(@TempDir Path dir) throws IOException {
+        Path words = dir.resolve("words.csv");
+        Files.copy(Path.of(WORDS_FILE), words);
+        NGramMap ngm = new NGramMap(words.toString(), TOTAL_COUNTS_FILE);
+
+        // A new year for an old word, a replaced count and a new word
+        Files.write(words, List.of("airport\t2009\t100\t1", "airport\t2007\t5\t1", "zebra\t2008\t7\t1"),
+                StandardOpenOption.APPEND);
+        NGramMap refreshed = ngm.refreshed(words.toString(), TOTAL_COUNTS_FILE);
+        NGramMap reloaded = new NGramMap(words.toString(), TOTAL_COUNTS_FILE);
+
+        assertThat(refreshed.loadStats().lines()).isLessThan(reloaded.loadStats().lines());
+        for (String word : List.of("airport", "request", "wandered", "zebra")) {
+            assertThat(refreshed.countHistory(word)).isEqualTo(reloaded.countHistory(word));
+        }
+        assertThat(refreshed.countHistory("airport").get(2007)).isEqualTo(5.0);
+        assertThat(refreshed.totalCount("zebra", 2000, 2020)).isEqualTo(7.0);
+        assertThat(ngm.countHistory("zebra")).isEmpty();
+    }
+
+    @Test
+    public void testRefreshedRewrittenFile(@TempDir Path dir) throws IOException {
+        Path words = dir.resolve("words.csv");
+        Files.copy(Path.of(WORDS_FILE), words);
+        NGramMap ngm = new NGramMap(words.toString(), TOTAL_COUNTS_FILE);
+
+        // Rewriting the end of the file rules out an incremental load
+        Files.write(words, List.of("zebra\t2008\t7\t1"));
+        NGramMap refreshed = ngm.refreshed(words.toString(), TOTAL_COUNTS_FILE);
+        assertThat(refreshed.countHistory("airport")).isEmpty();
+        assertThat(refreshed.totalCount("zebra", 2000, 2020)).isEqualTo(7.0);
+    }
+}
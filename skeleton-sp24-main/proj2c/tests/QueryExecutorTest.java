@@ -0,0 +1,153 @@
+import browser.QueryExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for the admission limits of QueryExecutor. */
+public class QueryExecutorTest {
+
+    @Test
+    public void testRunsAndRethrows() throws Exception {
+        try (QueryExecutor executor = new QueryExecutor(2, 10, 10)) {
+            assertThat(executor.execute("history", () -> "result")).isEqualTo("result");
+            assertThrows(IllegalArgumentException.class, () -> executor.execute("history", () -> {
+                throw new IllegalArgumentException("bad query");
+            }));
+            assertThat(executor.routeStats().get("history").completed()).isEqualTo(2);
+            assertThat(executor.inFlight()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testRejectsWhenRouteQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+        try (QueryExecutor executor = new QueryExecutor(1, 100, 2)) {
+            // One query runs and two wait for the single CPU thread
+            List<Future<String>> admitted = new ArrayList<>();
+            for (int i = 0; i < 3; i += 1) {
+                admitted.add(requests.submit(() -> executor.execute("hyponyms", () -> {
+                    release.await();
+                    return "done";
+                })));
+                waitFor(() -> executor.inFlight() == admitted.size());
+            }
+            waitFor(() -> executor.routeStats().get("hyponyms").running() == 1);
+            assertThat(executor.queueDepth()).isEqualTo(2);
+
+            assertThrows(RejectedExecutionException.class,
+                    () -> executor.execute("hyponyms", () -> "too many"));
+            QueryExecutor.RouteStats stats = executor.routeStats().get("hyponyms");
+            assertThat(stats.running()).isEqualTo(1);
+            assertThat(stats.queued()).isEqualTo(2);
+            assertThat(stats.rejected()).isEqualTo(1);
+
+            release.countDown();
+            for (Future<String> result : admitted) {
+                assertThat(result.get()).isEqualTo("done");
+            }
+            assertThat(executor.queueDepth()).isEqualTo(0);
+        } finally {
+            requests.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejectsWhenTooManyInFlight() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+        try (QueryExecutor executor = new QueryExecutor(4, 2, 10)) {
+            for (int i = 0; i < 2; i += 1) {
+                requests.submit(() -> executor.execute("history", () -> {
+                    release.await();
+                    return "done";
+                }));
+            }
+            waitFor(() -> executor.inFlight() == 2);
+            // The limit is shared by all routes
+            assertThrows(RejectedExecutionException.class,
+                    () -> executor.execute("historytext", () -> "too many"));
+            release.countDown();
+        } finally {
+            requests.shutdown();
+            assertThat(requests.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    @Test
+    public void testInterruptedCallerCancelsItsQuery() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        AtomicReference<Exception> busyFailure = new AtomicReference<>();
+        AtomicReference<Exception> queuedFailure = new AtomicReference<>();
+        try (QueryExecutor executor = new QueryExecutor(1, 10, 10)) {
+            // The first query ignores interrupts, so it keeps its CPU thread until released
+            Callable<String> uninterruptible = () -> {
+                running.countDown();
+                while (true) {
+                    try {
+                        release.await();
+                        return "done";
+                    } catch (InterruptedException e) {
+                        interrupted.set(true);
+                    }
+                }
+            };
+            Thread busy = Thread.ofVirtual().start(
+                    () -> call(busyFailure, () -> executor.execute("history", uninterruptible)));
+            running.await();
+            Thread queued = Thread.ofVirtual().start(
+                    () -> call(queuedFailure, () -> executor.execute("history", () -> "never runs")));
+            waitFor(() -> executor.queueDepth() == 1);
+
+            // A query cancelled before it started frees its slot at once
+            queued.interrupt();
+            queued.join();
+            assertThat(queuedFailure.get()).isInstanceOf(InterruptedException.class);
+            assertThat(executor.queueDepth()).isEqualTo(0);
+            assertThat(executor.inFlight()).isEqualTo(1);
+
+            // A running query is interrupted, but counts until it returns
+            busy.interrupt();
+            busy.join();
+            assertThat(busyFailure.get()).isInstanceOf(InterruptedException.class);
+            waitFor(interrupted::get);
+            assertThat(executor.inFlight()).isEqualTo(1);
+            assertThat(executor.routeStats().get("history").running()).isEqualTo(1);
+            release.countDown();
+            waitFor(() -> executor.inFlight() == 0);
+            assertThat(executor.routeStats().get("history").completed()).isEqualTo(2);
+        }
+    }
+
+    /** Calls WORK and stores what it throws in FAILURE. */
+    private static void call(AtomicReference<Exception> failure, Callable<?> work) {
+        try {
+            work.call();
+        } catch (Exception e) {
+            failure.set(e);
+        }
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
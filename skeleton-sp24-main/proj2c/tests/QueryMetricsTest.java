@@ -0,0 +1,75 @@
+import browser.LatencyHistogram;
+import browser.QueryMetrics;
+import browser.QueryMetrics.Stage;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Tests for the latency histograms and the Prometheus output of QueryMetrics. */
+public class QueryMetricsTest {
+
+    @Test
+    public void testQuantilesWithinRelativeError() {
+        Random random = new Random(61);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i += 1) {
+            // Log-uniform between 1 ns and about 1 s
+            values[i] = (long) Math.exp(random.nextDouble() * Math.log(1e9));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        assertThat(histogram.count()).isEqualTo(values.length);
+        for (double quantile : new double[] {0, 0.5, 0.9, 0.99, 0.999, 1}) {
+            long exact = values[Math.max(0, (int) Math.ceil(quantile * values.length) - 1)];
+            long reported = histogram.valueAtQuantile(quantile);
+            // The bucket's highest value: never below the exact one, and within 1/64 above it
+            assertThat(reported).isAtLeast(exact);
+            assertThat((double) reported).isAtMost(exact + exact / 64.0 + 1);
+        }
+    }
+
+    @Test
+    public void testSmallAndHugeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.valueAtQuantile(0.5)).isEqualTo(0);
+        histogram.record(-5);
+        histogram.record(127);
+        histogram.record(Long.MAX_VALUE);
+        assertThat(histogram.valueAtQuantile(0)).isEqualTo(0);
+        assertThat(histogram.valueAtQuantile(0.5)).isEqualTo(127);
+        assertThat(histogram.valueAtQuantile(1)).isEqualTo(LatencyHistogram.MAX_VALUE);
+    }
+
+    @Test
+    public void testPrometheusOutput() {
+        QueryMetrics metrics = new QueryMetrics(null);
+        for (int i = 1; i <= 100; i += 1) {
+            metrics.record("history", Stage.COMPUTE, i * 1_000_000L, 1000);
+            metrics.completed("history");
+        }
+        metrics.failed("history");
+        StringBuilder out = new StringBuilder();
+        metrics.writePrometheus(out);
+        String text = out.toString();
+
+        assertThat(text).contains("# TYPE ngordnet_stage_latency_seconds summary\n");
+        // 50 ms lies in a bucket of width 2^19 ns whose highest value is 50,331,647 ns
+        assertThat(text).contains(
+                "ngordnet_stage_latency_seconds{route=\"history\",stage=\"compute\",quantile=\"0.5\"} 0.050331647\n");
+        assertThat(text).contains(
+                "ngordnet_stage_latency_seconds_count{route=\"history\",stage=\"compute\"} 100\n");
+        assertThat(text).contains(
+                "ngordnet_allocated_bytes_total{route=\"history\",stage=\"compute\"} 100000\n");
+        assertThat(text).contains("ngordnet_errors_total{route=\"history\"} 1\n");
+        assertThat(text).contains("ngordnet_throughput_queries_per_second{route=\"history\"} ");
+        // Stages without samples are left out
+        assertThat(text).doesNotContain("stage=\"parse\"");
+        for (String line : text.split("\n")) {
+            assertThat(line).matches("# (HELP|TYPE) .*|ngordnet_[a-z_]+(\\{[^}]*\\})? [0-9.E-]+");
+        }
+    }
+}
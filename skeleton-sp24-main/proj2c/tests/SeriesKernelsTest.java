@@ -0,0 +1,113 @@
+import ngrams.SeriesKernels;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Checks that the kernels chosen at startup agree with the scalar ones. Run with
+ * --add-modules jdk.incubator.vector and the incubator classes on the class path
+ * to check the vector kernels.
+ */
+public class SeriesKernelsTest {
+    /** Not a multiple of any vector length, so that every kernel has a tail. */
+    private static final int LENGTH = 707;
+    private static final int ROUNDS = 50;
+
+    private static double[] randomValues(Random random, double holeChance) {
+        double[] values = new double[LENGTH];
+        for (int i = 0; i < LENGTH; i += 1) {
+            values[i] = random.nextDouble() < holeChance ? Double.NaN : random.nextDouble() * 1000;
+        }
+        return values;
+    }
+
+    private static long[] randomBits(Random random) {
+        long[] bits = new long[(LENGTH + 63) >>> 6];
+        for (int w = 0; w < bits.length; w += 1) {
+            bits[w] = random.nextLong();
+        }
+        return bits;
+    }
+
+    @Test
+    public void testAgreesWithScalar() {
+        SeriesKernels chosen = SeriesKernels.get();
+        SeriesKernels scalar = SeriesKernels.scalar();
+        Random random = new Random(61);
+        for (int round = 0; round < ROUNDS; round += 1) {
+            int from = random.nextInt(LENGTH / 2);
+            int to = from + random.nextInt(LENGTH - from + 1);
+            double[] source = randomValues(random, 0);
+            double[] target = randomValues(random, 0);
+            long[] present = randomBits(random);
+
+            double[] expected = target.clone();
+            double[] actual = target.clone();
+            scalar.add(expected, source, from, to);
+            chosen.add(actual, source, from, to);
+            assertThat(actual).isEqualTo(expected);
+
+            scalar.divide(expected, source, present, from, to);
+            chosen.divide(actual, source, present, from, to);
+            assertThat(actual).isEqualTo(expected);
+
+            scalar.divide(expected, 7.0, from, to);
+            chosen.divide(actual, 7.0, from, to);
+            assertThat(actual).isEqualTo(expected);
+
+            assertThat(chosen.sum(source, from, to))
+                    .isWithin(1e-9 * Math.max(1, scalar.sum(source, from, to)))
+                    .of(scalar.sum(source, from, to));
+
+            int window = 1 + random.nextInt(20);
+            scalar.movingAverage(source, present, window, expected, from, to);
+            chosen.movingAverage(source, present, window, actual, from, to);
+            assertThat(actual).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testAddQuotients() {
+        SeriesKernels chosen = SeriesKernels.get();
+        SeriesKernels scalar = SeriesKernels.scalar();
+        Random random = new Random(62);
+        for (int round = 0; round < ROUNDS; round += 1) {
+            int from = random.nextInt(LENGTH / 2);
+            int to = from + random.nextInt(LENGTH - from + 1);
+            int countsOffset = random.nextInt(5);
+            double[] counts = new double[LENGTH + countsOffset];
+            System.arraycopy(randomValues(random, 0.3), 0, counts, countsOffset, LENGTH);
+            double[] totals = randomValues(random, 0);
+
+            double[] expected = new double[LENGTH];
+            double[] actual = new double[LENGTH];
+            long[] expectedPresent = new long[(LENGTH + 63) >>> 6];
+            long[] actualPresent = new long[expectedPresent.length];
+            assertThat(scalar.addQuotients(counts, countsOffset, totals, expected, expectedPresent, from, to))
+                    .isTrue();
+            assertThat(chosen.addQuotients(counts, countsOffset, totals, actual, actualPresent, from, to))
+                    .isTrue();
+            assertThat(actual).isEqualTo(expected);
+            assertThat(actualPresent).isEqualTo(expectedPresent);
+            for (int i = 0; i < LENGTH; i += 1) {
+                boolean present = (expectedPresent[i >>> 6] & (1L << i)) != 0;
+                assertThat(present).isEqualTo(i >= from && i < to && !Double.isNaN(counts[countsOffset + i]));
+            }
+
+            // A count without a total fails and changes nothing
+            if (to > from) {
+                int missing = from + random.nextInt(to - from);
+                counts[countsOffset + missing] = 1.0;
+                totals[missing] = Double.NaN;
+                double[] before = actual.clone();
+                long[] presentBefore = actualPresent.clone();
+                assertThat(chosen.addQuotients(counts, countsOffset, totals, actual, actualPresent, from, to))
+                        .isFalse();
+                assertThat(actual).isEqualTo(before);
+                assertThat(actualPresent).isEqualTo(presentBefore);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import browser.NgordnetQuery;
+import browser.NgordnetQueryType;
+import browser.SharedResults;
+import main.HyponymsHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for the intermediate results shared by the queries of a batch. */
+public class SharedResultsTest {
+
+    @Test
+    public void testConcurrentCallersComputeOnce() throws Exception {
+        SharedResults shared = new SharedResults();
+        AtomicInteger computed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i += 1) {
+                results.add(threads.submit(() -> {
+                    start.await();
+                    return shared.computeIfAbsent(List.of("food"), () -> {
+                        computed.incrementAndGet();
+                        return "value";
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<String> result : results) {
+                assertThat(result.get()).isEqualTo("value");
+            }
+        } finally {
+            threads.shutdown();
+        }
+        assertThat(computed.get()).isEqualTo(1);
+        assertThat(shared.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFailuresAreNotKept() {
+        SharedResults shared = new SharedResults();
+        assertThrows(IllegalStateException.class, () -> shared.computeIfAbsent("key", () -> {
+            throw new IllegalStateException("failed");
+        }));
+        assertThat(shared.<String>computeIfAbsent("key", () -> "retried")).isEqualTo("retried");
+    }
+
+    @Test
+    public void testHyponymsShareWordSets(@TempDir Path dir) throws Exception {
+        Path synsets = dir.resolve("synsets.txt");
+        Path hyponyms = dir.resolve("hyponyms.txt");
+        Path words = dir.resolve("words.csv");
+        Path counts = dir.resolve("counts.csv");
+        Files.write(synsets, List.of("0,food,what you eat", "1,cake,a sweet", "2,pie,another sweet"));
+        Files.write(hyponyms, List.of("0,1,2"));
+        Files.write(words, List.of("food\t2000\t5\t1", "cake\t2000\t9\t1", "pie\t2001\t2\t1"));
+        Files.write(counts, List.of("2000,100,1,1", "2001,100,1,1"));
+        HyponymsHandler handler = new HyponymsHandler(synsets.toString(), hyponyms.toString(),
+                words.toString(), counts.toString());
+
+        SharedResults shared = new SharedResults();
+        NgordnetQuery all = new NgordnetQuery(List.of("food"), 2000, 2001, 0, NgordnetQueryType.HYPONYMS);
+        NgordnetQuery top = new NgordnetQuery(List.of("food"), 2000, 2000, 1, NgordnetQueryType.HYPONYMS);
+        NgordnetQuery ancestors = new NgordnetQuery(List.of("cake"), 2000, 2001, 0,
+                NgordnetQueryType.ANCESTORS);
+        for (NgordnetQuery q : List.of(all, top, ancestors)) {
+            assertThat(handler.handle(q, shared)).isEqualTo(handler.handle(q));
+        }
+        // One hyponym set of food serves both queries; the ancestors of cake are separate
+        assertThat(shared.size()).isEqualTo(2);
+        assertThat(handler.handle(top, shared)).isEqualTo("[cake]");
+    }
+}
@@ -0,0 +1,99 @@
+import ngrams.DenseTimeSeries;
+import ngrams.TimeSeries;
+import ngrams.TimeSeriesTransform;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for the temporal operators of TimeSeries, DenseTimeSeries and TimeSeriesTransform. */
+public class TimeSeriesTransformTest {
+
+    private static TimeSeries series(double... yearsAndValues) {
+        TimeSeries ts = new TimeSeries();
+        for (int i = 0; i < yearsAndValues.length; i += 2) {
+            ts.put((int) yearsAndValues[i], yearsAndValues[i + 1]);
+        }
+        return ts;
+    }
+
+    @Test
+    public void testRollingMean() {
+        TimeSeries ts = series(2000, 1, 2001, 2, 2002, 6, 2005, 4);
+        assertThat(ts.rollingMean(3)).isEqualTo(series(2000, 1, 2001, 1.5, 2002, 3, 2005, 4));
+        assertThat(ts.rollingMean(1)).isEqualTo(ts);
+        assertThat(ts.rollingMean(Integer.MAX_VALUE).get(2005)).isEqualTo(13.0 / 4);
+        assertThrows(IllegalArgumentException.class, () -> ts.rollingMean(0));
+    }
+
+    @Test
+    public void testExponentialSmoothing() {
+        TimeSeries ts = series(2000, 4, 2001, 8, 2003, 0);
+        assertThat(ts.exponentialSmoothing(0.5)).isEqualTo(series(2000, 4, 2001, 6, 2003, 3));
+        assertThat(ts.exponentialSmoothing(1)).isEqualTo(ts);
+        assertThrows(IllegalArgumentException.class, () -> ts.exponentialSmoothing(0));
+    }
+
+    @Test
+    public void testYearOverYearDelta() {
+        TimeSeries ts = series(2000, 4, 2001, 8, 2002, 5, 2004, 1);
+        assertThat(ts.yearOverYearDelta()).isEqualTo(series(2001, 4, 2002, -3));
+        assertThat(new TimeSeries().yearOverYearDelta()).isEmpty();
+    }
+
+    @Test
+    public void testArgmaxYear() {
+        assertThat(series(2000, 4, 2001, 8, 2002, 8, 2003, 1).argmaxYear()).isEqualTo(2001);
+        assertThat(series(2000, Double.NaN, 2001, -1).argmaxYear()).isEqualTo(2001);
+        assertThat(new TimeSeries().argmaxYear()).isEqualTo(-1);
+    }
+
+    @Test
+    public void testZScores() {
+        TimeSeries ts = series(2000, 2, 2001, 4, 2002, 4, 2003, 4, 2004, 5, 2005, 5, 2006, 7, 2007, 9);
+        // Mean 5, population standard deviation 2
+        TimeSeries z = ts.zScores();
+        assertThat(z.get(2000)).isWithin(1e-12).of(-1.5);
+        assertThat(z.get(2007)).isWithin(1e-12).of(2.0);
+        assertThat(series(2000, 3, 2001, 3).zScores()).isEqualTo(series(2000, 0, 2001, 0));
+    }
+
+    @Test
+    public void testParse() {
+        assertThat(TimeSeriesTransform.parse(null).isIdentity()).isTrue();
+        assertThat(TimeSeriesTransform.parse(" ").isIdentity()).isTrue();
+        TimeSeriesTransform transform = TimeSeriesTransform.parse(" ROLLINGMEAN:5 , smooth:0.25,delta,argmax,zscore");
+        assertThat(transform.toString()).isEqualTo("rollingMean:5,smooth:0.25,delta,argmax,zScore");
+        assertThat(TimeSeriesTransform.parse(transform.toString())).isEqualTo(transform);
+
+        for (String invalid : List.of("nosuch", "rollingMean", "rollingMean:0", "rollingMean:x",
+                "smooth:1.5", "delta:1", "zScore,", "delta,".repeat(TimeSeriesTransform.MAX_STEPS + 1))) {
+            assertThrows(IllegalArgumentException.class, () -> TimeSeriesTransform.parse(invalid), invalid);
+        }
+    }
+
+    /** The in-place dense chain gives exactly what the TimeSeries operators give. */
+    @Test
+    public void testDenseMatchesTimeSeries() {
+        Random random = new Random(20);
+        List<String> specs = List.of("rollingMean:7", "smooth:0.3", "delta", "argmax", "zScore",
+                "rollingMean:3,zScore", "delta,rollingMean:10,smooth:0.9", "zScore,argmax",
+                "rollingMean:2,rollingMean:5,delta");
+        for (int round = 0; round < 20; round += 1) {
+            TimeSeries ts = new TimeSeries();
+            for (int year = TimeSeries.MIN_YEAR; year <= TimeSeries.MAX_YEAR; year += 1) {
+                if (random.nextInt(3) != 0) {
+                    ts.put(year, random.nextDouble() * 100);
+                }
+            }
+            for (String spec : specs) {
+                TimeSeriesTransform transform = TimeSeriesTransform.parse(spec);
+                DenseTimeSeries result = transform.apply(new DenseTimeSeries(ts), new DenseTimeSeries());
+                assertThat(result.toTimeSeries()).isEqualTo(transform.apply(ts));
+            }
+        }
+    }
+}
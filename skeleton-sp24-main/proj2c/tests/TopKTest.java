@@ -0,0 +1,60 @@
+import main.TopK;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Tests for the bounded top-k selection used by HyponymsHandler. */
+public class TopKTest {
+
+    @Test
+    public void testTieBreaking() {
+        TopK topK = new TopK(3);
+        topK.offer("pie", 5);
+        topK.offer("cake", 5);
+        topK.offer("bread", 9);
+        topK.offer("apple", 5);
+        topK.offer("zebra", 1);
+        // bread first, then the alphabetically first words with frequency 5
+        assertThat(topK.sortedWords()).containsExactly("apple", "bread", "cake").inOrder();
+    }
+
+    @Test
+    public void testMatchesFullSort() {
+        Random random = new Random(61);
+        for (int trial = 0; trial < 200; trial += 1) {
+            int n = random.nextInt(300) + 1;
+            int k = random.nextInt(20) + 1;
+            List<String> words = new ArrayList<>();
+            List<Double> counts = new ArrayList<>();
+            TopK topK = new TopK(k);
+            for (int i = 0; i < n; i += 1) {
+                String word = "w" + random.nextInt(1000) + "_" + i;
+                // Few distinct counts, so that many words tie
+                double count = random.nextInt(10) + 1;
+                words.add(word);
+                counts.add(count);
+                topK.offer(word, count);
+            }
+
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < n; i += 1) {
+                order.add(i);
+            }
+            order.sort(Comparator.<Integer>comparingDouble(i -> -counts.get(i))
+                    .thenComparing(words::get));
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < Math.min(k, n); i += 1) {
+                expected.add(words.get(order.get(i)));
+            }
+            Collections.sort(expected);
+
+            assertThat(topK.sortedWords()).isEqualTo(expected);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+import main.WordNet;
+import ngrams.WordDictionary;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for WordNet traversals on a small hand-written lexicon. */
+public class WordNetTest {
+    @TempDir
+    static Path dir;
+    static WordNet wordnet;
+
+    /*
+     *            0 entity
+     *           /        \
+     *      1 food        2 change alteration
+     *      /    \             |
+     *  3 cake  4 pie      5 alteration mutation
+     *      \    /
+     *     6 cake_pie          7 lonely
+     */
+    @BeforeAll
+    public static void setUp() throws IOException {
+        Path synsets = dir.resolve("synsets.txt");
+        Path hyponyms = dir.resolve("hyponyms.txt");
+        Files.write(synsets, List.of(
+                "0,entity,that which exists",
+                "1,food,what you eat",
+                "2,change alteration,the act of changing",
+                "3,cake,a sweet",
+                "4,pie,another sweet",
+                "5,alteration mutation,a change",
+                "6,cake_pie,both",
+                "7,lonely,no relations"));
+        Files.write(hyponyms, List.of(
+                "0,1,2",
+                "1,3,4",
+                "1,3",
+                "2,5",
+                "3,6",
+                "4,6"));
+        wordnet = new WordNet(synsets.toString(), hyponyms.toString());
+    }
+
+    private static WordNet load(long closureBudgetBytes, String closureFile) {
+        return new WordNet(dir.resolve("synsets.txt").toString(),
+                dir.resolve("hyponyms.txt").toString(), closureBudgetBytes, closureFile);
+    }
+
+    @Test
+    public void testHyponyms() {
+        assertThat(wordnet.getHyponyms("food")).containsExactly("food", "cake", "pie", "cake_pie");
+        assertThat(wordnet.getHyponyms("lonely")).containsExactly("lonely");
+        // "alteration" is in two synsets, and the result is the union of both
+        assertThat(wordnet.getHyponyms("alteration"))
+                .containsExactly("change", "alteration", "mutation");
+        assertThrows(IllegalArgumentException.class, () -> wordnet.getHyponyms("unknown"));
+    }
+
+    @Test
+    public void testCommonHyponyms() {
+        assertThat(wordnet.getCommonHyponyms(List.of("cake", "pie"))).containsExactly("cake_pie");
+        assertThat(wordnet.getCommonHyponyms(List.of("food", "change"))).isEmpty();
+    }
+
+    @Test
+    public void testAncestors() {
+        assertThat(wordnet.getAncestors("cake_pie"))
+                .containsExactly("cake_pie", "cake", "pie", "food", "entity");
+        assertThat(wordnet.getCommonAncestors(List.of("cake", "mutation"))).containsExactly("entity");
+        assertThat(wordnet.getCommonAncestors(List.of("mutation", "alteration")))
+                .containsExactly("mutation", "change", "alteration", "entity");
+    }
+
+    @Test
+    public void testIsHyponym() {
+        assertThat(wordnet.hasClosureIndex()).isTrue();
+        assertThat(wordnet.isHyponym("cake_pie", "entity")).isTrue();
+        assertThat(wordnet.isHyponym("food", "food")).isTrue();
+        assertThat(wordnet.isHyponym("mutation", "change")).isTrue();
+        assertThat(wordnet.isHyponym("entity", "food")).isFalse();
+        assertThat(wordnet.isHyponym("lonely", "entity")).isFalse();
+    }
+
+    @Test
+    public void testWithoutClosureIndex() {
+        WordNet dfsOnly = load(0, null);
+        assertThat(dfsOnly.hasClosureIndex()).isFalse();
+        for (String word : List.of("entity", "food", "alteration", "lonely")) {
+            assertThat(dfsOnly.getHyponyms(word)).isEqualTo(wordnet.getHyponyms(word));
+        }
+        assertThat(dfsOnly.getCommonHyponyms(List.of("cake", "pie", "food")))
+                .isEqualTo(wordnet.getCommonHyponyms(List.of("cake", "pie", "food")));
+        assertThat(dfsOnly.isHyponym("cake_pie", "entity")).isTrue();
+
+        // A budget of a few bytes is too small for any index
+        assertThat(load(8, null).hasClosureIndex()).isFalse();
+    }
+
+    @Test
+    public void testClosureIndexFile() {
+        String closureFile = dir.resolve("closure.bin").toString();
+        load(WordNet.DEFAULT_CLOSURE_BUDGET, closureFile);
+        assertThat(Files.exists(Path.of(closureFile))).isTrue();
+
+        WordNet fromFile = load(WordNet.DEFAULT_CLOSURE_BUDGET, closureFile);
+        assertThat(fromFile.hasClosureIndex()).isTrue();
+        assertThat(fromFile.getHyponyms("food")).isEqualTo(wordnet.getHyponyms("food"));
+        assertThat(fromFile.getCommonHyponyms(List.of("cake", "pie")))
+                .isEqualTo(wordnet.getCommonHyponyms(List.of("cake", "pie")));
+    }
+
+    @Test
+    public void testCycleFallsBackToDfs() throws IOException {
+        Path synsets = dir.resolve("cycle-synsets.txt");
+        Path hyponyms = dir.resolve("cycle-hyponyms.txt");
+        Files.write(synsets, List.of("0,chicken,a bird", "1,egg,an egg"));
+        Files.write(hyponyms, List.of("0,1", "1,0"));
+        WordNet cyclic = new WordNet(synsets.toString(), hyponyms.toString());
+
+        assertThat(cyclic.hasClosureIndex()).isFalse();
+        assertThat(cyclic.getHyponyms("egg")).containsExactly("chicken", "egg");
+    }
+
+    @Test
+    public void testSharedDictionary() {
+        WordDictionary dictionary = new WordDictionary();
+        int cake = dictionary.add("cake");
+        WordNet shared = new WordNet(dir.resolve("synsets.txt").toString(),
+                dir.resolve("hyponyms.txt").toString(), dictionary, WordNet.DEFAULT_CLOSURE_BUDGET, null);
+        dictionary.freeze();
+
+        assertThat(shared.dictionary()).isSameInstanceAs(dictionary);
+        assertThat(dictionary.id("cake")).isEqualTo(cake);
+        assertThat(shared.getHyponyms("food")).isEqualTo(wordnet.getHyponyms("food"));
+        assertThat(shared.getCommonAncestors(List.of("cake", "pie")))
+                .isEqualTo(wordnet.getCommonAncestors(List.of("cake", "pie")));
+
+        int[] ids = shared.getHyponymIds(List.of("food"));
+        String[] words = Arrays.stream(ids).mapToObj(dictionary::word).toArray(String[]::new);
+        assertThat(words).asList().containsExactly("food", "cake", "pie", "cake_pie");
+        assertThat(ids).asList().isInOrder();
+        assertThrows(IllegalStateException.class, () -> dictionary.add("new"));
+    }
+}
@@ -0,0 +1,81 @@
+package ngrams;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Tests that a words file parses the same whichever chunks it is cut into. */
+public class NGramFileLoaderTest {
+    private static final int CHUNK_BYTES = 1000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testChunksMatchSingleChunk() throws IOException {
+        Path file = dir.resolve("words.csv");
+        StringBuilder text = new StringBuilder("word\tyear\tcount\tvolumes\n");
+        // Byte offsets of the first and last line of "word7", which spans many chunks
+        long spanStart = -1;
+        long spanEnd = -1;
+        for (int w = 0; w < 40; w += 1) {
+            String word = w % 5 == 0 ? "wörd" + w : "word" + w;
+            int years = w == 7 ? 200 : 30 + w;
+            for (int year = 1900; year < 1900 + years; year += 1) {
+                if (w == 7 && year == 1900) {
+                    spanStart = utf8Length(text);
+                } else if (w == 7 && year == 1900 + years - 1) {
+                    spanEnd = utf8Length(text);
+                }
+                text.append(word).append('\t').append(year).append('\t').append(year * 7 + w)
+                        .append(w % 3 == 0 ? "\t1\r\n" : "\t1\n");
+            }
+        }
+        Files.writeString(file, text);
+        long size = Files.size(file);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertThat(NGramFileLoader.chunkBounds(channel, 0, size)).asList().containsExactly(0L, size);
+            long[] bounds = NGramFileLoader.chunkBounds(channel, 0, CHUNK_BYTES);
+            assertThat((long) bounds.length).isGreaterThan(size / CHUNK_BYTES);
+            boolean split = false;
+            for (long bound : bounds) {
+                split |= bound > spanStart && bound <= spanEnd;
+            }
+            assertThat(split).isTrue();
+        }
+
+        WordHistories.Builder single = new WordHistories.Builder();
+        WordHistories.Builder chunked = new WordHistories.Builder();
+        LoadStats singleStats = NGramFileLoader.loadWords(file.toString(), 0, size, single);
+        LoadStats chunkedStats = NGramFileLoader.loadWords(file.toString(), 0, CHUNK_BYTES, chunked);
+        assertThat(chunkedStats.lines()).isEqualTo(singleStats.lines());
+        assertThat(chunkedStats.bytes()).isEqualTo(size);
+        assertSameHistories(chunked.build(), single.build());
+    }
+
+    private static void assertSameHistories(WordHistories actual, WordHistories expected) {
+        assertThat(actual.size()).isEqualTo(expected.size());
+        for (int id = 0; id < expected.size(); id += 1) {
+            assertThat(actual.word(id)).isEqualTo(expected.word(id));
+            for (int year = TimeSeries.MIN_YEAR; year <= TimeSeries.MAX_YEAR; year += 1) {
+                assertThat(actual.count(id, year)).isEqualTo(expected.count(id, year));
+            }
+        }
+        int word7 = expected.id("word7");
+        assertThat(word7).isNotEqualTo(WordHistories.NOT_FOUND);
+        assertThat(expected.count(word7, 2099)).isEqualTo(2099.0 * 7 + 7);
+    }
+
+    private static long utf8Length(CharSequence text) {
+        return text.toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+}
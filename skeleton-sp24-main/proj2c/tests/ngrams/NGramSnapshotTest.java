@@ -0,0 +1,50 @@
+package ngrams;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for the size limits of the NGramMap snapshot format. */
+public class NGramSnapshotTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testSizeMatchesWrittenFile() throws IOException {
+        NGramMap ngm = new NGramMap("data/ngrams/very_short.csv", "data/ngrams/total_counts.csv");
+        Path snapshot = dir.resolve("very_short.snapshot");
+        ngm.writeSnapshot(snapshot);
+
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(snapshot)).order(ByteOrder.LITTLE_ENDIAN);
+        long size = NGramSnapshot.snapshotBytes(header.getInt(8), header.getInt(16), header.getInt(12));
+        assertThat(size).isEqualTo(Files.size(snapshot));
+    }
+
+    /** 300M values already need more than one mapping, although an int counts them. */
+    @Test
+    public void testLargeDataExceedsOneMapping() {
+        assertThat(NGramSnapshot.snapshotBytes(1_000_000, 10_000_000, 300_000_000))
+                .isGreaterThan((long) Integer.MAX_VALUE);
+        assertThat(NGramSnapshot.snapshotBytes(1_000_000, 10_000_000, 100_000_000))
+                .isLessThan((long) Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testRejectsTruncatedSnapshot() throws IOException {
+        NGramMap ngm = new NGramMap("data/ngrams/very_short.csv", "data/ngrams/total_counts.csv");
+        Path snapshot = dir.resolve("very_short.snapshot");
+        ngm.writeSnapshot(snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Files.write(snapshot, Arrays.copyOf(bytes, bytes.length - 8));
+        assertThrows(IllegalArgumentException.class, () -> NGramMap.fromSnapshot(snapshot));
+    }
+}
@@ -0,0 +1,229 @@
+package speed;
+
+import ngrams.DenseTimeSeries;
+import ngrams.NGramMap;
+import ngrams.SeriesKernels;
+import ngrams.TimeSeries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the TimeSeries arithmetic with the DenseTimeSeries and NGramMap
+ * operations that run on SeriesKernels, over WORDS words that each have a count
+ * for every year between FIRST_YEAR and MAX_YEAR.
+ *
+ * main runs every benchmark twice: once with the scalar kernels, and once with
+ * --add-modules jdk.incubator.vector, which picks the vector kernels when the
+ * incubator classes are on the class path. Build with the JMH annotation
+ * processor, then:
+ *
+ *     java --add-modules jdk.incubator.vector -cp &lt;classes and jars&gt; speed.SeriesKernelsBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeriesKernelsBenchmark {
+    private static final int WORDS = 2_000;
+    private static final int FIRST_YEAR = 1470;
+    private static final int MOVING_AVERAGE_WINDOW = 10;
+
+    private Path directory;
+    private NGramMap map;
+    private List<String> words;
+    private List<TimeSeries> weights;
+    private List<DenseTimeSeries> denseWeights;
+    private List<TimeSeries> counts;
+    private List<DenseTimeSeries> denseCounts;
+    private TimeSeries totals;
+    private DenseTimeSeries denseTotals;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("series-kernels");
+        Path wordsFile = directory.resolve("words.csv");
+        Path countsFile = directory.resolve("counts.csv");
+        Random random = new Random(61);
+        words = new ArrayList<>();
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(wordsFile))) {
+            for (int w = 0; w < WORDS; w += 1) {
+                String word = "word" + w;
+                words.add(word);
+                for (int year = FIRST_YEAR; year <= TimeSeries.MAX_YEAR; year += 1) {
+                    out.printf("%s\t%d\t%d\t1%n", word, year, 1 + random.nextInt(1000));
+                }
+            }
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(countsFile))) {
+            for (int year = FIRST_YEAR; year <= TimeSeries.MAX_YEAR; year += 1) {
+                out.printf("%d,%d,1,1%n", year, 1_000_000 + random.nextInt(1_000_000));
+            }
+        }
+        map = new NGramMap(wordsFile.toString(), countsFile.toString());
+        totals = map.totalCountHistory();
+        denseTotals = new DenseTimeSeries(totals);
+        weights = new ArrayList<>();
+        denseWeights = new ArrayList<>();
+        counts = new ArrayList<>();
+        denseCounts = new ArrayList<>();
+        for (String word : words) {
+            weights.add(map.weightHistory(word));
+            denseWeights.add(new DenseTimeSeries(weights.getLast()));
+            counts.add(map.countHistory(word));
+            denseCounts.add(new DenseTimeSeries(counts.getLast()));
+        }
+        System.out.println("\nKernels: " + SeriesKernels.get().name());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(directory.resolve("words.csv"));
+        Files.deleteIfExists(directory.resolve("counts.csv"));
+        Files.deleteIfExists(directory);
+    }
+
+    /** Sums the weights of every word the way summedWeightHistory used to, with TimeSeries.plus. */
+    @Benchmark
+    public TimeSeries timeSeriesSummedWeights() {
+        TimeSeries sum = new TimeSeries();
+        for (String word : words) {
+            sum = sum.plus(map.weightHistory(word));
+        }
+        return sum;
+    }
+
+    /** Sums the weights of every word with NGramMap.sumWeights, one addQuotients per word. */
+    @Benchmark
+    public DenseTimeSeries sumWeights() {
+        return map.sumWeights(words, TimeSeries.MIN_YEAR, TimeSeries.MAX_YEAR);
+    }
+
+    @Benchmark
+    public TimeSeries timeSeriesPlus() {
+        TimeSeries sum = new TimeSeries();
+        for (TimeSeries ts : weights) {
+            sum = sum.plus(ts);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public DenseTimeSeries densePlus() {
+        DenseTimeSeries sum = new DenseTimeSeries();
+        for (DenseTimeSeries ts : denseWeights) {
+            sum.plusInPlace(ts);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public TimeSeries timeSeriesDividedBy() {
+        TimeSeries last = null;
+        for (int i = 0; i < 100; i += 1) {
+            last = counts.get(i).dividedBy(totals);
+        }
+        return last;
+    }
+
+    @Benchmark
+    public DenseTimeSeries denseDivide() {
+        DenseTimeSeries series = new DenseTimeSeries();
+        for (int i = 0; i < 100; i += 1) {
+            series.clear();
+            series.plusInPlace(denseCounts.get(i)).divideInPlace(denseTotals);
+        }
+        return series;
+    }
+
+    /** Normalizes a series with TimeSeries operations: its sum, then one division per year. */
+    @Benchmark
+    public TimeSeries timeSeriesNormalize() {
+        TimeSeries last = null;
+        for (int i = 0; i < 100; i += 1) {
+            TimeSeries ts = weights.get(i);
+            double sum = 0;
+            for (double value : ts.data()) {
+                sum += value;
+            }
+            last = new TimeSeries();
+            for (Integer year : ts.years()) {
+                last.put(year, ts.get(year) / sum);
+            }
+        }
+        return last;
+    }
+
+    @Benchmark
+    public DenseTimeSeries denseNormalize() {
+        DenseTimeSeries series = new DenseTimeSeries();
+        for (int i = 0; i < 100; i += 1) {
+            series.clear();
+            series.plusInPlace(denseWeights.get(i)).normalizeInPlace();
+        }
+        return series;
+    }
+
+    /** Computes a moving average with TimeSeries.subMap over each window. */
+    @Benchmark
+    public TimeSeries timeSeriesMovingAverage() {
+        TimeSeries last = null;
+        for (int i = 0; i < 100; i += 1) {
+            TimeSeries ts = weights.get(i);
+            last = new TimeSeries();
+            for (Integer year : ts.years()) {
+                double sum = 0;
+                int count = 0;
+                for (double value : ts.subMap(year - MOVING_AVERAGE_WINDOW + 1, true, year, true).values()) {
+                    sum += value;
+                    count += 1;
+                }
+                last.put(year, sum / count);
+            }
+        }
+        return last;
+    }
+
+    @Benchmark
+    public DenseTimeSeries denseMovingAverage() {
+        DenseTimeSeries last = null;
+        for (int i = 0; i < 100; i += 1) {
+            last = denseWeights.get(i).movingAverage(MOVING_AVERAGE_WINDOW);
+        }
+        return last;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (String kernels : List.of("-Dngrams.kernels=scalar", "--add-modules=jdk.incubator.vector")) {
+            Options options = new OptionsBuilder()
+                    .include(SeriesKernelsBenchmark.class.getSimpleName())
+                    .jvmArgsAppend(kernels)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
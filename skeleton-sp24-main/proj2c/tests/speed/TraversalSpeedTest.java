@@ -0,0 +1,142 @@
+package speed;
+
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.Stopwatch;
+import main.Graph;
+import main.GraphTraversal;
+
+/**
+ * Compares the recursive DFS that WordNet used to run with the iterative
+ * GraphTraversal, on the full WordNet files and on a long chain.
+ *
+ * Usage: TraversalSpeedTest [synsetsFile hyponymsFile]
+ */
+public class TraversalSpeedTest {
+    private static final String SYNSETS_FILE = "data/wordnet/synsets.txt";
+    private static final String HYPONYMS_FILE = "data/wordnet/hyponyms.txt";
+    /** Long enough to overflow the default thread stack when recursing. */
+    private static final int CHAIN_LENGTH = 1_000_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        String synsetsFile = args.length == 2 ? args[0] : SYNSETS_FILE;
+        String hyponymsFile = args.length == 2 ? args[1] : HYPONYMS_FILE;
+        Graph graph = readGraph(synsetsFile, hyponymsFile);
+        System.out.printf("WordNet: %d synsets, %d edges%n", graph.size(), graph.edgeCount());
+
+        // Every synset as a start: most traversals are short, a few cover the whole graph
+        for (int round = 0; round < ROUNDS; round += 1) {
+            timeAllStarts(graph);
+        }
+
+        Graph chain = new Graph();
+        for (int v = 0; v < CHAIN_LENGTH; v += 1) {
+            chain.addNode(v);
+        }
+        for (int v = 1; v < CHAIN_LENGTH; v += 1) {
+            chain.addEdge(v - 1, v);
+        }
+        chain.freeze();
+        System.out.printf("%nChain of %d synsets:%n", CHAIN_LENGTH);
+        try {
+            Stopwatch sw = new Stopwatch();
+            int reached = recursiveCount(chain, 0, new int[chain.size()], 1);
+            System.out.printf("  recursive: %d reached in %.3f sec%n", reached, sw.elapsedTime());
+        } catch (StackOverflowError e) {
+            System.out.println("  recursive: StackOverflowError");
+        }
+        Stopwatch sw = new Stopwatch();
+        int reached = iterativeCount(new GraphTraversal(chain), 0, GraphTraversal.Direction.HYPONYMS);
+        System.out.printf("  iterative: %d reached in %.3f sec%n", reached, sw.elapsedTime());
+    }
+
+    private static void timeAllStarts(Graph graph) {
+        long recursiveTotal = 0;
+        Stopwatch sw = new Stopwatch();
+        int[] stamps = new int[graph.size()];
+        for (int v = 0; v < graph.size(); v += 1) {
+            if (graph.hasNode(v)) {
+                recursiveTotal += recursiveCount(graph, v, stamps, v + 1);
+            }
+        }
+        double recursiveTime = sw.elapsedTime();
+
+        long iterativeTotal = 0;
+        sw = new Stopwatch();
+        GraphTraversal traversal = new GraphTraversal(graph);
+        for (int v = 0; v < graph.size(); v += 1) {
+            if (graph.hasNode(v)) {
+                iterativeTotal += iterativeCount(traversal, v, GraphTraversal.Direction.HYPONYMS);
+            }
+        }
+        double iterativeTime = sw.elapsedTime();
+
+        long bfsTotal = 0;
+        sw = new Stopwatch();
+        for (int v = 0; v < graph.size(); v += 1) {
+            if (graph.hasNode(v)) {
+                traversal.begin();
+                int[] count = new int[1];
+                traversal.breadthFirst(v, GraphTraversal.Direction.HYPONYMS, id -> {
+                    count[0] += 1;
+                    return true;
+                });
+                bfsTotal += count[0];
+            }
+        }
+        double bfsTime = sw.elapsedTime();
+
+        if (recursiveTotal != iterativeTotal || recursiveTotal != bfsTotal) {
+            throw new IllegalStateException("Traversals disagree: " + recursiveTotal
+                    + " " + iterativeTotal + " " + bfsTotal);
+        }
+        System.out.printf("All starts, %d nodes reached: recursive %.3f sec, iterative DFS %.3f sec,"
+                + " iterative BFS %.3f sec%n", recursiveTotal, recursiveTime, iterativeTime, bfsTime);
+    }
+
+    /**
+     * The recursive DFS WordNet used before. It marks nodes the same way
+     * GraphTraversal does (stamps[v] == epoch), so only the recursion differs.
+     */
+    private static int recursiveCount(Graph graph, int v, int[] stamps, int epoch) {
+        stamps[v] = epoch;
+        int count = 1;
+        for (int i = graph.childrenStart(v); i < graph.childrenEnd(v); i += 1) {
+            int child = graph.child(i);
+            if (stamps[child] != epoch) {
+                count += recursiveCount(graph, child, stamps, epoch);
+            }
+        }
+        return count;
+    }
+
+    private static int iterativeCount(GraphTraversal traversal, int start,
+                                      GraphTraversal.Direction direction) {
+        traversal.begin();
+        int[] count = new int[1];
+        traversal.depthFirst(start, direction, id -> {
+            count[0] += 1;
+            return true;
+        });
+        return count[0];
+    }
+
+    private static Graph readGraph(String synsetsFile, String hyponymsFile) {
+        Graph graph = new Graph();
+        In synsets = new In(synsetsFile);
+        while (synsets.hasNextLine()) {
+            String line = synsets.readLine();
+            graph.addNode(Integer.parseInt(line.substring(0, line.indexOf(','))));
+        }
+        In hyponyms = new In(hyponymsFile);
+        while (hyponyms.hasNextLine()) {
+            String[] ids = hyponyms.readLine().split(",");
+            int hypernym = Integer.parseInt(ids[0]);
+            for (int i = 1; i < ids.length; i += 1) {
+                graph.addEdge(hypernym, Integer.parseInt(ids[i]));
+            }
+        }
+        graph.freeze();
+        return graph;
+    }
+}